@@ -0,0 +1,45 @@
+package de.painer.xplane.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks.
+ *
+ * <p>
+ * Accepts the usual JMH command line options and always adds the GC profiler,
+ * so the allocation rate per operation is reported for every benchmark.
+ * </p>
+ */
+public final class BenchmarkMain {
+
+    /**
+     * Constructor.
+     */
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args JMH command line options.
+     * @throws CommandLineOptionException When the options are invalid.
+     * @throws RunnerException            When a benchmark fails.
+     * @throws IOException                When the help could not be printed.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListProfilers()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+
+}
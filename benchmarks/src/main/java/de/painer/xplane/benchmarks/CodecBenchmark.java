@@ -0,0 +1,152 @@
+package de.painer.xplane.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.painer.xplane.impl.DataReader;
+import de.painer.xplane.impl.DataWriter;
+import de.painer.xplane.impl.StringCache;
+
+/**
+ * Benchmarks of reading strings and constructing the messages sent to X-Plane.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    /**
+     * Typical dataref name.
+     */
+    private static final String DATAREF = "sim/flightmodel/position/indicated_airspeed";
+
+    /**
+     * Typical command.
+     */
+    private static final String COMMAND = "sim/operation/pause_toggle";
+
+    /**
+     * Buffer with a null-terminated string.
+     */
+    private ByteBuffer string;
+
+    /**
+     * Buffer with a string padded to 400 bytes like in RREF requests.
+     */
+    private ByteBuffer fullString;
+
+    /**
+     * Buffer for constructing messages.
+     */
+    private ByteBuffer target;
+
+    /**
+     * Cache for read strings.
+     */
+    private final StringCache cache = new StringCache(64);
+
+    /**
+     * Prepares the buffers.
+     */
+    @Setup
+    public void setup() {
+        DataWriter writer = new DataWriter(512);
+        writer.writeString(DATAREF);
+        string = writer.export();
+
+        writer = new DataWriter(512);
+        writer.writeString(DATAREF, 400);
+        fullString = writer.export();
+
+        target = ByteBuffer.allocateDirect(1024).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Reads a null-terminated string.
+     */
+    @Benchmark
+    public String readString() {
+        return new DataReader(string.rewind()).readString(500);
+    }
+
+    /**
+     * Reads a null-terminated string which is already cached.
+     */
+    @Benchmark
+    public String readStringCached() {
+        return new DataReader(string.rewind(), cache).readString(500);
+    }
+
+    /**
+     * Reads a string of fixed length.
+     */
+    @Benchmark
+    public String readFullString() {
+        return new DataReader(fullString.rewind()).readFullString(400);
+    }
+
+    /**
+     * Constructs a RPOS request.
+     */
+    @Benchmark
+    public ByteBuffer writeRpos() {
+        DataWriter writer = new DataWriter(target);
+        writer.writeString("RPOS");
+        writer.writeString(Integer.toString(99));
+        return writer.export();
+    }
+
+    /**
+     * Constructs a RREF request.
+     */
+    @Benchmark
+    public ByteBuffer writeRref() {
+        DataWriter writer = new DataWriter(target);
+        writer.writeString("RREF");
+        writer.writeInt(99);
+        writer.writeInt(42);
+        writer.writeString(DATAREF, 400);
+        return writer.export();
+    }
+
+    /**
+     * Constructs a CMND message.
+     */
+    @Benchmark
+    public ByteBuffer writeCmnd() {
+        DataWriter writer = new DataWriter(target);
+        writer.writeString("CMND");
+        writer.writeString(COMMAND);
+        return writer.export();
+    }
+
+    /**
+     * Constructs an ALRT message.
+     */
+    @Benchmark
+    public ByteBuffer writeAlrt() {
+        DataWriter writer = new DataWriter(target);
+        writer.writeString("ALRT");
+        writer.writeString("Line 1", 240);
+        writer.writeString("Line 2", 240);
+        writer.writeString("", 240);
+        writer.writeString("", 240);
+        return writer.export();
+    }
+
+}
@@ -0,0 +1,202 @@
+package de.painer.xplane.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.painer.xplane.XPlaneDiscovery;
+import de.painer.xplane.XPlaneDiscoveryListener;
+import de.painer.xplane.XPlaneInstance;
+import de.painer.xplane.metrics.DiscoveryMetrics;
+
+/**
+ * Benchmark of processing beacons while listeners are added and removed.
+ *
+ * <p>
+ * One thread sends beacons of known instances over the loopback interface and
+ * waits until the discovery thread counted them, while other threads register
+ * and unregister listeners, which contend for the same lock and copy the
+ * listener list. The discovery thread is kept running by a permanent listener.
+ * The times include the round trip through the loopback interface.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class DiscoveryBenchmark {
+
+    /**
+     * Number of instances sending beacons.
+     */
+    @Param({ "1", "100" })
+    public int instanceCount;
+
+    /**
+     * Discovery under test.
+     */
+    private XPlaneDiscovery discovery;
+
+    /**
+     * Listener keeping the discovery thread running.
+     */
+    private final XPlaneDiscoveryListener permanent = new IgnoringListener();
+
+    /**
+     * Metrics of the discovery, for waiting until a beacon was processed.
+     */
+    private DiscoveryMetrics metrics;
+
+    /**
+     * Address of the discovery socket.
+     */
+    private final InetSocketAddress target = new InetSocketAddress("127.0.0.1",
+            XPlaneDiscovery.GROUP_ADDRESS.getPort());
+
+    /**
+     * Channels of the instances, each with its own address.
+     */
+    private DatagramChannel[] channels;
+
+    /**
+     * Beacon message.
+     */
+    private ByteBuffer beacon;
+
+    /**
+     * Index of the next instance sending a beacon.
+     */
+    private int next;
+
+    /**
+     * Prepares discovery, beacons and the known instances.
+     *
+     * @throws IOException When a channel could not be opened.
+     */
+    @Setup
+    public void setup() throws IOException {
+        discovery = XPlaneDiscovery.create(Duration.ofSeconds(30), Runnable::run);
+        metrics = discovery.getMetrics();
+        beacon = ByteBuffer.allocate(64).order(ByteOrder.nativeOrder());
+        beacon.put("BECN\0".getBytes());
+        beacon.put((byte) 1).put((byte) 2).putInt(1).putInt(120000).putInt(1).putShort((short) 49000);
+        beacon.put("benchmark\0".getBytes());
+        beacon.flip();
+
+        discovery.addListener(permanent);
+        channels = new DatagramChannel[instanceCount];
+        for (int i = 0; i < instanceCount; i++) {
+            channels[i] = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+            send(channels[i]);
+        }
+    }
+
+    /**
+     * Stops the discovery thread and closes the channels.
+     *
+     * @throws IOException When a channel could not be closed.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        discovery.removeListener(permanent);
+        for (DatagramChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Processes a beacon of a known instance.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void processBeacon() {
+        send(channels[next]);
+        next = next + 1 < channels.length ? next + 1 : 0;
+    }
+
+    /**
+     * Adds and removes a listener.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void churnListeners() {
+        XPlaneDiscoveryListener listener = new IgnoringListener();
+        discovery.addListener(listener);
+        discovery.removeListener(listener);
+    }
+
+    /**
+     * Processes a beacon of a known instance without contention.
+     */
+    @Benchmark
+    @Group("uncontended")
+    public void processBeaconAlone() {
+        processBeacon();
+    }
+
+    /**
+     * Sends a beacon and waits until the discovery thread processed it.
+     *
+     * <p>
+     * The beacon is sent again when it was not processed within a second, in
+     * case the datagram was dropped or the discovery socket was not bound yet.
+     * </p>
+     *
+     * @param channel Channel of the sending instance.
+     */
+    private void send(DatagramChannel channel) {
+        long beacons = metrics.getBeacons();
+        long resend = System.nanoTime();
+        try {
+            while (metrics.getBeacons() == beacons) {
+                if (System.nanoTime() - resend >= 0) {
+                    channel.send(beacon.rewind(), target);
+                    resend = System.nanoTime() + 1_000_000_000L;
+                }
+                Thread.onSpinWait();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Listener ignoring all events.
+     */
+    private static final class IgnoringListener implements XPlaneDiscoveryListener {
+
+        @Override
+        public void foundInstance(XPlaneInstance instance) {
+        }
+
+        @Override
+        public void lostInstance(XPlaneInstance instance) {
+        }
+
+    }
+
+}
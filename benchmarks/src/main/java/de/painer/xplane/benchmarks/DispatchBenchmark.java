@@ -0,0 +1,290 @@
+package de.painer.xplane.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.painer.xplane.XPlaneListener;
+import de.painer.xplane.data.Position;
+import de.painer.xplane.data.PositionView;
+import de.painer.xplane.recording.PacketRecorder;
+import de.painer.xplane.recording.PacketReplay;
+import de.painer.xplane.recording.RecordingOptions;
+
+/**
+ * Benchmarks of decoding received messages and dispatching them to listeners.
+ *
+ * <p>
+ * The messages are replayed from a recording as fast as possible, so they take
+ * the receive path of a connection without dispatch stage (snapshot and
+ * dispatcher) without any network in between. The times are per message and
+ * include reading the message from the recording and translating the recorded
+ * dataref ids. Opening the replay is not measured.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@OperationsPerInvocation(DispatchBenchmark.MESSAGES)
+public class DispatchBenchmark {
+
+    /**
+     * Number of messages in each recording.
+     */
+    static final int MESSAGES = 10_000;
+
+    /**
+     * Size of a RREF request (header, frequency, id and 400 bytes of name).
+     */
+    private static final int RREF_REQUEST_SIZE = 413;
+
+    /**
+     * Options of the recordings (without delta compression, so the messages
+     * are read as they are).
+     */
+    private static final RecordingOptions OPTIONS = new RecordingOptions(64 << 20, Duration.ofHours(1), false);
+
+    /**
+     * Number of registered listeners.
+     */
+    @Param({ "1", "10", "100" })
+    public int listenerCount;
+
+    /**
+     * Number of values in the RREF message.
+     */
+    @Param({ "1", "20", "183" })
+    public int values;
+
+    /**
+     * Recording with RPOS messages.
+     */
+    private Path rposRecording;
+
+    /**
+     * Recording with RREF messages.
+     */
+    private Path rrefRecording;
+
+    /**
+     * Replay of the RPOS messages.
+     */
+    private PacketReplay rposReplay;
+
+    /**
+     * Replay of the RREF messages.
+     */
+    private PacketReplay rrefReplay;
+
+    /**
+     * Records the messages.
+     *
+     * @throws IOException When a recording could not be written.
+     */
+    @Setup(Level.Trial)
+    public void record() throws IOException {
+        ByteBuffer rpos = ByteBuffer.allocate(1500).order(ByteOrder.nativeOrder());
+        rpos.put("RPOS\0".getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < 3; i++) {
+            rpos.putDouble(i);
+        }
+        for (int i = 0; i < 10; i++) {
+            rpos.putFloat(i);
+        }
+        rposRecording = record(rpos.flip(), new String[0]);
+
+        ByteBuffer rref = ByteBuffer.allocate(1500).order(ByteOrder.nativeOrder());
+        rref.put("RREF\0".getBytes(StandardCharsets.US_ASCII));
+        String[] datarefs = new String[values];
+        for (int i = 0; i < values; i++) {
+            datarefs[i] = "sim/test/value[" + i + "]";
+            rref.putInt(i);
+            rref.putFloat(i);
+        }
+        rrefRecording = record(rref.flip(), datarefs);
+    }
+
+    /**
+     * Opens the replays and registers the listeners.
+     *
+     * @param blackhole Sink for the values passed to the listeners.
+     * @throws IOException When a recording could not be read.
+     */
+    @Setup(Level.Invocation)
+    public void open(Blackhole blackhole) throws IOException {
+        rposReplay = open(rposRecording, blackhole);
+        rrefReplay = open(rrefRecording, blackhole);
+    }
+
+    /**
+     * Closes the replays.
+     */
+    @TearDown(Level.Invocation)
+    public void close() {
+        rposReplay.close();
+        rrefReplay.close();
+    }
+
+    /**
+     * Deletes the recordings.
+     *
+     * @throws IOException When a file could not be deleted.
+     */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        delete(rposRecording);
+        delete(rrefRecording);
+    }
+
+    /**
+     * Decodes and dispatches RPOS messages.
+     */
+    @Benchmark
+    public void replayRpos() {
+        replay(rposReplay);
+    }
+
+    /**
+     * Stores and dispatches the values of RREF messages.
+     */
+    @Benchmark
+    public void replayRref() {
+        replay(rrefReplay);
+    }
+
+    /**
+     * Replays all messages of a recording.
+     *
+     * @param replay Opened replay.
+     */
+    private static void replay(PacketReplay replay) {
+        replay.start();
+        replay.getCompletion().join();
+    }
+
+    /**
+     * Writes a recording with the requests of datarefs and repeated messages.
+     *
+     * @param message  Received message to repeat.
+     * @param datarefs Requested datarefs, the id is the index.
+     * @return Directory of the recording.
+     * @throws IOException When the recording could not be written.
+     */
+    private static Path record(ByteBuffer message, String[] datarefs) throws IOException {
+        Path directory = Files.createTempDirectory("xplane-benchmark");
+        try (PacketRecorder recorder = PacketRecorder.open(directory, OPTIONS)) {
+            ByteBuffer request = ByteBuffer.allocate(RREF_REQUEST_SIZE).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < datarefs.length; i++) {
+                request.clear();
+                request.put("RREF\0".getBytes(StandardCharsets.US_ASCII)).putInt(1).putInt(i);
+                request.put(datarefs[i].getBytes(StandardCharsets.US_ASCII));
+                recorder.recordSent(request.position(RREF_REQUEST_SIZE).flip());
+            }
+            long timestamp = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                recorder.recordReceived(message, timestamp + i);
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Opens the replay of a recording with the listeners.
+     *
+     * @param recording Directory of the recording.
+     * @param blackhole Sink for the values passed to the listeners.
+     * @return Replay, not yet started.
+     * @throws IOException When the recording could not be read.
+     */
+    private PacketReplay open(Path recording, Blackhole blackhole) throws IOException {
+        PacketReplay replay = PacketReplay.open(recording, PacketReplay.AS_FAST_AS_POSSIBLE);
+        for (int i = 0; i < listenerCount; i++) {
+            replay.addXPlaneListener(new ConsumingListener(blackhole));
+        }
+        return replay;
+    }
+
+    /**
+     * Deletes a recording.
+     *
+     * @param recording Directory of the recording.
+     * @throws IOException When a file could not be deleted.
+     */
+    private static void delete(Path recording) throws IOException {
+        try (Stream<Path> files = Files.walk(recording)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Listener passing all data to a blackhole.
+     */
+    private static final class ConsumingListener implements XPlaneListener {
+
+        /**
+         * Sink for the received data.
+         */
+        private final Blackhole blackhole;
+
+        /**
+         * Constructor.
+         *
+         * @param blackhole Sink for the received data.
+         */
+        ConsumingListener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void receivedPosition(PositionView position) {
+            blackhole.consume(position.latitude());
+        }
+
+        @Override
+        public void receivedPosition(Position position) {
+            blackhole.consume(position);
+        }
+
+        @Override
+        public void receivedDatarefs(int[] ids, String[] datarefs, float[] values, int count) {
+            for (int i = 0; i < count; i++) {
+                blackhole.consume(values[i]);
+            }
+        }
+
+        @Override
+        public void receivedDataref(String dataref, float value) {
+            blackhole.consume(value);
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package de.painer.xplane;
+
+import de.painer.xplane.data.PositionField;
+import de.painer.xplane.impl.OperatorPipeline;
+
+/**
+ * Operations computing a derived dataref from a received value.
+ *
+ * <p>
+ * A pipeline starts with a source, a dataref or a field of the position, and
+ * applies its operations to every received value in order. Operations can
+ * consume values without passing them on, e.g. for downsampling. Pipelines are
+ * immutable: each operation returns a new pipeline, so a pipeline can be used
+ * as template for several derived datarefs, each with its own state.
+ * </p>
+ *
+ * <pre>
+ * xplane.addDerivedDataref("derived/airspeed_kmh",
+ *         DatarefPipeline.of("sim/flightmodel/position/indicated_airspeed").scale(1.852).ema(0.2), 20);
+ * </pre>
+ *
+ * @see XPlane#addDerivedDataref(String, DatarefPipeline, int)
+ */
+public sealed interface DatarefPipeline permits OperatorPipeline {
+
+    /**
+     * Creates a pipeline for the values of a dataref.
+     *
+     * @param dataref Source dataref.
+     * @return Pipeline without operations.
+     */
+    static DatarefPipeline of(String dataref) {
+        return OperatorPipeline.of(dataref);
+    }
+
+    /**
+     * Creates a pipeline for a field of the received positions.
+     *
+     * @param field Source field.
+     * @return Pipeline without operations.
+     */
+    static DatarefPipeline of(PositionField field) {
+        return OperatorPipeline.of(field);
+    }
+
+    /**
+     * Passes on only every n-th value.
+     *
+     * @param n Number of values per passed value.
+     * @return Extended pipeline.
+     */
+    DatarefPipeline decimate(int n);
+
+    /**
+     * Smoothes the values with an exponential moving average.
+     *
+     * @param alpha Weight of a new value (between 0 and 1).
+     * @return Extended pipeline.
+     */
+    DatarefPipeline ema(double alpha);
+
+    /**
+     * Averages the latest values.
+     *
+     * @param window Number of averaged values.
+     * @return Extended pipeline.
+     */
+    DatarefPipeline average(int window);
+
+    /**
+     * Computes the change per second between consecutive values.
+     *
+     * <p>
+     * The first value is consumed without result.
+     * </p>
+     *
+     * @return Extended pipeline.
+     */
+    DatarefPipeline derivative();
+
+    /**
+     * Limits the values to an interval.
+     *
+     * @param min Lower limit.
+     * @param max Upper limit.
+     * @return Extended pipeline.
+     */
+    DatarefPipeline clamp(double min, double max);
+
+    /**
+     * Multiplies the values with a factor.
+     *
+     * @param factor Factor, e.g. for a unit conversion.
+     * @return Extended pipeline.
+     */
+    default DatarefPipeline scale(double factor) {
+        return scale(factor, 0);
+    }
+
+    /**
+     * Multiplies the values with a factor and adds an offset.
+     *
+     * @param factor Factor.
+     * @param offset Offset added after multiplying.
+     * @return Extended pipeline.
+     */
+    DatarefPipeline scale(double factor, double offset);
+
+    /**
+     * Computes the minimum of the latest values.
+     *
+     * @param window Number of compared values.
+     * @return Extended pipeline.
+     */
+    DatarefPipeline min(int window);
+
+    /**
+     * Computes the maximum of the latest values.
+     *
+     * @param window Number of compared values.
+     * @return Extended pipeline.
+     */
+    DatarefPipeline max(int window);
+
+}
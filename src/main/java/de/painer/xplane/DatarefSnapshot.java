@@ -0,0 +1,59 @@
+package de.painer.xplane;
+
+/**
+ * Latest values of the watched datarefs of a connection.
+ * 
+ * <p>
+ * The values are updated by the thread receiving the messages from X-Plane, so
+ * they are also available when there are no listeners or when the listeners are
+ * behind. Reading single values is wait-free and does not allocate. Datarefs
+ * are addressed by the ids used in the messages, which can be retrieved with
+ * {@link #id(String)} and stay valid as long as the dataref is watched.
+ * </p>
+ * 
+ * @see XPlane#getSnapshot()
+ */
+public interface DatarefSnapshot {
+
+    /**
+     * Returns the id of a watched dataref.
+     * 
+     * @param dataref Name of the dataref.
+     * @return Id of the dataref or -1 if it is not watched.
+     */
+    int id(String dataref);
+
+    /**
+     * Returns the latest value of a dataref.
+     * 
+     * @param id Id of the dataref.
+     * @return Latest value or <code>NaN</code> if no value was received yet.
+     */
+    float get(int id);
+
+    /**
+     * Returns the time when the latest value of a dataref was received.
+     * 
+     * @param id Id of the dataref.
+     * @return Time of the latest value as returned by {@link System#nanoTime()}
+     *         or 0 if no value was received yet.
+     */
+    long timestamp(int id);
+
+    /**
+     * Reads the latest values of several datarefs consistently.
+     * 
+     * <p>
+     * All values are read from the same state, i.e. no message is processed
+     * while reading.
+     * </p>
+     * 
+     * @param ids        Ids of the datarefs.
+     * @param into       Array to receive the values (<code>NaN</code> for
+     *                   datarefs without values).
+     * @param timestamps Array to receive the times of the values (can be
+     *                   <code>null</code>).
+     */
+    void snapshot(int[] ids, float[] into, long[] timestamps);
+
+}
@@ -0,0 +1,45 @@
+package de.painer.xplane;
+
+/**
+ * Configuration of an asynchronous dispatch stage.
+ * 
+ * <p>
+ * Without a dispatch stage, listeners are called directly by the thread
+ * receiving the messages from X-Plane, so a slow listener delays receiving. With
+ * a dispatch stage, received messages are put into a preallocated ring buffer
+ * and the listeners are called by separate consumer threads. With more than one
+ * consumer thread, the values of received messages are distributed by dataref:
+ * values of the same dataref (and elements of the same array) are always
+ * delivered in order by the same thread, values of different datarefs may be
+ * delivered in another order than received.
+ * </p>
+ * 
+ * @param capacity  Number of messages in the ring buffer (rounded up to a power
+ *                  of two).
+ * @param consumers Number of threads calling the listeners.
+ * @param policy    Behaviour when the ring buffer is full.
+ * 
+ * @see XPlaneInstance#connect(DispatchStage)
+ */
+public record DispatchStage(
+    int capacity,
+    int consumers,
+    OverflowPolicy policy
+) {
+
+    /**
+     * Constructor checking the values.
+     */
+    public DispatchStage {
+        if (capacity <= 0 || capacity > (1 << 20)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^20.");
+        }
+        if (consumers <= 0) {
+            throw new IllegalArgumentException("Number of consumers must be positive.");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Overflow policy must be set.");
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package de.painer.xplane;
+
+/**
+ * Statistics of the message dispatch of a connection.
+ * 
+ * @param dispatched Number of messages delivered to the listeners.
+ * @param dropped    Number of messages dropped because the dispatch stage was
+ *                   full.
+ * @param conflated  Number of messages merged into the latest values because the
+ *                   dispatch stage was full.
+ * @param queued     Number of messages currently waiting for dispatch.
+ */
+public record DispatchStatistics(
+    long dispatched,
+    long dropped,
+    long conflated,
+    int queued
+) { }
@@ -0,0 +1,45 @@
+package de.painer.xplane;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder for additional types of messages received from X-Plane.
+ * 
+ * <p>
+ * Messages start with a header of four ASCII characters and one further byte.
+ * RPOS, RREF and DATA messages are decoded by the library, decoders for other
+ * types (e.g. messages of plugins) can be added to a connection with
+ * {@link XPlane#addMessageDecoder(MessageDecoder)} or for all connections as
+ * service provider of this interface.
+ * </p>
+ * 
+ * <p>
+ * Decoders are called by the thread dispatching the messages of a connection,
+ * which may be the thread receiving the messages. They should therefore return
+ * quickly.
+ * </p>
+ */
+public interface MessageDecoder {
+
+    /**
+     * Returns the type of the decoded messages.
+     * 
+     * @return Header of the messages (four ASCII characters).
+     */
+    String type();
+
+    /**
+     * Decodes a received message.
+     * 
+     * <p>
+     * The buffer is positioned after the header and limited to the end of the
+     * message. It is reused for the following messages, so it must not be kept
+     * after the call.
+     * </p>
+     * 
+     * @param xplane  Connection the message was received from.
+     * @param message Content of the message after the header.
+     */
+    void decode(XPlane xplane, ByteBuffer message);
+
+}
@@ -0,0 +1,36 @@
+package de.painer.xplane;
+
+/**
+ * Behaviour of a dispatch stage when its buffer is full.
+ * 
+ * @see DispatchStage
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Wait until the listeners have processed a message. The receiving thread is
+     * blocked, so messages may be dropped by the operating system instead. With
+     * an {@link XPlaneEventLoop}, the blocked thread receives the messages of
+     * other connections as well.
+     */
+    BLOCK,
+
+    /**
+     * Drop the newly received message.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drop the oldest message not yet processed by the listeners. While the
+     * oldest slot is still being processed, the newly received message is
+     * dropped instead.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Keep only the latest position and the latest value per dataref until the
+     * listeners have caught up. Other messages are dropped.
+     */
+    CONFLATE
+
+}
@@ -0,0 +1,51 @@
+package de.painer.xplane;
+
+import java.time.Duration;
+
+/**
+ * Pacing of bulk subscriptions.
+ * 
+ * <p>
+ * Subscription requests are sent in batches, so X-Plane's receive buffer is not
+ * flooded. A subscription is confirmed by the first received value. Requests
+ * that are not confirmed within the timeout are sent again.
+ * </p>
+ * 
+ * @param batchSize      Number of requests sent at once.
+ * @param batchInterval  Time between two batches.
+ * @param confirmTimeout Time to wait for the first value before a request is
+ *                       sent again.
+ * @param maxRetries     Maximum number of repeated requests per dataref.
+ * 
+ * @see XPlane#watchDatarefs(java.util.Collection, int, SubscriptionPacing)
+ */
+public record SubscriptionPacing(
+    int batchSize,
+    Duration batchInterval,
+    Duration confirmTimeout,
+    int maxRetries
+) {
+
+    /**
+     * Default pacing with 20 requests every 10 ms and three retries after one
+     * second.
+     */
+    public static final SubscriptionPacing DEFAULT = new SubscriptionPacing(20, Duration.ofMillis(10),
+            Duration.ofSeconds(1), 3);
+
+    /**
+     * Constructor checking the values.
+     */
+    public SubscriptionPacing {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        if (batchInterval.isNegative() || confirmTimeout.isNegative()) {
+            throw new IllegalArgumentException("Durations must not be negative.");
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Number of retries must not be negative.");
+        }
+    }
+
+}
@@ -1,5 +1,16 @@
 package de.painer.xplane;
 
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+
+import de.painer.xplane.data.DatarefUpdate;
+import de.painer.xplane.data.Position;
+import de.painer.xplane.metrics.ConnectionMetrics;
+import de.painer.xplane.recording.PacketRecorder;
+
 /**
  * Connected X-Plane instance.
  */
@@ -24,15 +35,46 @@ public interface XPlane extends AutoCloseable {
      */
     void removeXPlaneListener(XPlaneListener listener);
 
+    /**
+     * Adds a decoder for an additional type of messages.
+     * 
+     * <p>
+     * A decoder for the same type is replaced. Decoders provided as services are
+     * added to each connection automatically.
+     * </p>
+     * 
+     * @param decoder Decoder to add.
+     * @throws IllegalArgumentException When the type is invalid or decoded by the
+     *                                  library.
+     */
+    void addMessageDecoder(MessageDecoder decoder);
+
+    /**
+     * Removes a decoder for an additional type of messages.
+     * 
+     * @param decoder Decoder to remove.
+     */
+    void removeMessageDecoder(MessageDecoder decoder);
+
     /**
      * Instruct X-Plane to send the position with the given frequency.
      * 
+     * <p>
+     * Position streams, publishers and derived datarefs request the position
+     * as well. X-Plane sends it with the highest frequency requested.
+     * </p>
+     * 
      * @param frequency Number of positions to send per second.
      */
     void watchPosition(int frequency);
 
     /**
      * Instruct X-Plane to not send any further positions.
+     * 
+     * <p>
+     * The position is still sent while position streams, publishers or derived
+     * datarefs use it.
+     * </p>
      */
     void unwatchPosition();
 
@@ -43,6 +85,42 @@ public interface XPlane extends AutoCloseable {
      */
     void sendCommand(String command);
 
+    /**
+     * Instruct X-Plane to send output groups of the Data Output screen.
+     * 
+     * @param indices Indices of the output groups.
+     * @see XPlaneListener#receivedData(de.painer.xplane.data.DataView)
+     */
+    void selectDataOutput(int... indices);
+
+    /**
+     * Instruct X-Plane to not send output groups any more.
+     * 
+     * @param indices Indices of the output groups.
+     */
+    void unselectDataOutput(int... indices);
+
+    /**
+     * Set the value of a dataref in X-Plane.
+     * 
+     * <p>
+     * Values are not sent immediately but with the next flush. When a dataref is
+     * written several times between two flushes, only the latest value is sent.
+     * </p>
+     * 
+     * @param dataref Dataref to write.
+     * @param value   New value.
+     * @see #setDatarefWriteFrequency(int)
+     */
+    void setDataref(String dataref, float value);
+
+    /**
+     * Set the maximum number of flushes of written datarefs per second.
+     * 
+     * @param frequency Number of flushes per second.
+     */
+    void setDatarefWriteFrequency(int frequency);
+
     /**
      * Instruct X-Plane to send a dataref with the given frequency.
      * 
@@ -55,9 +133,287 @@ public interface XPlane extends AutoCloseable {
      * Instruct X-Plane to not send a dataref any more.
      * 
      * @param dataref Dataref to not send any more.
+     * @throws IllegalArgumentException When the dataref is an element of a
+     *                                  watched array range.
      */
     void unwatchDataref(String dataref);
 
+    /**
+     * Instruct X-Plane to send a range of elements of an array dataref with the
+     * given frequency.
+     * 
+     * <p>
+     * The elements are delivered together to
+     * {@link XPlaneListener#receivedDatarefArray(String, int, float[])} instead
+     * of one by one. Watching the same range again changes the frequency.
+     * </p>
+     * 
+     * @param dataref   Array dataref without index.
+     * @param from      Index of the first element.
+     * @param to        Index of the last element.
+     * @param frequency Number of values per second (0 for just once).
+     * @throws IllegalArgumentException When the range is invalid or some
+     *                                  elements are already watched otherwise.
+     */
+    void watchDatarefArray(String dataref, int from, int to, int frequency);
+
+    /**
+     * Instruct X-Plane to not send a range of elements of an array dataref any
+     * more.
+     * 
+     * <p>
+     * Only whole ranges can be unwatched, as their elements are delivered
+     * together.
+     * </p>
+     * 
+     * @param dataref Array dataref without index.
+     * @param from    Index of the first element.
+     * @param to      Index of the last element.
+     * @throws IllegalArgumentException When the range is not a watched range.
+     */
+    void unwatchDatarefArray(String dataref, int from, int to);
+
+    /**
+     * Adds a virtual dataref computed from received values.
+     * 
+     * <p>
+     * The source of the pipeline is watched with the given frequency. Every
+     * received source value is passed through the pipeline by the receiving
+     * thread without allocating. The results are delivered as values of the
+     * virtual dataref, so they reach listeners, streams, publishers and the
+     * snapshot like values sent by X-Plane. Watching and unwatching the virtual
+     * dataref has no effect.
+     * </p>
+     * 
+     * @param dataref   Name of the virtual dataref.
+     * @param pipeline  Pipeline computing the values.
+     * @param frequency Number of source values per second.
+     * @throws IllegalArgumentException When the name is already used.
+     */
+    void addDerivedDataref(String dataref, DatarefPipeline pipeline, int frequency);
+
+    /**
+     * Removes a virtual dataref.
+     * 
+     * <p>
+     * The source stays watched, as it may still be used by listeners or other
+     * derived datarefs.
+     * </p>
+     * 
+     * @param dataref Name of the virtual dataref.
+     */
+    void removeDerivedDataref(String dataref);
+
+    /**
+     * Instruct X-Plane to send several datarefs with the given frequency.
+     * 
+     * <p>
+     * The requests are sent in paced batches in the background. Each
+     * subscription is confirmed by its first received value; requests without
+     * an answer are repeated according to the pacing.
+     * </p>
+     * 
+     * @param datarefs  Datarefs to send.
+     * @param frequency Number of values per second (0 for just once).
+     * @param pacing    Pacing of the requests.
+     * @return Future that completes when values were received for all datarefs
+     *         or completes exceptionally with a
+     *         {@link java.util.concurrent.TimeoutException} when some datarefs
+     *         did not answer after all retries.
+     */
+    CompletableFuture<Void> watchDatarefs(Collection<String> datarefs, int frequency, SubscriptionPacing pacing);
+
+    /**
+     * Instruct X-Plane to send several datarefs with the given frequency using
+     * the default pacing.
+     * 
+     * @param datarefs  Datarefs to send.
+     * @param frequency Number of values per second (0 for just once).
+     * @return Future that completes when values were received for all datarefs.
+     * @see #watchDatarefs(Collection, int, SubscriptionPacing)
+     */
+    default CompletableFuture<Void> watchDatarefs(Collection<String> datarefs, int frequency) {
+        return watchDatarefs(datarefs, frequency, SubscriptionPacing.DEFAULT);
+    }
+
+    /**
+     * Instruct X-Plane to not send several datarefs any more.
+     * 
+     * <p>
+     * The requests are sent in paced batches in the background.
+     * </p>
+     * 
+     * @param datarefs Datarefs to not send any more.
+     * @param pacing   Pacing of the requests.
+     * @return Future that completes when all requests are sent.
+     */
+    CompletableFuture<Void> unwatchDatarefs(Collection<String> datarefs, SubscriptionPacing pacing);
+
+    /**
+     * Instruct X-Plane to not send several datarefs any more using the default
+     * pacing.
+     * 
+     * @param datarefs Datarefs to not send any more.
+     * @return Future that completes when all requests are sent.
+     */
+    default CompletableFuture<Void> unwatchDatarefs(Collection<String> datarefs) {
+        return unwatchDatarefs(datarefs, SubscriptionPacing.DEFAULT);
+    }
+
+    /**
+     * Returns statistics about the dispatch of received messages to the
+     * listeners.
+     * 
+     * @return Current dispatch statistics.
+     * @see DispatchStage
+     */
+    DispatchStatistics getDispatchStatistics();
+
+    /**
+     * Returns the latest values of the watched datarefs.
+     * 
+     * <p>
+     * The snapshot is updated for every received message and can be polled
+     * instead of registering a listener.
+     * </p>
+     * 
+     * @return Snapshot of the latest values of this connection.
+     */
+    DatarefSnapshot getSnapshot();
+
+    /**
+     * Returns the metrics of this connection.
+     * 
+     * @return Live view of the metrics.
+     */
+    ConnectionMetrics getMetrics();
+
+    /**
+     * Starts or stops recording the messages of this connection.
+     * 
+     * <p>
+     * All messages received from and sent to X-Plane are passed to the
+     * recorder. Closing the recorder remains the task of the caller.
+     * </p>
+     * 
+     * @param recorder Recorder for the messages (<code>null</code> to stop
+     *                 recording).
+     */
+    void setPacketRecorder(PacketRecorder recorder);
+
+    /**
+     * Opens a blocking stream with the values of datarefs.
+     * 
+     * <p>
+     * The datarefs are watched with the given frequency and stay watched while
+     * the stream is open, even when they are unwatched otherwise. Closing the
+     * stream unwatches the datarefs not used otherwise.
+     * </p>
+     * 
+     * @param frequency Number of values per second.
+     * @param capacity  Maximum number of buffered values.
+     * @param datarefs  Datarefs to stream.
+     * @return Stream with the received values.
+     */
+    XPlaneStream<DatarefUpdate> openStream(int frequency, int capacity, String... datarefs);
+
+    /**
+     * Opens a blocking stream with the values of datarefs buffering up to 1024
+     * values.
+     * 
+     * @param frequency Number of values per second.
+     * @param datarefs  Datarefs to stream.
+     * @return Stream with the received values.
+     */
+    default XPlaneStream<DatarefUpdate> openStream(int frequency, String... datarefs) {
+        return openStream(frequency, 1024, datarefs);
+    }
+
+    /**
+     * Opens a blocking stream with the received positions.
+     * 
+     * <p>
+     * The position is watched with the given frequency until the stream is
+     * closed and not used otherwise.
+     * </p>
+     * 
+     * @param frequency Number of positions per second.
+     * @param capacity  Maximum number of buffered positions.
+     * @return Stream with the received positions.
+     */
+    XPlaneStream<Position> openPositionStream(int frequency, int capacity);
+
+    /**
+     * Opens a blocking stream with the received positions buffering up to 128
+     * positions.
+     * 
+     * @param frequency Number of positions per second.
+     * @return Stream with the received positions.
+     */
+    default XPlaneStream<Position> openPositionStream(int frequency) {
+        return openPositionStream(frequency, 128);
+    }
+
+    /**
+     * Creates a reactive publisher of dataref values.
+     * 
+     * <p>
+     * Values are only delivered as requested by the subscriber. Without demand,
+     * only the latest value per dataref is kept. The datarefs are watched with
+     * the given frequency while subscribed, even when they are unwatched
+     * otherwise, and unwatched when the last subscription of a dataref is
+     * cancelled unless they are watched otherwise. Subscriptions are completed
+     * when the connection is closed.
+     * </p>
+     * 
+     * @param frequency Number of values per second.
+     * @param executor  Executor calling the subscribers.
+     * @param datarefs  Datarefs to publish.
+     * @return Publisher of the values.
+     */
+    Flow.Publisher<DatarefUpdate> publishDatarefs(int frequency, Executor executor, String... datarefs);
+
+    /**
+     * Creates a reactive publisher of dataref values calling the subscribers by
+     * the common pool.
+     * 
+     * @param frequency Number of values per second.
+     * @param datarefs  Datarefs to publish.
+     * @return Publisher of the values.
+     * @see #publishDatarefs(int, Executor, String...)
+     */
+    default Flow.Publisher<DatarefUpdate> publishDatarefs(int frequency, String... datarefs) {
+        return publishDatarefs(frequency, ForkJoinPool.commonPool(), datarefs);
+    }
+
+    /**
+     * Creates a reactive publisher of positions.
+     * 
+     * <p>
+     * Positions are only delivered as requested by the subscriber. Without
+     * demand, only the latest position is kept. The position is watched with the
+     * given frequency while subscribed and unwatched when the last subscription
+     * is cancelled and the position is not used otherwise.
+     * </p>
+     * 
+     * @param frequency Number of positions per second.
+     * @param executor  Executor calling the subscribers.
+     * @return Publisher of the positions.
+     */
+    Flow.Publisher<Position> publishPosition(int frequency, Executor executor);
+
+    /**
+     * Creates a reactive publisher of positions calling the subscribers by the
+     * common pool.
+     * 
+     * @param frequency Number of positions per second.
+     * @return Publisher of the positions.
+     * @see #publishPosition(int, Executor)
+     */
+    default Flow.Publisher<Position> publishPosition(int frequency) {
+        return publishPosition(frequency, ForkJoinPool.commonPool());
+    }
+
     /**
      * Show an alert message in X-Plane.
      * 
@@ -2,7 +2,6 @@ package de.painer.xplane;
 
 import java.io.IOException;
 import java.net.Inet4Address;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.SocketAddress;
@@ -11,39 +10,62 @@ import java.net.StandardProtocolFamily;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.MembershipKey;
-import java.util.ArrayList;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.Semaphore;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.painer.xplane.data.Beacon;
 import de.painer.xplane.impl.DataReader;
+import de.painer.xplane.impl.DiscoveryCounters;
+import de.painer.xplane.impl.DiscoveryEvent;
+import de.painer.xplane.impl.StringCache;
 import de.painer.xplane.impl.XPlaneInstanceUDP;
+import de.painer.xplane.metrics.DiscoveryMetrics;
 
 /**
- * Singletion class for discovery of X-Plane instances.
+ * Discovery of X-Plane instances.
  * 
  * <p>
  * Clients should register as a listener for X-Plane instances. The client will
  * then be informed about new and missing instances until it is deregistered. If
  * there are already instances known, the method <code>foundInstance</code> will
- * be called immediately for each instace.
+ * be called right after registering for each instace.
  * </p>
  * 
  * <p>
- * The discovery of new instances is done in background threads. There will be
- * one thread per network interface and one thread for removing X-Plane
- * instances when there was no beacon for more than 30 seconds. The threads are
- * started automatically when the first listener registered and are stopped and
- * deleted automatically when the last listener is removed.
+ * Usually the singleton instance returned by {@link #getInstance()} is used.
+ * Discoveries with a different timeout or event executor can be created with
+ * {@link #create(Duration, Executor)}.
+ * </p>
+ * 
+ * <p>
+ * The discovery of new instances is done in one background thread. It listens
+ * for beacons on all network interfaces with a single non-blocking channel and
+ * removes X-Plane instances when there was no beacon within the timeout (30
+ * seconds by default). Network interfaces that come up or go down are detected
+ * while running. The thread is started automatically when the first listener
+ * registered and is stopped automatically when the last listener is removed.
+ * </p>
+ * 
+ * <p>
+ * Listeners are called on a separate event executor, never by the discovery
+ * thread, so a slow listener does not delay the discovery. The events are
+ * submitted in order, so with an executor running tasks in order, a listener
+ * never gets the lost event of an instance before its found event.
  * </p>
  */
 public final class XPlaneDiscovery {
@@ -54,7 +76,8 @@ public final class XPlaneDiscovery {
     private static final Logger LOG = LoggerFactory.getLogger(XPlaneDiscovery.class);
 
     /**
-     * Timeout for removing X-Plane instances when there is no beacon any more.
+     * Default timeout for removing X-Plane instances when there is no beacon any
+     * more.
      */
     public static final int TIMEOUT_SECONDS = 30;
 
@@ -63,10 +86,31 @@ public final class XPlaneDiscovery {
      */
     public static InetSocketAddress GROUP_ADDRESS = new InetSocketAddress("239.255.1.1", 49707);
 
+    /**
+     * Interval for checking for changed network interfaces.
+     */
+    private static final long INTERFACE_CHECK_NANOS = 5_000_000_000L;
+
+    /**
+     * Header of BECN messages as int in native byte order.
+     */
+    private static final int BECN = ByteBuffer.wrap("BECN".getBytes(StandardCharsets.US_ASCII))
+            .order(ByteOrder.nativeOrder()).getInt();
+
+    /**
+     * Minimum size of BECN messages (header, fixed fields and an empty host name).
+     */
+    private static final int MIN_BEACON_SIZE = 22;
+
     /**
      * Singleton instance of the class.
      */
-    private static final XPlaneDiscovery INSTANCE = new XPlaneDiscovery();
+    private static final XPlaneDiscovery INSTANCE = new XPlaneDiscovery(Duration.ofSeconds(TIMEOUT_SECONDS),
+            Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "xplane-discover-events");
+                thread.setDaemon(true);
+                return thread;
+            }));
 
     /**
      * Returns the singleton instance of this class.
@@ -77,73 +121,165 @@ public final class XPlaneDiscovery {
         return INSTANCE;
     }
 
+    /**
+     * Creates a new discovery independent of the singleton instance.
+     * 
+     * @param timeout       Timeout for removing X-Plane instances when there is
+     *                      no beacon any more.
+     * @param eventExecutor Executor for calling the listeners. Listeners are
+     *                      called in order when the executor runs tasks in order.
+     *                      The tasks are submitted while holding a lock, so
+     *                      the executor should not run them on the submitting
+     *                      thread.
+     * @return New discovery.
+     */
+    public static XPlaneDiscovery create(Duration timeout, Executor eventExecutor) {
+        return new XPlaneDiscovery(timeout, eventExecutor);
+    }
+
     /**
      * List of listeners actually registered.
      */
-    private final List<XPlaneDiscoveryListener> listeners = new ArrayList<>();
+    private final List<XPlaneDiscoveryListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Lock for consistent changes of listeners and instances.
+     * 
+     * <p>
+     * Ensures that each listener gets exactly one found event per instance and
+     * that the events are submitted to the event executor in order. The events
+     * are submitted while holding the lock, but listeners are only called by
+     * the executor.
+     * </p>
+     */
+    private final Object eventLock = new Object();
+
+    /**
+     * Currently known X-Plane instances by address of the beacons.
+     */
+    private final Map<InetSocketAddress, KnownInstance> instances = new ConcurrentHashMap<>();
 
     /**
-     * Semaphore to synchronize access to the instances across threads.
+     * Cache for the host names of the instances.
      */
-    private final Semaphore semaphore = new Semaphore(1);
+    private final StringCache hostNames = new StringCache(64);
 
     /**
-     * Currently known X-Plane instances.
+     * Metrics of the discovery.
      */
-    private final Map<InetSocketAddress, XPlaneInstance> instances = new HashMap<>();
+    private final DiscoveryCounters counters = new DiscoveryCounters(instances);
 
     /**
-     * Last time a beacon from an instance was received.
+     * Known instances ordered by the time of their next expiry check (only used
+     * by the discovery thread).
      */
-    private final Map<InetSocketAddress, Long> lastBeacons = new HashMap<>();
+    private final PriorityQueue<KnownInstance> deadlines = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.deadline - b.deadline, 0));
 
     /**
-     * Are the discovery threads currently running?
+     * Executor for calling the listeners.
+     */
+    private final Executor eventExecutor;
+
+    /**
+     * Timeout for removing X-Plane instances in nanoseconds.
+     */
+    private volatile long timeoutNanos;
+
+    /**
+     * Is the discovery thread currently running?
      */
     private volatile boolean running;
 
     /**
-     * List with discovery threads.
+     * Discovery thread.
+     */
+    private Thread thread;
+
+    /**
+     * Selector of the discovery thread.
      */
-    private List<Thread> threads;
+    private Selector selector;
 
     /**
      * Constructor.
+     * 
+     * @param timeout       Timeout for removing X-Plane instances.
+     * @param eventExecutor Executor for calling the listeners.
+     */
+    private XPlaneDiscovery(Duration timeout, Executor eventExecutor) {
+        this.eventExecutor = eventExecutor;
+        setTimeout(timeout);
+    }
+
+    /**
+     * Returns the metrics of the discovery.
+     * 
+     * @return Live view of the metrics.
      */
-    private XPlaneDiscovery() {
+    public DiscoveryMetrics getMetrics() {
+        return counters;
+    }
+
+    /**
+     * Returns the timeout for removing X-Plane instances when there is no beacon
+     * any more.
+     * 
+     * @return Current timeout.
+     */
+    public Duration getTimeout() {
+        return Duration.ofNanos(timeoutNanos);
+    }
+
+    /**
+     * Sets the timeout for removing X-Plane instances when there is no beacon
+     * any more.
+     * 
+     * <p>
+     * The new timeout is used from the next expiry check of each instance.
+     * </p>
+     * 
+     * @param timeout New timeout.
+     */
+    public void setTimeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive.");
+        }
+        this.timeoutNanos = timeout.toNanos();
     }
 
     /**
      * Adds a listener to the discovery class.
      * 
      * <p>
-     * When the discovery threads are currently running, <code>foundInstace</code>
-     * is directly called for each known instance. Otherwise, the discovery threads
-     * are started.
+     * When the discovery thread is currently running, <code>foundInstace</code>
+     * is called on the event executor for each known instance. Otherwise, the
+     * discovery thread is started.
      * </p>
      * 
      * @param listener Listener to register.
      */
-    public void addListener(XPlaneDiscoveryListener listener) {
+    public synchronized void addListener(XPlaneDiscoveryListener listener) {
         // do nothing if the listener is already registered
         if (listeners.contains(listener)) {
             return;
         }
 
-        // add listener to the list
-        listeners.add(listener);
-
-        // send known instances or start threads
-        if (running) {
-            semaphore.acquireUninterruptibly();
-            try {
-                for (XPlaneInstance instance : instances.values()) {
-                    listener.foundInstance(instance);
+        // add listener to the list and send known instances, submitted in the
+        // same lock as the events of the discovery thread, so a lost event
+        // never overtakes the found event of an instance
+        synchronized (eventLock) {
+            listeners.add(listener);
+            if (running) {
+                XPlaneDiscoveryListener[] target = { listener };
+                for (KnownInstance known : instances.values()) {
+                    fireEvent(target, known.instance(), true);
                 }
-            } finally {
-                semaphore.release();
             }
-        } else {
+        }
+
+        // start threads
+        if (!running) {
             startThreads();
         }
     }
@@ -157,7 +293,7 @@ public final class XPlaneDiscovery {
      * 
      * @param listener Listener to remove.
      */
-    public void removeListener(XPlaneDiscoveryListener listener) {
+    public synchronized void removeListener(XPlaneDiscoveryListener listener) {
         listeners.remove(listener);
         if (listeners.isEmpty()) {
             stopThreads();
@@ -165,198 +301,301 @@ public final class XPlaneDiscovery {
     }
 
     /**
-     * Start discovery threads for all valid network interfaces.
+     * Start discovery thread.
      */
     private void startThreads() {
-        // do nothin if threads are already running
+        // do nothing if thread is already running
         if (running) {
             return;
         }
 
-        // create list with threads for all valid network interfaces
-        LOG.debug("Starting threads for X-Plane discovery.");
+        // open selector and start thread
+        LOG.debug("Starting thread for X-Plane discovery.");
         try {
-            threads = NetworkInterface.networkInterfaces().filter(ifc -> checkNetworkInterface(ifc))
-                    .map(this::createThread).filter(Objects::nonNull).toList();
-        } catch (SocketException ex) {
-            threads = null;
-        }
-
-        // stop if no threads could be created
-        if (threads == null || threads.isEmpty()) {
-            running = false;
-            threads = null;
+            selector = Selector.open();
+        } catch (IOException ex) {
+            LOG.error("Could not open selector for discovery.", ex);
             return;
         }
-
-        // add thread for removing lost instances and start all threads
         running = true;
-        threads = new ArrayList<>(threads);
-        Thread gcThread = new Thread(this::lostInstancesLoop, "xplane-discover-gc");
-        gcThread.setDaemon(true);
-        threads.add(gcThread);
-        threads.forEach(Thread::start);
-    }
-
-    /**
-     * Creates a discovery thread for a given network interface.
-     * 
-     * @param ifc Network interface to create the thread for.
-     * @return Discovery thread for listening on the network interface.
-     */
-    private Thread createThread(final NetworkInterface ifc) {
-        LOG.debug("Create discovery thread for interface {}.", ifc.getName());
-        Thread thread = new Thread(() -> discoverLoop(ifc), "xplane-discover-" + ifc.getName());
+        thread = new Thread(this::discoverLoop, "xplane-discover");
         thread.setDaemon(true);
-        return thread;
+        thread.start();
     }
 
     /**
-     * Stops all discovery threads.
+     * Stops discovery thread.
      */
     private void stopThreads() {
         // do nothing if not currently running
         if (!running) {
             return;
         }
-        LOG.debug("Stopping threads for X-Plane discovery.");
+        LOG.debug("Stopping thread for X-Plane discovery.");
 
-        // stop all threads and clear instances
+        // stop thread and clear instances
         running = false;
-        for (Thread t : threads) {
-            try {
-                t.interrupt();
-                t.join();
-            } catch (InterruptedException ex) {
-                // this is normal behaviour
-            }
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
-        threads = null;
+        thread = null;
+        selector = null;
         instances.clear();
-        lastBeacons.clear();
+        deadlines.clear();
     }
 
     /**
-     * Execution loop of discovery threads.
-     * 
-     * @param ifc Network interface to check for instances.
+     * Execution loop of discovery thread.
      */
-    private void discoverLoop(final NetworkInterface ifc) {
-        // membership of UDP broadcast group
-        MembershipKey membership = null;
+    private void discoverLoop() {
+        // memberships of UDP broadcast group by network interface
+        Map<NetworkInterface, MembershipKey> memberships = new HashMap<>();
 
-        try {
+        try (Selector sel = selector;
+                DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)) {
             // create UDP channel to listen for BEACON broadcasts
-            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
             channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-            channel.bind(new InetSocketAddress(49707));
-            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, ifc);
-            membership = channel.join(InetAddress.getByName("239.255.1.1"), ifc);
+            channel.bind(new InetSocketAddress(GROUP_ADDRESS.getPort()));
+            channel.configureBlocking(false);
+            channel.register(sel, SelectionKey.OP_READ);
 
             // create buffer for reveiving data
             ByteBuffer buffer = ByteBuffer.allocate(1024);
             buffer.order(ByteOrder.nativeOrder());
 
             // execution loop
+            long nextInterfaceCheck = System.nanoTime();
             while (running) {
-                // receive next message
-                buffer.clear();
-                SocketAddress address = channel.receive(buffer);
-                if (!(address instanceof InetSocketAddress)) {
-                    continue;
+                // update memberships when network interfaces changed
+                long now = System.nanoTime();
+                if (now - nextInterfaceCheck >= 0) {
+                    updateMemberships(channel, memberships);
+                    nextInterfaceCheck = now + INTERFACE_CHECK_NANOS;
                 }
-                buffer.flip();
-                LOG.debug("Received {} bytes from {}.", buffer.remaining(), address);
-
-                // parse data and process beacon if BECN message
-                DataReader reader = new DataReader(buffer);
-                if ("BECN".equals(reader.readString(5))) {
-                    Beacon beacon = new Beacon(
-                        reader.readUnsignedByte(),
-                        reader.readUnsignedByte(),
-                        reader.readInt(),
-                        reader.readInt(),
-                        reader.readUnsignedInt(),
-                        reader.readUnsignedShort(),
-                        reader.readString(500)
-                    );
-                    processBeacon((InetSocketAddress) address, beacon);
+
+                // remove lost instances
+                removeLostInstances(now);
+
+                // wait for messages until the next check is due
+                long nextCheck = nextInterfaceCheck;
+                KnownInstance next = deadlines.peek();
+                if (next != null && next.deadline - nextCheck < 0) {
+                    nextCheck = next.deadline;
+                }
+                sel.select(Math.max(1, (nextCheck - now) / 1_000_000));
+                sel.selectedKeys().clear();
+
+                // receive all available messages
+                for (SocketAddress address = receive(channel, buffer); address != null; address = receive(channel,
+                        buffer)) {
+                    if (address instanceof InetSocketAddress inetAddress) {
+                        try {
+                            processMessage(inetAddress, buffer);
+                        } catch (RuntimeException ex) {
+                            // malformed messages must not stop the discovery
+                            counters.invalidMessage();
+                            LOG.debug("Could not process message from {}.", inetAddress, ex);
+                        }
+                    }
                 }
             }
-        } catch (ClosedByInterruptException ex) {
-            // this is normal behaviour during stopping of threads
-        } catch (IOException ex) {
-            LOG.error("Error during discovery on interface {}.", ifc.getName(), ex);
+        } catch (IOException | RuntimeException ex) {
+            counters.receiveError();
+            LOG.error("Error during discovery.", ex);
+
+            // mark as stopped, so the thread is started again with the next listener
+            running = false;
+        }
+
+        // drop memberships of UDP group
+        memberships.values().forEach(MembershipKey::drop);
+    }
+
+    /**
+     * Receives the next message without blocking.
+     * 
+     * @param channel Channel to receive from.
+     * @param buffer  Buffer for the message.
+     * @return Address of the sender or <code>null</code> if no message was
+     *         available.
+     * @throws IOException In case of receive errors.
+     */
+    private static SocketAddress receive(DatagramChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        SocketAddress address = channel.receive(buffer);
+        buffer.flip();
+        return address;
+    }
+
+    /**
+     * Joins the UDP group on new network interfaces and leaves it on interfaces
+     * which are gone.
+     * 
+     * @param channel     Channel receiving the beacons.
+     * @param memberships Current memberships by network interface.
+     */
+    private static void updateMemberships(DatagramChannel channel, Map<NetworkInterface, MembershipKey> memberships) {
+        // find valid network interfaces
+        List<NetworkInterface> interfaces;
+        try {
+            interfaces = NetworkInterface.networkInterfaces().filter(XPlaneDiscovery::checkNetworkInterface).toList();
+        } catch (SocketException ex) {
+            LOG.warn("Could not list network interfaces.", ex);
+            return;
+        }
+
+        // drop memberships of interfaces which are gone
+        memberships.entrySet().removeIf(e -> {
+            if (interfaces.contains(e.getKey()) && e.getValue().isValid()) {
+                return false;
+            }
+            LOG.debug("Leaving discovery on interface {}.", e.getKey().getName());
+            e.getValue().drop();
+            return true;
+        });
+
+        // join on new interfaces
+        for (NetworkInterface ifc : interfaces) {
+            if (memberships.containsKey(ifc)) {
+                continue;
+            }
+            try {
+                LOG.debug("Joining discovery on interface {}.", ifc.getName());
+                memberships.put(ifc, channel.join(GROUP_ADDRESS.getAddress(), ifc));
+            } catch (IOException ex) {
+                LOG.warn("Could not join discovery on interface {}.", ifc.getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Processes a received message.
+     * 
+     * <p>
+     * The beacon is only parsed completely when it is from an unknown instance.
+     * </p>
+     * 
+     * @param address Address from which the message was sent.
+     * @param buffer  Buffer with the message.
+     */
+    private void processMessage(InetSocketAddress address, ByteBuffer buffer) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received {} bytes from {}.", buffer.remaining(), address);
+        }
+        if (buffer.remaining() < MIN_BEACON_SIZE || buffer.getInt(0) != BECN) {
+            counters.invalidMessage();
+            return;
         }
 
-        // drop membership of UDP group if successfully joined
-        if (membership != null) {
-            membership.drop();
+        // only update time of last beacon for known instances
+        KnownInstance known = instances.get(address);
+        if (known != null) {
+            counters.beacon();
+            known.lastBeacon = System.nanoTime();
+            return;
         }
+
+        // parse beacon of new instance
+        DataReader reader = new DataReader(buffer.position(5), hostNames);
+        Beacon beacon = new Beacon(
+            reader.readUnsignedByte(),
+            reader.readUnsignedByte(),
+            reader.readInt(),
+            reader.readInt(),
+            reader.readUnsignedInt(),
+            reader.readUnsignedShort(),
+            reader.readString(500)
+        );
+        counters.beacon();
+        processBeacon(address, beacon);
     }
 
     /**
-     * Process a receviced beacon.
+     * Process a receviced beacon of a new instance.
      * 
      * @param address Address from which the beacon was sent.
      * @param beacon  Content of the beacon message.
      */
     private void processBeacon(InetSocketAddress address, Beacon beacon) {
-        semaphore.acquireUninterruptibly();
-        try {
-            // register time of currently recevied beacon
-            lastBeacons.put(address, System.currentTimeMillis());
-
-            // register instance and inform listeners if this is a newly found instance
-            if (!instances.containsKey(address)) {
-                InetSocketAddress instAddress = new InetSocketAddress(address.getAddress(), beacon.port());
-                XPlaneInstance instance = new XPlaneInstanceUDP(instAddress, beacon);
-                instances.put(address, instance);
-                for (var listener : listeners) {
-                    listener.foundInstance(instance);
-                }
-            }
-        } finally {
-            semaphore.release();
+        // create instance
+        InetSocketAddress instAddress = new InetSocketAddress(address.getAddress(), beacon.port());
+        XPlaneInstance instance = new XPlaneInstanceUDP(instAddress, beacon);
+        long now = System.nanoTime();
+        KnownInstance known = new KnownInstance(address, instance, now, now + timeoutNanos);
+
+        // register instance and inform listeners
+        synchronized (eventLock) {
+            instances.put(address, known);
+            fireEvent(listeners.toArray(XPlaneDiscoveryListener[]::new), instance, true);
         }
+        deadlines.add(known);
+        counters.found();
+        DiscoveryEvent.emit(instance, true);
     }
 
     /**
-     * Execution loop of thread for removing lost instances.
+     * Remove all lost instances.
+     * 
+     * <p>
+     * Only the instances whose expiry check is due are checked. Instances which
+     * received a beacon in the meantime are scheduled for a new check, so the
+     * costs depend on the number of due checks and not on the number of known
+     * instances.
+     * </p>
+     * 
+     * @param now Current time in nanoseconds.
      */
-    private void lostInstancesLoop() {
-        while (running) {
-            try {
-                Thread.sleep(1000);
-                removeLostInstances();
-            } catch (InterruptedException ex) {
-                // this is normal behaviour during stopping of threads
+    private void removeLostInstances(long now) {
+        for (KnownInstance known = deadlines.peek(); known != null && known.deadline - now <= 0; known = deadlines
+                .peek()) {
+            deadlines.poll();
+
+            // schedule a new check when there was a beacon in the meantime
+            long deadline = known.lastBeacon + timeoutNanos;
+            if (deadline - now > 0) {
+                known.deadline = deadline;
+                deadlines.add(known);
+                continue;
             }
+
+            // remove lost instance and inform listeners
+            synchronized (eventLock) {
+                instances.remove(known.address(), known);
+                fireEvent(listeners.toArray(XPlaneDiscoveryListener[]::new), known.instance(), false);
+            }
+            counters.lost();
+            DiscoveryEvent.emit(known.instance(), false);
         }
     }
 
     /**
-     * Remove all lost instances.
+     * Informs listeners about a found or lost instance on the event executor.
+     * 
+     * @param target   Listeners to inform.
+     * @param instance Found or lost instance.
+     * @param found    Was the instance found or lost?
      */
-    private void removeLostInstances() {
-        semaphore.acquireUninterruptibly();
-        try {
-            // find all instances where the last beacon was too long ago
-            final long threshold = System.currentTimeMillis() - TIMEOUT_SECONDS * 1000;
-            List<InetSocketAddress> lost = lastBeacons.entrySet().stream().filter(e -> e.getValue() < threshold)
-                    .map(e -> e.getKey()).toList();
-
-            // remove lost instances from the list and inform listeners
-            for (var l : lost) {
-                lastBeacons.remove(l);
-                XPlaneInstance instance = instances.remove(l);
-                for (var listener : listeners) {
-                    listener.lostInstance(instance);
+    private void fireEvent(XPlaneDiscoveryListener[] target, XPlaneInstance instance, boolean found) {
+        if (target.length == 0) {
+            return;
+        }
+        eventExecutor.execute(() -> {
+            for (XPlaneDiscoveryListener listener : target) {
+                try {
+                    if (found) {
+                        listener.foundInstance(instance);
+                    } else {
+                        listener.lostInstance(instance);
+                    }
+                } catch (RuntimeException ex) {
+                    counters.listenerError();
+                    LOG.error("Error in discovery listener {}.", listener, ex);
                 }
             }
-        } finally {
-            semaphore.release();
-        }
+        });
     }
 
     /**
@@ -379,4 +618,61 @@ public final class XPlaneDiscovery {
         }
     }
 
+    /**
+     * Known X-Plane instance.
+     */
+    private static final class KnownInstance {
+
+        /**
+         * Address from which the beacons are sent.
+         */
+        private final InetSocketAddress address;
+
+        /**
+         * X-Plane instance.
+         */
+        private final XPlaneInstance instance;
+
+        /**
+         * Time of the last received beacon in nanoseconds.
+         */
+        private volatile long lastBeacon;
+
+        /**
+         * Time of the next expiry check in nanoseconds (only used by the discovery
+         * thread).
+         */
+        private long deadline;
+
+        /**
+         * Constructor.
+         * 
+         * @param address    Address from which the beacons are sent.
+         * @param instance   X-Plane instance.
+         * @param lastBeacon Time of the last received beacon.
+         * @param deadline   Time of the first expiry check.
+         */
+        KnownInstance(InetSocketAddress address, XPlaneInstance instance, long lastBeacon, long deadline) {
+            this.address = address;
+            this.instance = instance;
+            this.lastBeacon = lastBeacon;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Returns the address from which the beacons are sent.
+         */
+        InetSocketAddress address() {
+            return address;
+        }
+
+        /**
+         * Returns the X-Plane instance.
+         */
+        XPlaneInstance instance() {
+            return instance;
+        }
+
+    }
+
 }
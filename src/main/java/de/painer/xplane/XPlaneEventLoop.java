@@ -0,0 +1,56 @@
+package de.painer.xplane;
+
+import java.io.IOException;
+
+import de.painer.xplane.impl.EventLoopGroup;
+
+/**
+ * Shared threads receiving the messages of many connections.
+ * 
+ * <p>
+ * By default, each connection has its own thread receiving messages. Connections
+ * created with an event loop instead register their channel with one of a fixed
+ * number of selector threads, so many simulators can be served by few threads.
+ * Without a dispatch stage, the listeners are called by the selector thread, so
+ * a slow listener delays all connections of the same thread. The same applies
+ * to a dispatch stage with {@link OverflowPolicy#BLOCK}: while its buffer is
+ * full, the selector thread waits and no connection of the thread receives
+ * messages. Use another policy to isolate the connections of a loop.
+ * </p>
+ * 
+ * @see XPlaneInstance#connect(XPlaneEventLoop, DispatchStage)
+ */
+public sealed interface XPlaneEventLoop extends AutoCloseable permits EventLoopGroup {
+
+    /**
+     * Creates an event loop.
+     * 
+     * @param threads Number of selector threads.
+     * @return Started event loop.
+     * @throws IOException When a selector could not be opened.
+     */
+    static XPlaneEventLoop create(int threads) throws IOException {
+        return new EventLoopGroup(threads);
+    }
+
+    /**
+     * Returns the number of selector threads.
+     * 
+     * @return Number of threads.
+     */
+    int getThreads();
+
+    /**
+     * Returns the number of registered connections.
+     * 
+     * @return Number of open connections using the event loop.
+     */
+    int getConnections();
+
+    /**
+     * Stops the selector threads and closes all registered channels.
+     */
+    @Override
+    void close();
+
+}
@@ -27,4 +27,28 @@ public interface XPlaneInstance {
      */
     XPlane connect() throws IOException;
 
+    /**
+     * Connects to the X-Plane instance with an asynchronous dispatch stage.
+     * 
+     * @param dispatchStage Configuration of the dispatch stage.
+     */
+    XPlane connect(DispatchStage dispatchStage) throws IOException;
+
+    /**
+     * Connects to the X-Plane instance receiving messages by an event loop.
+     * 
+     * <p>
+     * Without dispatch stage, the listeners are called by the thread of the event
+     * loop. A dispatch stage with {@link OverflowPolicy#BLOCK} blocks the thread
+     * of the event loop, and with it all connections of the thread, while its
+     * buffer is full. Closing the connection releases its channel and
+     * registration.
+     * </p>
+     * 
+     * @param eventLoop     Event loop receiving the messages.
+     * @param dispatchStage Configuration of the dispatch stage (<code>null</code>
+     *                      for calling the listeners by the event loop).
+     */
+    XPlane connect(XPlaneEventLoop eventLoop, DispatchStage dispatchStage) throws IOException;
+
 }
@@ -1,6 +1,8 @@
 package de.painer.xplane;
 
+import de.painer.xplane.data.DataView;
 import de.painer.xplane.data.Position;
+import de.painer.xplane.data.PositionView;
 
 /**
  * Listener to data received from X-Plane.
@@ -14,6 +16,22 @@ public interface XPlaneListener {
      */
     void receivedPosition(Position position);
 
+    /**
+     * Received current position without copying it.
+     * 
+     * <p>
+     * The view reads the values directly from the received message and is only
+     * valid during the call. Listeners that want to avoid allocations per message
+     * should override this method. The default implementation calls
+     * {@link #receivedPosition(Position)} with a copy of the position.
+     * </p>
+     * 
+     * @param position View on the currently received position.
+     */
+    default void receivedPosition(PositionView position) {
+        receivedPosition(position.toPosition());
+    }
+
     /**
      * Received value for a registered dataref.
      * 
@@ -22,4 +40,60 @@ public interface XPlaneListener {
      */
     void receivedDataref(String dataref, float value);
 
+    /**
+     * Received values for registered datarefs.
+     * 
+     * <p>
+     * All values of one RREF message are delivered with a single call. The arrays
+     * are reused for the following messages, so they are only valid during the
+     * call and only the first <code>count</code> entries are filled. The default
+     * implementation calls {@link #receivedDataref(String, float)} for each value.
+     * </p>
+     * 
+     * @param ids      Ids of the datarefs as used in the messages.
+     * @param datarefs Names of the datarefs.
+     * @param values   Current values of the datarefs.
+     * @param count    Number of received values.
+     */
+    default void receivedDatarefs(int[] ids, String[] datarefs, float[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            receivedDataref(datarefs[i], values[i]);
+        }
+    }
+
+    /**
+     * Received values for all registered elements of an array dataref.
+     * 
+     * <p>
+     * Called once all elements of the range have been received, which may take
+     * several messages for wide arrays. The array is reused for the following
+     * values, so it is only valid during the call. The default implementation
+     * calls {@link #receivedDataref(String, float)} for each element.
+     * </p>
+     * 
+     * @param dataref Name of the array dataref without index.
+     * @param from    Index of the first element.
+     * @param values  Current values of the elements.
+     * @see XPlane#watchDatarefArray(String, int, int, int)
+     */
+    default void receivedDatarefArray(String dataref, int from, float[] values) {
+        for (int i = 0; i < values.length; i++) {
+            receivedDataref(dataref + "[" + (from + i) + "]", values[i]);
+        }
+    }
+
+    /**
+     * Received records of the output groups selected for sending over UDP.
+     * 
+     * <p>
+     * The view reads the records directly from the received DATA message and is
+     * only valid during the call. The default implementation ignores the data.
+     * </p>
+     * 
+     * @param data View on the records of the message.
+     * @see XPlane#selectDataOutput(int...)
+     */
+    default void receivedData(DataView data) {
+    }
+
 }
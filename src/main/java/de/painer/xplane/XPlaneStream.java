@@ -0,0 +1,66 @@
+package de.painer.xplane;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking stream of data received from X-Plane.
+ * 
+ * <p>
+ * Received data is buffered in a bounded buffer per stream. When the buffer is
+ * full, the oldest element is dropped. Waiting for data parks the calling
+ * thread without holding a monitor, so streams can be consumed by virtual
+ * threads.
+ * </p>
+ * 
+ * <p>
+ * A stream keeps its datarefs or the position watched while it is open.
+ * Closing it releases them, and X-Plane stops sending the data unless it is
+ * still used by other streams, publishers, derived datarefs or an explicit
+ * watch.
+ * </p>
+ * 
+ * @param <T> Type of the elements of the stream.
+ * @see XPlane#openStream(int, String...)
+ * @see XPlane#openPositionStream(int)
+ */
+public interface XPlaneStream<T> extends AutoCloseable {
+
+    /**
+     * Takes the next element, waiting until one is available.
+     * 
+     * @return Next element.
+     * @throws InterruptedException  When the thread is interrupted while waiting.
+     * @throws IllegalStateException When the stream has been closed.
+     */
+    T take() throws InterruptedException;
+
+    /**
+     * Takes the next element, waiting up to the given time until one is
+     * available.
+     * 
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of the timeout.
+     * @return Next element or <code>null</code> if none arrived in time or the
+     *         stream has been closed.
+     * @throws InterruptedException When the thread is interrupted while waiting.
+     */
+    T poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Returns the number of elements dropped because the buffer was full.
+     * 
+     * @return Number of dropped elements.
+     */
+    long getDropped();
+
+    /**
+     * Closes the stream.
+     * 
+     * <p>
+     * Threads waiting for elements are woken up.
+     * </p>
+     */
+    @Override
+    void close();
+
+}
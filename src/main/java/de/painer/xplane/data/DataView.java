@@ -0,0 +1,144 @@
+package de.painer.xplane.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * View on the records of a DATA message.
+ *
+ * <p>
+ * X-Plane sends the output groups selected on the Data Output screen as DATA
+ * messages. Each message contains several records of a group index and eight
+ * values. The values are read directly from the buffer of the received
+ * message, so no objects are allocated per record. The view is reused for the
+ * following messages and therefore only valid during the listener call.
+ * </p>
+ */
+public final class DataView {
+
+    /**
+     * Size of one record in bytes (index and eight values).
+     */
+    public static final int RECORD_SIZE = 36;
+
+    /**
+     * Number of values per record.
+     */
+    public static final int VALUES = 8;
+
+    /**
+     * Buffer with the message data.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Offset of the first record in the buffer.
+     */
+    private int offset;
+
+    /**
+     * Number of records.
+     */
+    private int count;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The view has to be pointed to a message with
+     * {@link #wrap(ByteBuffer, int, int)} before reading values.
+     * </p>
+     */
+    public DataView() {
+    }
+
+    /**
+     * Points the view to the records in a buffer.
+     *
+     * <p>
+     * The buffer should already be set to the right byte order. Incomplete
+     * records at the end are ignored.
+     * </p>
+     *
+     * @param buffer Buffer with the message data.
+     * @param offset Offset of the first record in the buffer.
+     * @param length Length of the records in bytes.
+     * @return This view.
+     */
+    public DataView wrap(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.count = length / RECORD_SIZE;
+        return this;
+    }
+
+    /**
+     * Returns the number of records.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the index of the output group of a record.
+     *
+     * @param record Number of the record.
+     * @return Index of the output group as on the Data Output screen.
+     */
+    public int index(int record) {
+        return buffer.getInt(recordOffset(record));
+    }
+
+    /**
+     * Returns a value of a record.
+     *
+     * @param record Number of the record.
+     * @param value  Number of the value (0 to 7).
+     * @return Value.
+     */
+    public float value(int record, int value) {
+        if (value < 0 || value >= VALUES) {
+            throw new IndexOutOfBoundsException(value);
+        }
+        return buffer.getFloat(recordOffset(record) + 4 + 4 * value);
+    }
+
+    /**
+     * Copies the values of a record.
+     *
+     * @param record Number of the record.
+     * @param target Array for at least eight values.
+     */
+    public void values(int record, float[] target) {
+        int start = recordOffset(record) + 4;
+        for (int i = 0; i < VALUES; i++) {
+            target[i] = buffer.getFloat(start + 4 * i);
+        }
+    }
+
+    /**
+     * Returns the offset of a record.
+     *
+     * @param record Number of the record.
+     * @return Offset in the buffer.
+     */
+    private int recordOffset(int record) {
+        if (record < 0 || record >= count) {
+            throw new IndexOutOfBoundsException(record);
+        }
+        return offset + record * RECORD_SIZE;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("DataView[");
+        for (int i = 0; i < count; i++) {
+            text.append(i > 0 ? ", " : "").append(index(i)).append('=').append('[');
+            for (int j = 0; j < VALUES; j++) {
+                text.append(j > 0 ? ", " : "").append(value(i, j));
+            }
+            text.append(']');
+        }
+        return text.append(']').toString();
+    }
+
+}
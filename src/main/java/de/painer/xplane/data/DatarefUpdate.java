@@ -0,0 +1,15 @@
+package de.painer.xplane.data;
+
+/**
+ * Value of a dataref taken from a stream.
+ * 
+ * @param dataref   Name of the dataref.
+ * @param value     Value of the dataref.
+ * @param timestamp Time when the value was received as returned by
+ *                  {@link System#nanoTime()}.
+ */
+public record DatarefUpdate(
+    String dataref,
+    float value,
+    long timestamp
+) { }
@@ -0,0 +1,99 @@
+package de.painer.xplane.data;
+
+/**
+ * Values of a position usable as source of a derived dataref.
+ *
+ * @see de.painer.xplane.DatarefPipeline#of(PositionField)
+ */
+public enum PositionField {
+
+    /**
+     * Longitude in degrees.
+     */
+    LONGITUDE,
+
+    /**
+     * Latitude in degrees.
+     */
+    LATITUDE,
+
+    /**
+     * Elevation above mean sea level in meters.
+     */
+    ELEVATION_MSL,
+
+    /**
+     * Elevation above ground level in meters.
+     */
+    ELEVATION_AGL,
+
+    /**
+     * Pitch in degrees.
+     */
+    PITCH,
+
+    /**
+     * True heading in degrees.
+     */
+    HEADING,
+
+    /**
+     * Roll in degrees.
+     */
+    ROLL,
+
+    /**
+     * Speed in east direction in meters per second.
+     */
+    SPEED_X,
+
+    /**
+     * Speed in up direction in meters per second.
+     */
+    SPEED_Y,
+
+    /**
+     * Speed in south direction in meters per second.
+     */
+    SPEED_Z,
+
+    /**
+     * Roll rate in radians per second.
+     */
+    ROLL_RATE,
+
+    /**
+     * Pitch rate in radians per second.
+     */
+    PITCH_RATE,
+
+    /**
+     * Yaw rate in radians per second.
+     */
+    YAW_RATE;
+
+    /**
+     * Reads the value from a position.
+     *
+     * @param position View on a received position.
+     * @return Value of this field.
+     */
+    public double of(PositionView position) {
+        return switch (this) {
+            case LONGITUDE -> position.longitude();
+            case LATITUDE -> position.latitude();
+            case ELEVATION_MSL -> position.elevationMSL();
+            case ELEVATION_AGL -> position.elevationAGL();
+            case PITCH -> position.pitch();
+            case HEADING -> position.heading();
+            case ROLL -> position.roll();
+            case SPEED_X -> position.speedX();
+            case SPEED_Y -> position.speedY();
+            case SPEED_Z -> position.speedZ();
+            case ROLL_RATE -> position.rollRate();
+            case PITCH_RATE -> position.pitchRate();
+            case YAW_RATE -> position.yawRate();
+        };
+    }
+
+}
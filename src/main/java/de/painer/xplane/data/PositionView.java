@@ -0,0 +1,187 @@
+package de.painer.xplane.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * View on the content of a RPOS message.
+ *
+ * <p>
+ * In contrast to {@link Position}, the values are read directly from the buffer
+ * of the received message, so no objects are allocated for a received position.
+ * The view is reused for the following messages and therefore only valid during
+ * the listener call. Use {@link #toPosition()} to keep the position.
+ * </p>
+ */
+public final class PositionView {
+
+    /**
+     * Size of the position data in bytes.
+     */
+    public static final int SIZE = 64;
+
+    /**
+     * Buffer with the message data.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Offset of the position data in the buffer.
+     */
+    private int offset;
+
+    /**
+     * Position copied from the current data (created on demand).
+     */
+    private Position position;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The view has to be pointed to a message with
+     * {@link #wrap(ByteBuffer, int)} before reading values.
+     * </p>
+     */
+    public PositionView() {
+    }
+
+    /**
+     * Points the view to the position data in a buffer.
+     *
+     * <p>
+     * The buffer should already be set to the right byte order.
+     * </p>
+     *
+     * @param buffer Buffer with the message data.
+     * @param offset Offset of the position data in the buffer.
+     * @return This view.
+     */
+    public PositionView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.position = null;
+        return this;
+    }
+
+    /**
+     * Returns the longitude in degrees.
+     */
+    public double longitude() {
+        return buffer.getDouble(offset);
+    }
+
+    /**
+     * Returns the latitude in degrees.
+     */
+    public double latitude() {
+        return buffer.getDouble(offset + 8);
+    }
+
+    /**
+     * Returns the elevation above mean sea level in meters.
+     */
+    public double elevationMSL() {
+        return buffer.getDouble(offset + 16);
+    }
+
+    /**
+     * Returns the elevation above ground level in meters.
+     */
+    public float elevationAGL() {
+        return buffer.getFloat(offset + 24);
+    }
+
+    /**
+     * Returns the pitch in degrees.
+     */
+    public float pitch() {
+        return buffer.getFloat(offset + 28);
+    }
+
+    /**
+     * Returns the true heading in degrees.
+     */
+    public float heading() {
+        return buffer.getFloat(offset + 32);
+    }
+
+    /**
+     * Returns the roll in degrees.
+     */
+    public float roll() {
+        return buffer.getFloat(offset + 36);
+    }
+
+    /**
+     * Returns the speed in east direction in meters per second.
+     */
+    public float speedX() {
+        return buffer.getFloat(offset + 40);
+    }
+
+    /**
+     * Returns the speed in up direction in meters per second.
+     */
+    public float speedY() {
+        return buffer.getFloat(offset + 44);
+    }
+
+    /**
+     * Returns the speed in south direction in meters per second.
+     */
+    public float speedZ() {
+        return buffer.getFloat(offset + 48);
+    }
+
+    /**
+     * Returns the roll rate in radians per second.
+     */
+    public float rollRate() {
+        return buffer.getFloat(offset + 52);
+    }
+
+    /**
+     * Returns the pitch rate in radians per second.
+     */
+    public float pitchRate() {
+        return buffer.getFloat(offset + 56);
+    }
+
+    /**
+     * Returns the yaw rate in radians per second.
+     */
+    public float yawRate() {
+        return buffer.getFloat(offset + 60);
+    }
+
+    /**
+     * Copies the current data of the view into a position.
+     *
+     * <p>
+     * The copy is created only once per message, so all callers during one
+     * listener dispatch get the same instance.
+     * </p>
+     *
+     * @return Position with the current data.
+     */
+    public Position toPosition() {
+        if (position == null) {
+            position = new Position(
+                    longitude(),
+                    latitude(),
+                    elevationMSL(),
+                    elevationAGL(),
+                    pitch(),
+                    heading(),
+                    roll(),
+                    speedX(),
+                    speedY(),
+                    speedZ(),
+                    rollRate(),
+                    pitchRate(),
+                    yawRate());
+        }
+        return position;
+    }
+
+}
@@ -0,0 +1,191 @@
+package de.painer.xplane.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.painer.xplane.XPlaneStream;
+
+/**
+ * Base class of streams with a bounded buffer of primitive values.
+ *
+ * <p>
+ * Subclasses store the elements in preallocated primitive arrays, so offering
+ * an element does not allocate. Elements are only converted to objects when
+ * they are taken by the consumer. Waiting uses a {@link ReentrantLock} instead
+ * of monitors.
+ * </p>
+ *
+ * @param <T> Type of the elements of the stream.
+ */
+abstract class BlockingStream<T> implements XPlaneStream<T> {
+
+    /**
+     * Lock for the buffer.
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition signalled when elements are available or the stream is closed.
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Capacity of the buffer.
+     */
+    protected final int capacity;
+
+    /**
+     * Index of the oldest element.
+     */
+    private int head;
+
+    /**
+     * Number of buffered elements.
+     */
+    private int count;
+
+    /**
+     * Number of dropped elements.
+     */
+    private volatile long dropped;
+
+    /**
+     * Is the stream closed?
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Capacity of the buffer.
+     */
+    protected BlockingStream(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Reserves the index for a new element.
+     *
+     * <p>
+     * Must be called with the lock held. Drops the oldest element if the buffer
+     * is full. The element has to be stored before calling {@link #signal()}.
+     * </p>
+     *
+     * @return Index for storing the new element.
+     */
+    protected final int reserve() {
+        if (count == capacity) {
+            head = (head + 1) % capacity;
+            count--;
+            dropped++;
+        }
+        return (head + count++) % capacity;
+    }
+
+    /**
+     * Signals waiting consumers after an element was stored.
+     *
+     * <p>
+     * Must be called with the lock held.
+     * </p>
+     */
+    protected final void signal() {
+        notEmpty.signal();
+    }
+
+    /**
+     * Creates the element stored at an index.
+     *
+     * <p>
+     * Called with the lock held.
+     * </p>
+     *
+     * @param index Index of the element.
+     * @return Element.
+     */
+    protected abstract T element(int index);
+
+    /**
+     * Removes the stream from its source.
+     */
+    protected abstract void detach();
+
+    /**
+     * Checks whether the stream is closed.
+     *
+     * @return Is the stream closed?
+     */
+    protected final boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (closed) {
+                    throw new IllegalStateException("Stream is closed.");
+                }
+                notEmpty.await();
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (closed || nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        detach();
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest element.
+     *
+     * @return Oldest element.
+     */
+    private T next() {
+        T element = element(head);
+        head = (head + 1) % capacity;
+        count--;
+        return element;
+    }
+
+}
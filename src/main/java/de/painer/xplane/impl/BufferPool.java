@@ -0,0 +1,88 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool of direct buffers for sending messages.
+ *
+ * <p>
+ * When a heap buffer is sent over a channel, the JDK copies it into a temporary
+ * direct buffer first. The pool keeps a small number of direct buffers that are
+ * reused for all messages of a connection. Acquiring and releasing buffers does
+ * not take any locks. If all buffers are in use, a new buffer is allocated which
+ * is dropped when it is released to a full pool.
+ * </p>
+ */
+final class BufferPool {
+
+    /**
+     * Pooled buffers (<code>null</code> for buffers in use).
+     */
+    private final AtomicReferenceArray<ByteBuffer> buffers;
+
+    /**
+     * Size of each buffer.
+     */
+    private final int bufferSize;
+
+    /**
+     * Constructor.
+     *
+     * @param poolSize   Number of buffers in the pool.
+     * @param bufferSize Size of each buffer.
+     */
+    BufferPool(int poolSize, int bufferSize) {
+        this.buffers = new AtomicReferenceArray<>(poolSize);
+        this.bufferSize = bufferSize;
+        for (int i = 0; i < poolSize; i++) {
+            buffers.set(i, allocate());
+        }
+    }
+
+    /**
+     * Takes a buffer from the pool.
+     *
+     * @return Cleared buffer in native byte order.
+     */
+    ByteBuffer acquire() {
+        for (int i = 0; i < buffers.length(); i++) {
+            ByteBuffer buffer = buffers.get(i);
+            if (buffer != null && buffers.compareAndSet(i, buffer, null)) {
+                return buffer.clear();
+            }
+        }
+        return allocate();
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * <p>
+     * Buffers not created by the pool are ignored.
+     * </p>
+     *
+     * @param buffer Buffer to return.
+     */
+    void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        for (int i = 0; i < buffers.length(); i++) {
+            if (buffers.get(i) == null && buffers.compareAndSet(i, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Allocates a new buffer.
+     *
+     * @return Newly allocated direct buffer.
+     */
+    private ByteBuffer allocate() {
+        return ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+    }
+
+}
@@ -0,0 +1,255 @@
+package de.painer.xplane.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.SubscriptionPacing;
+import de.painer.xplane.XPlane;
+
+/**
+ * Paced sending of subscription requests for many datarefs.
+ *
+ * <p>
+ * The requests are sent in batches from a shared background thread. When
+ * watching datarefs, each request is confirmed by the first received value and
+ * repeated if no value arrives in time.
+ * </p>
+ */
+final class BulkSubscription implements Runnable {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(BulkSubscription.class);
+
+    /**
+     * Scheduler shared by all bulk subscriptions.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "xplane-subscribe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Connection to send the requests to.
+     */
+    private final XPlane xplane;
+
+    /**
+     * Registry of the connection used for checking confirmations.
+     */
+    private final DatarefRegistry registry;
+
+    /**
+     * Datarefs to subscribe or unsubscribe.
+     */
+    private final List<String> datarefs;
+
+    /**
+     * Frequency of the subscription (negative for unsubscribing).
+     */
+    private final int frequency;
+
+    /**
+     * Pacing of the requests.
+     */
+    private final SubscriptionPacing pacing;
+
+    /**
+     * Future completed when all subscriptions are confirmed.
+     */
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    /**
+     * Time of the last request per dataref (nanoseconds).
+     */
+    private final long[] sentAt;
+
+    /**
+     * Number of requests per dataref.
+     */
+    private final int[] attempts;
+
+    /**
+     * Index of the next dataref that has not been requested yet.
+     */
+    private int next;
+
+    /**
+     * Constructor.
+     *
+     * @param xplane    Connection to send the requests to.
+     * @param registry  Registry of the connection.
+     * @param datarefs  Datarefs to subscribe or unsubscribe.
+     * @param frequency Frequency of the subscription (negative for
+     *                  unsubscribing).
+     * @param pacing    Pacing of the requests.
+     */
+    private BulkSubscription(XPlane xplane, DatarefRegistry registry, Collection<String> datarefs, int frequency,
+            SubscriptionPacing pacing) {
+        this.xplane = xplane;
+        this.registry = registry;
+        this.datarefs = new ArrayList<>(new LinkedHashSet<>(datarefs));
+        this.frequency = frequency;
+        this.pacing = pacing;
+        this.sentAt = new long[this.datarefs.size()];
+        this.attempts = new int[this.datarefs.size()];
+    }
+
+    /**
+     * Starts watching datarefs.
+     *
+     * @param xplane    Connection to send the requests to.
+     * @param registry  Registry of the connection.
+     * @param datarefs  Datarefs to watch.
+     * @param frequency Number of values per second.
+     * @param pacing    Pacing of the requests.
+     * @return Future completed when values were received for all datarefs.
+     */
+    static CompletableFuture<Void> watch(XPlane xplane, DatarefRegistry registry, Collection<String> datarefs,
+            int frequency, SubscriptionPacing pacing) {
+        return start(new BulkSubscription(xplane, registry, datarefs, Math.max(frequency, 0), pacing));
+    }
+
+    /**
+     * Starts unwatching datarefs.
+     *
+     * @param xplane   Connection to send the requests to.
+     * @param registry Registry of the connection.
+     * @param datarefs Datarefs to unwatch.
+     * @param pacing   Pacing of the requests.
+     * @return Future completed when all requests are sent.
+     */
+    static CompletableFuture<Void> unwatch(XPlane xplane, DatarefRegistry registry, Collection<String> datarefs,
+            SubscriptionPacing pacing) {
+        return start(new BulkSubscription(xplane, registry, datarefs, -1, pacing));
+    }
+
+    /**
+     * Schedules the first batch of a bulk subscription.
+     *
+     * @param subscription Subscription to start.
+     * @return Future of the subscription.
+     */
+    private static CompletableFuture<Void> start(BulkSubscription subscription) {
+        LOG.debug("Starting bulk subscription for {} datarefs.", subscription.datarefs.size());
+        SCHEDULER.execute(subscription);
+        return subscription.future;
+    }
+
+    @Override
+    public void run() {
+        // stop when cancelled or completed otherwise
+        if (future.isDone()) {
+            return;
+        }
+
+        try {
+            if (frequency < 0 ? unwatchBatch() : watchBatch()) {
+                return;
+            }
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            return;
+        }
+        SCHEDULER.schedule(this, pacing.batchInterval().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends the next batch of unsubscriptions.
+     *
+     * @return Is the bulk subscription finished?
+     */
+    private boolean unwatchBatch() {
+        for (int sent = 0; sent < pacing.batchSize() && next < datarefs.size(); sent++, next++) {
+            xplane.unwatchDataref(datarefs.get(next));
+        }
+        if (next < datarefs.size()) {
+            return false;
+        }
+        future.complete(null);
+        return true;
+    }
+
+    /**
+     * Sends the next batch of subscriptions and checks for confirmations.
+     *
+     * @return Is the bulk subscription finished?
+     */
+    private boolean watchBatch() {
+        final long now = System.nanoTime();
+        final long timeout = pacing.confirmTimeout().toNanos();
+        int sent = 0;
+
+        // repeat requests which were not confirmed in time
+        boolean pending = false;
+        List<String> failed = null;
+        for (int i = 0; i < next; i++) {
+            String dataref = datarefs.get(i);
+            if (attempts[i] == 0 || registry.isConfirmed(dataref)) {
+                continue;
+            }
+            if (registry.id(dataref) < 0) {
+                // unwatched in the meantime
+                attempts[i] = 0;
+                continue;
+            }
+            if (now - sentAt[i] < timeout) {
+                pending = true;
+            } else if (attempts[i] > pacing.maxRetries()) {
+                if (failed == null) {
+                    failed = new ArrayList<>();
+                }
+                failed.add(dataref);
+            } else if (sent < pacing.batchSize()) {
+                LOG.debug("Repeating request for dataref {}.", dataref);
+                request(i, now);
+                sent++;
+                pending = true;
+            } else {
+                pending = true;
+            }
+        }
+
+        // send new requests
+        for (; sent < pacing.batchSize() && next < datarefs.size(); sent++, next++) {
+            request(next, now);
+            pending = true;
+        }
+        if (pending || next < datarefs.size()) {
+            return false;
+        }
+
+        // all requests are confirmed or failed
+        if (failed != null) {
+            future.completeExceptionally(new TimeoutException("No values received for datarefs " + failed + "."));
+        } else {
+            future.complete(null);
+        }
+        return true;
+    }
+
+    /**
+     * Sends the request for a dataref.
+     *
+     * @param index Index of the dataref.
+     * @param now   Current time (nanoseconds).
+     */
+    private void request(int index, long now) {
+        xplane.watchDataref(datarefs.get(index), frequency);
+        sentAt[index] = now;
+        attempts[index]++;
+    }
+
+}
@@ -0,0 +1,265 @@
+package de.painer.xplane.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class of subscriptions keeping only the latest value.
+ *
+ * <p>
+ * The dispatching thread stores received values in preallocated primitive
+ * fields of the subscription and never waits for the subscriber. Values are
+ * converted to objects and passed to the subscriber by the executor as long as
+ * there is demand. Without demand, newer values replace the stored ones, so
+ * slow subscribers receive the latest state instead of an unbounded backlog.
+ * </p>
+ *
+ * <p>
+ * Calls to the subscriber are serialized by a work-in-progress counter: only
+ * the task that increments it from zero delivers, all others just make it
+ * check again.
+ * </p>
+ *
+ * @param <T> Type of the published elements.
+ */
+abstract class ConflatingSubscription<T> implements Flow.Subscription {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ConflatingSubscription.class);
+
+    /**
+     * Maximum number of elements delivered by one task, so subscriptions
+     * sharing an executor take turns.
+     */
+    private static final int MAX_BATCH = 32;
+
+    /**
+     * Lock for the stored values.
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Subscriber receiving the elements.
+     */
+    private final Flow.Subscriber<? super T> subscriber;
+
+    /**
+     * Executor calling the subscriber.
+     */
+    private final Executor executor;
+
+    /**
+     * Number of requested but not yet delivered elements.
+     */
+    private final AtomicLong demand = new AtomicLong();
+
+    /**
+     * Number of pending delivery requests.
+     */
+    private final AtomicInteger work = new AtomicInteger();
+
+    /**
+     * Task delivering the stored values.
+     */
+    private final Runnable drainTask = this::drain;
+
+    /**
+     * Error to deliver instead of further elements.
+     */
+    private volatile Throwable error;
+
+    /**
+     * Was the publisher completed?
+     */
+    private volatile boolean completed;
+
+    /**
+     * Was the subscription cancelled or terminated?
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Constructor.
+     *
+     * @param subscriber Subscriber receiving the elements.
+     * @param executor   Executor calling the subscriber.
+     */
+    protected ConflatingSubscription(Flow.Subscriber<? super T> subscriber, Executor executor) {
+        this.subscriber = subscriber;
+        this.executor = executor;
+    }
+
+    /**
+     * Takes the oldest stored value that was not delivered yet.
+     *
+     * <p>
+     * Called with the lock held.
+     * </p>
+     *
+     * @return Element or <code>null</code> if no new value was stored.
+     */
+    protected abstract T poll();
+
+    /**
+     * Removes the subscription from its source.
+     *
+     * <p>
+     * Called once after cancelling or terminating the subscription.
+     * </p>
+     */
+    protected abstract void detach();
+
+    /**
+     * Schedules the delivery after a value was stored.
+     *
+     * <p>
+     * Without demand, nothing is scheduled, as the next request delivers the
+     * stored value anyway.
+     * </p>
+     */
+    protected final void stored() {
+        if (demand.get() > 0) {
+            signal();
+        }
+    }
+
+    /**
+     * Schedules the delivery.
+     */
+    private void signal() {
+        if (work.getAndIncrement() == 0) {
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException ex) {
+                work.set(0);
+                terminate(ex);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the subscription was cancelled.
+     *
+     * @return Was the subscription cancelled or terminated?
+     */
+    protected final boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Completes the subscription after the source was closed.
+     */
+    final void complete() {
+        completed = true;
+        signal();
+    }
+
+    /**
+     * Terminates the subscription with an error.
+     *
+     * @param ex Error to pass to the subscriber.
+     */
+    final void terminate(Throwable ex) {
+        error = ex;
+        signal();
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            terminate(new IllegalArgumentException("Number of requested elements must be positive."));
+            return;
+        }
+        long current;
+        long next;
+        do {
+            current = demand.get();
+            next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!demand.compareAndSet(current, next));
+        signal();
+    }
+
+    @Override
+    public void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            detach();
+        }
+    }
+
+    /**
+     * Delivers stored values while there is demand.
+     */
+    private void drain() {
+        int missed = 1;
+        int delivered = 0;
+        do {
+            while (!cancelled) {
+                if (delivered == MAX_BATCH) {
+                    // continue with a new task and keep the pending requests
+                    resubmit();
+                    return;
+                }
+                // errors and completion do not need any demand
+                Throwable failure = error;
+                if (failure != null) {
+                    cancel();
+                    subscriber.onError(failure);
+                    break;
+                }
+                if (demand.get() == 0) {
+                    if (completed) {
+                        cancel();
+                        subscriber.onComplete();
+                    }
+                    break;
+                }
+                T element;
+                lock.lock();
+                try {
+                    element = poll();
+                } finally {
+                    lock.unlock();
+                }
+                if (element == null) {
+                    if (completed) {
+                        cancel();
+                        subscriber.onComplete();
+                    }
+                    break;
+                }
+                demand.decrementAndGet();
+                delivered++;
+                try {
+                    subscriber.onNext(element);
+                } catch (RuntimeException ex) {
+                    LOG.error("Error in subscriber, cancelling subscription.", ex);
+                    cancel();
+                }
+            }
+            missed = work.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Continues delivering by a new task.
+     */
+    private void resubmit() {
+        try {
+            executor.execute(drainTask);
+        } catch (RejectedExecutionException ex) {
+            cancel();
+            subscriber.onError(ex);
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package de.painer.xplane.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import de.painer.xplane.metrics.ConnectionMetrics;
+import de.painer.xplane.metrics.Histogram;
+
+/**
+ * Counters of a connection.
+ *
+ * <p>
+ * The counters are striped, so recording from the receiving thread, the
+ * dispatch threads and the sending threads does not contend.
+ * </p>
+ */
+final class ConnectionCounters implements ConnectionMetrics {
+
+    /**
+     * Number of received messages.
+     */
+    private final LongAdder receivedMessages = new LongAdder();
+
+    /**
+     * Number of received bytes.
+     */
+    private final LongAdder receivedBytes = new LongAdder();
+
+    /**
+     * Number of errors while receiving.
+     */
+    private final LongAdder receiveErrors = new LongAdder();
+
+    /**
+     * Number of sent messages.
+     */
+    private final LongAdder sentMessages = new LongAdder();
+
+    /**
+     * Number of sent bytes.
+     */
+    private final LongAdder sentBytes = new LongAdder();
+
+    /**
+     * Number of errors while sending.
+     */
+    private final LongAdder sendErrors = new LongAdder();
+
+    /**
+     * Number of invalid messages.
+     */
+    private final LongAdder decodeErrors = new LongAdder();
+
+    /**
+     * Number of messages with unknown type.
+     */
+    private final LongAdder unknownMessages = new LongAdder();
+
+    /**
+     * Number of exceptions thrown by listeners.
+     */
+    private final LongAdder listenerErrors = new LongAdder();
+
+    /**
+     * Time needed by the listeners per message.
+     */
+    private final FixedHistogram listenerTime = new FixedHistogram();
+
+    /**
+     * Registry of the watched datarefs.
+     */
+    private final DatarefRegistry registry;
+
+    /**
+     * Latest values of the watched datarefs.
+     */
+    private final SnapshotTable snapshot;
+
+    /**
+     * Constructor.
+     *
+     * @param registry Registry of the watched datarefs.
+     * @param snapshot Latest values of the watched datarefs.
+     */
+    ConnectionCounters(DatarefRegistry registry, SnapshotTable snapshot) {
+        this.registry = registry;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Counts a received message.
+     *
+     * @param bytes Size of the message.
+     */
+    void received(int bytes) {
+        receivedMessages.increment();
+        receivedBytes.add(bytes);
+    }
+
+    /**
+     * Counts an error while receiving.
+     */
+    void receiveError() {
+        receiveErrors.increment();
+    }
+
+    /**
+     * Counts a sent message.
+     *
+     * @param bytes Size of the message.
+     */
+    void sent(int bytes) {
+        sentMessages.increment();
+        sentBytes.add(bytes);
+    }
+
+    /**
+     * Counts an error while sending.
+     */
+    void sendError() {
+        sendErrors.increment();
+    }
+
+    /**
+     * Counts an invalid message.
+     */
+    void decodeError() {
+        decodeErrors.increment();
+    }
+
+    /**
+     * Counts a message with unknown type.
+     */
+    void unknownMessage() {
+        unknownMessages.increment();
+    }
+
+    /**
+     * Counts an exception thrown by a listener.
+     */
+    void listenerError() {
+        listenerErrors.increment();
+    }
+
+    /**
+     * Records the time needed by the listeners for a message.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+    void listenerTime(long nanos) {
+        listenerTime.record(nanos);
+    }
+
+    @Override
+    public long getReceivedMessages() {
+        return receivedMessages.sum();
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    @Override
+    public long getReceiveErrors() {
+        return receiveErrors.sum();
+    }
+
+    @Override
+    public long getSentMessages() {
+        return sentMessages.sum();
+    }
+
+    @Override
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    @Override
+    public long getSendErrors() {
+        return sendErrors.sum();
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    @Override
+    public long getUnknownMessages() {
+        return unknownMessages.sum();
+    }
+
+    @Override
+    public long getListenerErrors() {
+        return listenerErrors.sum();
+    }
+
+    @Override
+    public Histogram getListenerTime() {
+        return listenerTime;
+    }
+
+    @Override
+    public void datarefs(DatarefConsumer consumer) {
+        for (String dataref : registry.datarefs()) {
+            int id = registry.id(dataref);
+            if (id >= 0) {
+                consumer.accept(dataref, snapshot.updates(id), snapshot.timestamp(id));
+            }
+        }
+    }
+
+}
@@ -1,6 +1,9 @@
 package de.painer.xplane.impl;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Conversion utility from incoming messages to data.
@@ -9,14 +12,35 @@ import java.nio.ByteBuffer;
  * When reading unsigned data, it is converted to the next bigger data type to
  * avoid possible overflows as Java does not know unsigned data types.
  * </p>
+ * 
+ * <p>
+ * Strings are read in bulk: the null-termination is searched eight bytes at a
+ * time and the string is created directly from the byte range. With a
+ * {@link StringCache}, repeated strings are returned as cached instances.
+ * </p>
  */
 public final class DataReader {
 
+    /**
+     * Lowest bit of each byte in a long.
+     */
+    private static final long LOW_BITS = 0x0101010101010101L;
+
+    /**
+     * Highest bit of each byte in a long.
+     */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
     /**
      * Buffer to read from.
      */
     private final ByteBuffer buffer;
 
+    /**
+     * Cache for read strings (<code>null</code> for creating new strings).
+     */
+    private final StringCache cache;
+
     /**
      * Constructor.
      * 
@@ -28,7 +52,28 @@ public final class DataReader {
      * @param buffer Message data to read from.
      */
     public DataReader(ByteBuffer buffer) {
+        this(buffer, null);
+    }
+
+    /**
+     * Constructor with cache for the read strings.
+     * 
+     * @param buffer Message data to read from.
+     * @param cache  Cache for the read strings (<code>null</code> for creating new
+     *               strings).
+     */
+    public DataReader(ByteBuffer buffer, StringCache cache) {
         this.buffer = buffer;
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the number of bytes remaining in the buffer.
+     * 
+     * @return Number of bytes that can still be read.
+     */
+    public int remaining() {
+        return buffer.remaining();
     }
 
     /**
@@ -124,12 +169,15 @@ public final class DataReader {
      * @return String read from the buffer.
      */
     public String readString(int maxLength) {
-        StringBuilder sb = new StringBuilder();
-        int index = 0;
-        for (byte b = buffer.get(); b != 0 && index < maxLength; b = buffer.get(), index++) {
-            sb.append((char) b);
+        // the byte after the maximum length is consumed like a null-termination
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int end = indexOfZero(buffer, start, Math.min(start + maxLength, limit));
+        if (end == limit) {
+            throw new BufferUnderflowException();
         }
-        return sb.toString();
+        buffer.position(end + 1);
+        return string(start, end - start);
     }
 
     /**
@@ -144,14 +192,77 @@ public final class DataReader {
      * @return String read from the buffer.
      */
     public String readFullString(int length) {
-        StringBuilder sb = new StringBuilder();
-        int index = 0;
-        for (byte b = buffer.get(); b != 0 && index < length - 1; b = buffer.get(), index++) {
-            sb.append((char) b);
+        int start = buffer.position();
+        if (buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        int end = indexOfZero(buffer, start, start + length - 1);
+        buffer.position(start + length);
+        return string(start, end - start);
+    }
+
+    /**
+     * Creates a string from a range of the buffer.
+     * 
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes.
+     * @return String from the cache or new string.
+     */
+    private String string(int offset, int length) {
+        return cache != null ? cache.get(buffer, offset, length) : decode(buffer, offset, length);
+    }
+
+    /**
+     * Creates a string with one character per byte (ISO 8859-1).
+     * 
+     * @param buffer Buffer with the bytes.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes.
+     * @return New string.
+     */
+    static String decode(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.ISO_8859_1);
         }
-        for (index++; index < length; index++) {
-            buffer.get();
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Searches the first zero byte in a range of a buffer.
+     * 
+     * <p>
+     * Eight bytes are checked at once: subtracting one from each byte sets the
+     * highest bit of zero bytes, which is masked out for bytes that had it set
+     * before. Bytes after a zero byte may be marked as well, so only the first
+     * marked byte is significant.
+     * </p>
+     * 
+     * @param buffer Buffer to search.
+     * @param from   Offset of the first byte to check.
+     * @param to     Offset after the last byte to check.
+     * @return Offset of the first zero byte or <code>to</code> if there is none.
+     */
+    static int indexOfZero(ByteBuffer buffer, int from, int to) {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int index = from;
+        for (; index + 8 <= to; index += 8) {
+            long word = buffer.getLong(index);
+            if (bigEndian) {
+                word = Long.reverseBytes(word);
+            }
+            long zeros = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (zeros != 0) {
+                return index + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
         }
-        return sb.toString();
+        for (; index < to; index++) {
+            if (buffer.get(index) == 0) {
+                return index;
+            }
+        }
+        return to;
     }
+
 }
@@ -1,13 +1,29 @@
 package de.painer.xplane.impl;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Conversion utility for sending data.
+ * 
+ * <p>
+ * Strings are written with one byte per character. For buffers backed by an
+ * array, strings are copied and padded in bulk.
+ * </p>
  */
 public final class DataWriter {
 
+    /**
+     * Spaces for padding buffers without array.
+     */
+    private static final byte[] SPACES = new byte[256];
+
+    static {
+        Arrays.fill(SPACES, (byte) 32);
+    }
+
     /**
      * Buffer that will be filled with the data.
      */
@@ -23,6 +39,21 @@ public final class DataWriter {
         buffer.order(ByteOrder.nativeOrder());
     }
 
+    /**
+     * Constructor for writing into an existing buffer.
+     * 
+     * <p>
+     * The buffer is cleared and set to native byte order.
+     * </p>
+     * 
+     * @param buffer Buffer for constructing data.
+     */
+    public DataWriter(ByteBuffer buffer) {
+        this.buffer = buffer;
+        buffer.clear();
+        buffer.order(ByteOrder.nativeOrder());
+    }
+
     /**
      * Finished the data in the buffer and returns it.
      * 
@@ -92,9 +123,7 @@ public final class DataWriter {
      * @param data String to write to the buffer.
      */
     public void writeString(String data) {
-        for (int index = 0; index < data.length(); index++) {
-            buffer.put((byte) data.charAt(index));
-        }
+        putChars(data, data.length());
         buffer.put((byte) 0);
     }
 
@@ -110,13 +139,52 @@ public final class DataWriter {
      * @param length Length of data to write to the buffer.
      */
     public void writeString(String data, int length) {
-        int index;
-        for (index = 0; index < data.length() && index < length - 1; index++) {
-            buffer.put((byte) data.charAt(index));
-        }
+        int count = Math.min(data.length(), length - 1);
+        putChars(data, count);
         buffer.put((byte) 0);
-        for (index++; index < length; index++) {
-            buffer.put((byte) 32);
+        putSpaces(length - count - 1);
+    }
+
+    /**
+     * Writes the first characters of a string with one byte each.
+     * 
+     * @param data  String to write.
+     * @param count Number of characters to write.
+     */
+    @SuppressWarnings("deprecation")
+    private void putChars(String data, int count) {
+        if (buffer.remaining() < count) {
+            throw new BufferOverflowException();
+        }
+        int position = buffer.position();
+        if (buffer.hasArray()) {
+            // copies the low bytes of the characters in bulk
+            data.getBytes(0, count, buffer.array(), buffer.arrayOffset() + position);
+        } else {
+            for (int index = 0; index < count; index++) {
+                buffer.put(position + index, (byte) data.charAt(index));
+            }
+        }
+        buffer.position(position + count);
+    }
+
+    /**
+     * Writes spaces.
+     * 
+     * @param count Number of spaces.
+     */
+    private void putSpaces(int count) {
+        if (buffer.remaining() < count) {
+            throw new BufferOverflowException();
+        }
+        if (buffer.hasArray()) {
+            int start = buffer.arrayOffset() + buffer.position();
+            Arrays.fill(buffer.array(), start, start + count, (byte) 32);
+            buffer.position(buffer.position() + count);
+        } else {
+            for (int done = 0; done < count; done += SPACES.length) {
+                buffer.put(SPACES, 0, Math.min(SPACES.length, count - done));
+            }
         }
     }
 
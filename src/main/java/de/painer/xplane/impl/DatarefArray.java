@@ -0,0 +1,122 @@
+package de.painer.xplane.impl;
+
+/**
+ * Subscription of a range of elements of an array dataref.
+ *
+ * <p>
+ * The elements are registered with a contiguous range of ids, so the element
+ * of a received value is the distance of its id to the first id.
+ * </p>
+ */
+final class DatarefArray {
+
+    /**
+     * Name of the array dataref.
+     */
+    private final String dataref;
+
+    /**
+     * Index of the first element.
+     */
+    private final int from;
+
+    /**
+     * Names of the elements.
+     */
+    private final String[] elements;
+
+    /**
+     * Id of the first element.
+     */
+    private final int firstId;
+
+    /**
+     * Constructor.
+     *
+     * @param dataref Name of the array dataref.
+     * @param from    Index of the first element.
+     * @param to      Index of the last element.
+     * @param firstId Id of the first element.
+     */
+    DatarefArray(String dataref, int from, int to, int firstId) {
+        this.dataref = dataref;
+        this.from = from;
+        this.elements = new String[to - from + 1];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = element(dataref, from + i);
+        }
+        this.firstId = firstId;
+    }
+
+    /**
+     * Returns the name of an element of an array dataref.
+     *
+     * @param dataref Name of the array dataref.
+     * @param index   Index of the element.
+     * @return Name of the element.
+     */
+    static String element(String dataref, int index) {
+        return dataref + "[" + index + "]";
+    }
+
+    /**
+     * Returns the name of the array dataref.
+     */
+    String dataref() {
+        return dataref;
+    }
+
+    /**
+     * Returns the index of the first element.
+     */
+    int from() {
+        return from;
+    }
+
+    /**
+     * Returns the number of elements.
+     */
+    int size() {
+        return elements.length;
+    }
+
+    /**
+     * Returns the name of an element.
+     *
+     * @param element Number of the element in the range.
+     * @return Name of the element.
+     */
+    String element(int element) {
+        return elements[element];
+    }
+
+    /**
+     * Returns the id of the first element.
+     */
+    int firstId() {
+        return firstId;
+    }
+
+    /**
+     * Returns the number of an element in the range.
+     *
+     * @param id Id of the element.
+     * @return Number of the element.
+     */
+    int elementOf(int id) {
+        return id - firstId;
+    }
+
+    /**
+     * Checks whether this subscription covers the same elements.
+     *
+     * @param dataref Name of the array dataref.
+     * @param from    Index of the first element.
+     * @param to      Index of the last element.
+     * @return Are the elements the same?
+     */
+    boolean covers(String dataref, int from, int to) {
+        return this.dataref.equals(dataref) && this.from == from && elements.length == to - from + 1;
+    }
+
+}
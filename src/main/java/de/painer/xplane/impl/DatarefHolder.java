@@ -0,0 +1,56 @@
+package de.painer.xplane.impl;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Connection watching datarefs and the position on behalf of streams,
+ * publishers and derived datarefs.
+ *
+ * <p>
+ * Held datarefs are counted in the registry, so they stay watched until the
+ * last holder lets them go, even when they are unwatched explicitly in the
+ * meantime. The holders of the position are counted by frequency, and the
+ * position is watched with the highest frequency requested.
+ * </p>
+ */
+interface DatarefHolder {
+
+    /**
+     * Watches a dataref for a stream or publisher.
+     *
+     * <p>
+     * The consumer is attached with the id of the dataref before the dataref
+     * is requested from X-Plane, so it receives the first values as well.
+     * </p>
+     *
+     * @param dataref   Name of the dataref.
+     * @param frequency Number of values per second.
+     * @param attach    Action attaching the consumer with the id of the
+     *                  dataref.
+     */
+    void hold(String dataref, int frequency, IntConsumer attach);
+
+    /**
+     * Lets go datarefs of a stream or publisher and unwatches those not used
+     * otherwise.
+     *
+     * @param datarefs Names of the datarefs.
+     */
+    void unhold(String... datarefs);
+
+    /**
+     * Watches the position for a stream, publisher or derived dataref.
+     *
+     * @param frequency Number of positions per second.
+     */
+    void holdPosition(int frequency);
+
+    /**
+     * Lets go the position of a stream, publisher or derived dataref and
+     * unwatches it when not used otherwise.
+     *
+     * @param frequency Number of positions per second requested by the holder.
+     */
+    void unholdPosition(int frequency);
+
+}
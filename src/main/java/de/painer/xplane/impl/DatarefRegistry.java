@@ -0,0 +1,584 @@
+package de.painer.xplane.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry for the ids of watched datarefs.
+ *
+ * <p>
+ * Each watched dataref gets an id that is sent to X-Plane with the RREF request
+ * and returned by X-Plane with every value. The lower 16 bits of the id are a
+ * slot in the registry, the upper bits are a generation counter of the slot.
+ * Slots of unwatched datarefs are reused with the next generation, so values
+ * that still arrive for an old subscription are not credited to a new one.
+ * </p>
+ *
+ * <p>
+ * Registering and releasing datarefs is thread-safe. Looking up the name of a
+ * received id does not take any locks and can be done from the receiving thread
+ * at any time.
+ * </p>
+ *
+ * <p>
+ * A registered dataref is confirmed as soon as the first value for it has been
+ * received.
+ * </p>
+ *
+ * <p>
+ * Besides being watched explicitly, datarefs can be held by streams and
+ * publishers. A dataref is only released when it is neither watched nor held
+ * any more, so unwatching a dataref does not starve the streams and publishers
+ * using its id.
+ * </p>
+ *
+ * <p>
+ * Elements of array datarefs can be registered as a whole with a contiguous
+ * range of slots. Released slots are kept in a bit set, so ranges are reused
+ * like single slots and repeated registrations do not exhaust the slots.
+ * </p>
+ */
+public final class DatarefRegistry {
+
+    /**
+     * Number of bits of an id used for the slot.
+     */
+    private static final int SLOT_BITS = 16;
+
+    /**
+     * Mask for getting the slot from an id.
+     */
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+
+    /**
+     * Mask for the generation of an id (keeps ids positive).
+     */
+    private static final int GENERATION_MASK = 0x7FFF;
+
+    /**
+     * Number of bits of a slot used for the index inside a page.
+     */
+    private static final int PAGE_BITS = 8;
+
+    /**
+     * Number of slots per page.
+     */
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * Maximum number of slots.
+     */
+    public static final int MAX_SLOTS = 1 << SLOT_BITS;
+
+    /**
+     * Registered datarefs by name.
+     */
+    private final ConcurrentHashMap<String, Entry> byName = new ConcurrentHashMap<>();
+
+    /**
+     * Registered datarefs by slot, split into lazily allocated pages.
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<Entry>> pages = new AtomicReferenceArray<>(
+            MAX_SLOTS / PAGE_SIZE);
+
+    /**
+     * Slots which have been released before (guarded by the bit set).
+     */
+    private final BitSet freeSlots = new BitSet();
+
+    /**
+     * Generations of the next ids by slot (guarded by the bit set).
+     */
+    private int[] generations = new int[PAGE_SIZE];
+
+    /**
+     * Next slot that has never been used (guarded by the bit set).
+     */
+    private int nextSlot;
+
+    /**
+     * Were any array datarefs registered?
+     */
+    private volatile boolean arrays;
+
+    /**
+     * Returns the slot of an id.
+     *
+     * @param id Id of a dataref.
+     * @return Slot of the id.
+     */
+    public static int slot(int id) {
+        return id & SLOT_MASK;
+    }
+
+    /**
+     * Registers a dataref watched explicitly.
+     *
+     * @param dataref Name of the dataref.
+     * @return Id of the dataref (the existing one when already registered).
+     */
+    public int register(String dataref) {
+        return byName.compute(dataref, (name, entry) -> {
+            entry = entry != null ? entry : allocate(name);
+            entry.watched = true;
+            return entry;
+        }).id();
+    }
+
+    /**
+     * Registers a holder of a dataref.
+     *
+     * <p>
+     * The dataref is not released before the holder lets it go with
+     * {@link #unhold(String)}.
+     * </p>
+     *
+     * @param dataref Name of the dataref.
+     * @return Id of the dataref (the existing one when already registered).
+     */
+    int hold(String dataref) {
+        return byName.compute(dataref, (name, entry) -> {
+            entry = entry != null ? entry : allocate(name);
+            entry.holders++;
+            return entry;
+        }).id();
+    }
+
+    /**
+     * Removes a holder of a dataref.
+     *
+     * @param dataref Name of the dataref.
+     * @return Id of the dataref if it was released or -1 if it is still used.
+     */
+    int unhold(String dataref) {
+        int[] released = { -1 };
+        byName.computeIfPresent(dataref, (name, entry) -> {
+            if (entry.holders > 0) {
+                entry.holders--;
+            }
+            if (entry.holders > 0 || entry.watched || entry.array != null) {
+                return entry;
+            }
+            clear(entry);
+            released[0] = entry.id();
+            return null;
+        });
+        return released[0];
+    }
+
+    /**
+     * Registers a range of elements of an array dataref.
+     *
+     * @param dataref Name of the array dataref.
+     * @param from    Index of the first element.
+     * @param to      Index of the last element.
+     * @return Subscription of the elements (the existing one when the same
+     *         range is already registered).
+     * @throws IllegalArgumentException When some elements are already registered
+     *                                  separately or in another range.
+     */
+    DatarefArray registerArray(String dataref, int from, int to) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("Invalid range [" + from + ", " + to + "].");
+        }
+        Entry existing = byName.get(DatarefArray.element(dataref, from));
+        if (existing != null && existing.array != null && existing.array.covers(dataref, from, to)) {
+            return existing.array;
+        }
+
+        // register elements and undo all when one is already registered
+        int size = to - from + 1;
+        int first = allocate(size);
+        DatarefArray array = new DatarefArray(dataref, from, to, id(first));
+        arrays = true;
+        for (int i = 0; i < size; i++) {
+            Entry entry = new Entry(array.element(i), array.firstId() + i, array);
+            if (byName.putIfAbsent(entry.dataref(), entry) != null) {
+                for (int j = 0; j < i; j++) {
+                    clear(byName.remove(array.element(j)));
+                }
+                free(first + i, size - i);
+                throw new IllegalArgumentException("Dataref " + entry.dataref() + " is already watched.");
+            }
+            publish(entry);
+        }
+        return array;
+    }
+
+    /**
+     * Releases a dataref watched explicitly.
+     *
+     * <p>
+     * The slot of the dataref can be used for another dataref afterwards,
+     * unless the dataref is still held.
+     * </p>
+     *
+     * @param dataref Name of the dataref.
+     * @return Id of the released dataref or -1 if it was not registered or is
+     *         still held.
+     * @throws IllegalArgumentException When the dataref is an element of a
+     *                                  registered array.
+     */
+    public int release(String dataref) {
+        int[] released = { -1 };
+        byName.computeIfPresent(dataref, (name, entry) -> {
+            if (entry.array != null) {
+                throw new IllegalArgumentException("Dataref " + dataref + " is watched as element of "
+                        + entry.array.dataref() + ", unwatch the whole range.");
+            }
+            entry.watched = false;
+            if (entry.holders > 0) {
+                return entry;
+            }
+            clear(entry);
+            released[0] = entry.id();
+            return null;
+        });
+        return released[0];
+    }
+
+    /**
+     * Releases a range of elements of an array dataref.
+     *
+     * <p>
+     * Only whole ranges can be released, as the elements are assembled
+     * together.
+     * </p>
+     *
+     * @param dataref Name of the array dataref.
+     * @param from    Index of the first element.
+     * @param to      Index of the last element.
+     * @return Released subscription or <code>null</code> if the range was not
+     *         registered.
+     * @throws IllegalArgumentException When the range is not the registered one.
+     */
+    DatarefArray releaseArray(String dataref, int from, int to) {
+        Entry entry = byName.get(DatarefArray.element(dataref, from));
+        if (entry == null) {
+            return null;
+        }
+        DatarefArray array = entry.array;
+        if (array == null || !array.covers(dataref, from, to)) {
+            throw new IllegalArgumentException("Dataref " + dataref + "[" + from + ".." + to
+                    + "] is not watched as one range.");
+        }
+        for (int i = 0; i < array.size(); i++) {
+            Entry element = byName.get(array.element(i));
+            if (element != null && element.array == array && byName.remove(element.dataref(), element)) {
+                clear(element);
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Returns the array subscription of a registered dataref.
+     *
+     * @param dataref Name of the dataref.
+     * @return Subscription of the array or <code>null</code> if the dataref is
+     *         not registered as array element.
+     */
+    DatarefArray arrayOf(String dataref) {
+        Entry entry = byName.get(dataref);
+        return entry != null ? entry.array : null;
+    }
+
+    /**
+     * Returns the id of a dataref.
+     *
+     * @param dataref Name of the dataref.
+     * @return Id of the dataref or -1 if it is not registered.
+     */
+    public int id(String dataref) {
+        Entry entry = byName.get(dataref);
+        return entry != null ? entry.id() : -1;
+    }
+
+    /**
+     * Checks whether a value has been received for a dataref.
+     *
+     * @param dataref Name of the dataref.
+     * @return Is the dataref registered and was a value received for it?
+     */
+    public boolean isConfirmed(String dataref) {
+        Entry entry = byName.get(dataref);
+        return entry != null && entry.confirmed;
+    }
+
+    /**
+     * Returns the name of the dataref with the given id.
+     *
+     * @param id Id of the dataref.
+     * @return Name of the dataref or <code>null</code> if the id is unknown or
+     *         belongs to a released subscription.
+     */
+    public String lookup(int id) {
+        Entry entry = entry(id);
+        return entry != null ? entry.dataref() : null;
+    }
+
+    /**
+     * Returns the name of the dataref for a received value.
+     *
+     * <p>
+     * In contrast to {@link #lookup(int)}, the dataref is marked as confirmed.
+     * </p>
+     *
+     * @param id Id of the dataref.
+     * @return Name of the dataref or <code>null</code> if the id is unknown or
+     *         belongs to a released subscription.
+     */
+    public String received(int id) {
+        Entry entry = entry(id);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.confirmed) {
+            entry.confirmed = true;
+        }
+        return entry.dataref();
+    }
+
+    /**
+     * Returns the array subscription of a received value.
+     *
+     * @param id Id of the dataref.
+     * @return Subscription of the array or <code>null</code> if the id does not
+     *         belong to an array element.
+     */
+    DatarefArray array(int id) {
+        if (!arrays) {
+            return null;
+        }
+        Entry entry = entry(id);
+        return entry != null ? entry.array : null;
+    }
+
+    /**
+     * Returns the names of all registered datarefs.
+     *
+     * @return Live view of the registered datarefs.
+     */
+    public Set<String> datarefs() {
+        return byName.keySet();
+    }
+
+    /**
+     * Returns the number of registered datarefs.
+     *
+     * @return Number of registered datarefs.
+     */
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * Returns the entry with the given id.
+     *
+     * @param id Id of the dataref.
+     * @return Entry of the dataref or <code>null</code> if the id is unknown or
+     *         belongs to a released subscription.
+     */
+    private Entry entry(int id) {
+        if (id < 0) {
+            return null;
+        }
+        int slot = slot(id);
+        AtomicReferenceArray<Entry> page = pages.get(slot >>> PAGE_BITS);
+        if (page == null) {
+            return null;
+        }
+        Entry entry = page.get(slot & (PAGE_SIZE - 1));
+        return entry != null && entry.id() == id ? entry : null;
+    }
+
+    /**
+     * Clears the slot of a removed entry and makes it available again with
+     * the next generation.
+     *
+     * @param entry Entry removed from the names.
+     */
+    private void clear(Entry entry) {
+        int slot = slot(entry.id());
+        pages.get(slot >>> PAGE_BITS).set(slot & (PAGE_SIZE - 1), null);
+        synchronized (freeSlots) {
+            generations[slot] = ((entry.id() >>> SLOT_BITS) + 1) & GENERATION_MASK;
+        }
+        free(slot, 1);
+    }
+
+    /**
+     * Allocates a slot for a new dataref and publishes it.
+     *
+     * @param dataref Name of the dataref.
+     * @return Entry for the dataref.
+     */
+    private Entry allocate(String dataref) {
+        Entry entry = new Entry(dataref, id(allocate(1)), null);
+        publish(entry);
+        return entry;
+    }
+
+    /**
+     * Allocates a range of contiguous slots.
+     *
+     * <p>
+     * Released slots are preferred. A free range at the end of the used slots
+     * is extended with fresh slots. All slots of the range get the same
+     * generation, so the ids of the range are contiguous as well.
+     * </p>
+     *
+     * @param size Number of slots.
+     * @return First slot of the range.
+     * @throws IllegalStateException When no range of the size is available.
+     */
+    private int allocate(int size) {
+        synchronized (freeSlots) {
+            for (int start = freeSlots.nextSetBit(0); start >= 0; start = freeSlots.nextSetBit(start)) {
+                int end = freeSlots.nextClearBit(start);
+                if (end - start >= size || (end == nextSlot && start + size <= MAX_SLOTS)) {
+                    freeSlots.clear(start, Math.min(end, start + size));
+                    take(Math.max(nextSlot, start + size));
+                    int generation = 0;
+                    for (int slot = start; slot < start + size; slot++) {
+                        generation = Math.max(generation, generations[slot]);
+                    }
+                    Arrays.fill(generations, start, start + size, generation);
+                    return start;
+                }
+                start = end;
+            }
+            if (nextSlot + size > MAX_SLOTS) {
+                throw new IllegalStateException("Too many watched datarefs.");
+            }
+            int first = nextSlot;
+            take(first + size);
+            return first;
+        }
+    }
+
+    /**
+     * Marks all slots before the given one as used at least once.
+     *
+     * <p>
+     * Must be called with the bit set locked.
+     * </p>
+     *
+     * @param end Slot after the last used slot.
+     */
+    private void take(int end) {
+        if (end > generations.length) {
+            generations = Arrays.copyOf(generations, Math.min(Math.max(end, generations.length * 2), MAX_SLOTS));
+        }
+        nextSlot = Math.max(nextSlot, end);
+    }
+
+    /**
+     * Makes slots available for new datarefs.
+     *
+     * @param first First slot.
+     * @param size  Number of slots.
+     */
+    private void free(int first, int size) {
+        synchronized (freeSlots) {
+            freeSlots.set(first, first + size);
+        }
+    }
+
+    /**
+     * Returns the id for the current generation of a slot.
+     *
+     * @param slot Allocated slot.
+     * @return Id of the slot.
+     */
+    private int id(int slot) {
+        synchronized (freeSlots) {
+            return (generations[slot] << SLOT_BITS) | slot;
+        }
+    }
+
+    /**
+     * Publishes an entry in the page of its slot.
+     *
+     * @param entry Entry of a dataref.
+     */
+    private void publish(Entry entry) {
+        int slot = slot(entry.id());
+        AtomicReferenceArray<Entry> page = pages.get(slot >>> PAGE_BITS);
+        if (page == null) {
+            pages.compareAndSet(slot >>> PAGE_BITS, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(slot >>> PAGE_BITS);
+        }
+        page.set(slot & (PAGE_SIZE - 1), entry);
+    }
+
+    /**
+     * Registered dataref.
+     */
+    private static final class Entry {
+
+        /**
+         * Name of the dataref.
+         */
+        private final String dataref;
+
+        /**
+         * Id of the dataref.
+         */
+        private final int id;
+
+        /**
+         * Array subscription of the element (<code>null</code> for other
+         * datarefs).
+         */
+        private final DatarefArray array;
+
+        /**
+         * Was a value received for the dataref?
+         */
+        private volatile boolean confirmed;
+
+        /**
+         * Is the dataref watched explicitly (guarded by the map)?
+         */
+        private boolean watched;
+
+        /**
+         * Number of streams and publishers holding the dataref (guarded by the
+         * map).
+         */
+        private int holders;
+
+        /**
+         * Constructor.
+         *
+         * @param dataref Name of the dataref.
+         * @param id      Id of the dataref.
+         * @param array   Array subscription of the element or <code>null</code>.
+         */
+        Entry(String dataref, int id, DatarefArray array) {
+            this.dataref = dataref;
+            this.id = id;
+            this.array = array;
+        }
+
+        /**
+         * Returns the name of the dataref.
+         */
+        String dataref() {
+            return dataref;
+        }
+
+        /**
+         * Returns the id of the dataref.
+         */
+        int id() {
+            return id;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package de.painer.xplane.impl;
+
+import de.painer.xplane.data.DatarefUpdate;
+
+/**
+ * Stream of values of one or more datarefs.
+ */
+final class DatarefStream extends BlockingStream<DatarefUpdate> implements StreamHub.DatarefSink {
+
+    /**
+     * Hub the stream is registered at.
+     */
+    private final StreamHub hub;
+
+    /**
+     * Action releasing the datarefs of the stream.
+     */
+    private final Runnable release;
+
+    /**
+     * Names of the buffered values.
+     */
+    private final String[] datarefs;
+
+    /**
+     * Buffered values.
+     */
+    private final float[] values;
+
+    /**
+     * Times of the buffered values.
+     */
+    private final long[] timestamps;
+
+    /**
+     * Constructor.
+     *
+     * @param hub      Hub the stream is registered at.
+     * @param capacity Capacity of the buffer.
+     * @param release  Action releasing the datarefs of the stream when it is
+     *                 closed.
+     */
+    DatarefStream(StreamHub hub, int capacity, Runnable release) {
+        super(capacity);
+        this.hub = hub;
+        this.release = release;
+        this.datarefs = new String[capacity];
+        this.values = new float[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    @Override
+    public void offer(int id, String dataref, float value, long timestamp) {
+        lock.lock();
+        try {
+            int index = reserve();
+            datarefs[index] = dataref;
+            values[index] = value;
+            timestamps[index] = timestamp;
+            signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected DatarefUpdate element(int index) {
+        return new DatarefUpdate(datarefs[index], values[index], timestamps[index]);
+    }
+
+    @Override
+    protected void detach() {
+        hub.remove(this);
+        release.run();
+    }
+
+}
@@ -0,0 +1,126 @@
+package de.painer.xplane.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import de.painer.xplane.data.DatarefUpdate;
+
+/**
+ * Subscription of a publisher of one or more datarefs.
+ *
+ * <p>
+ * The latest value is stored per dataref. When several datarefs have changed,
+ * they are delivered in turns, so a frequently updated dataref does not hide
+ * the others.
+ * </p>
+ */
+final class DatarefSubscription extends ConflatingSubscription<DatarefUpdate> implements StreamHub.DatarefSink {
+
+    /**
+     * Publishers the subscription belongs to.
+     */
+    private final FlowPublishers publishers;
+
+    /**
+     * Names of the datarefs.
+     */
+    private final String[] datarefs;
+
+    /**
+     * Ids of the datarefs.
+     */
+    private final int[] ids;
+
+    /**
+     * Latest values.
+     */
+    private final float[] values;
+
+    /**
+     * Times of the latest values.
+     */
+    private final long[] timestamps;
+
+    /**
+     * Which values were not delivered yet?
+     */
+    private final boolean[] fresh;
+
+    /**
+     * Index of the dataref to check first with the next poll.
+     */
+    private int next;
+
+    /**
+     * Constructor.
+     *
+     * @param publishers Publishers the subscription belongs to.
+     * @param subscriber Subscriber receiving the values.
+     * @param executor   Executor calling the subscriber.
+     * @param datarefs   Names of the datarefs.
+     */
+    DatarefSubscription(FlowPublishers publishers, Flow.Subscriber<? super DatarefUpdate> subscriber,
+            Executor executor, String[] datarefs) {
+        super(subscriber, executor);
+        this.publishers = publishers;
+        this.datarefs = datarefs;
+        this.ids = new int[datarefs.length];
+        this.values = new float[datarefs.length];
+        this.timestamps = new long[datarefs.length];
+        this.fresh = new boolean[datarefs.length];
+    }
+
+    /**
+     * Returns the names of the datarefs.
+     */
+    String[] datarefs() {
+        return datarefs;
+    }
+
+    /**
+     * Sets the id of a dataref before registering the subscription.
+     *
+     * @param index Index of the dataref.
+     * @param id    Id of the dataref.
+     */
+    void id(int index, int id) {
+        ids[index] = id;
+    }
+
+    @Override
+    public void offer(int id, String dataref, float value, long timestamp) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                lock.lock();
+                try {
+                    values[i] = value;
+                    timestamps[i] = timestamp;
+                    fresh[i] = true;
+                } finally {
+                    lock.unlock();
+                }
+                stored();
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected DatarefUpdate poll() {
+        for (int n = 0; n < fresh.length; n++) {
+            int i = (next + n) % fresh.length;
+            if (fresh[i]) {
+                fresh[i] = false;
+                next = (i + 1) % fresh.length;
+                return new DatarefUpdate(datarefs[i], values[i], timestamps[i]);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void detach() {
+        publishers.detach(this);
+    }
+
+}
@@ -0,0 +1,207 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalescing writer of datarefs.
+ *
+ * <p>
+ * Only the latest value per dataref is kept until the next flush. Flushes are
+ * done from a shared background thread and limited to a maximum frequency, so
+ * writing faster than X-Plane can process the values does not flood the
+ * socket. After the first write of a dataref, writing neither allocates nor
+ * takes any locks.
+ * </p>
+ */
+final class DatarefWriter implements Runnable {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DatarefWriter.class);
+
+    /**
+     * Default number of flushes per second.
+     */
+    static final int DEFAULT_FREQUENCY = 60;
+
+    /**
+     * Scheduler shared by all writers.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "xplane-write");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Pre-encoded DREF messages.
+     */
+    private final PacketTemplates templates;
+
+    /**
+     * Sender of the messages, which must not keep the buffer.
+     */
+    private final Consumer<ByteBuffer> sender;
+
+    /**
+     * Buffer reused for encoding all messages.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(PacketTemplates.DREF_SIZE)
+            .order(ByteOrder.nativeOrder());
+
+    /**
+     * Pending values by dataref.
+     */
+    private final ConcurrentHashMap<String, Pending> pendingByDataref = new ConcurrentHashMap<>();
+
+    /**
+     * All written datarefs in order of the first write.
+     */
+    private final List<Pending> pending = new CopyOnWriteArrayList<>();
+
+    /**
+     * Is a flush scheduled?
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Minimum time between two flushes in nanoseconds.
+     */
+    private volatile long intervalNanos;
+
+    /**
+     * Earliest time of the next flush in nanoseconds.
+     */
+    private volatile long nextFlush = System.nanoTime();
+
+    /**
+     * Constructor.
+     *
+     * @param templates Pre-encoded DREF messages.
+     * @param sender    Sender of the messages, which must not keep the buffer.
+     */
+    DatarefWriter(PacketTemplates templates, Consumer<ByteBuffer> sender) {
+        this.templates = templates;
+        this.sender = sender;
+        setFrequency(DEFAULT_FREQUENCY);
+    }
+
+    /**
+     * Sets the maximum number of flushes per second.
+     *
+     * @param frequency Number of flushes per second.
+     */
+    void setFrequency(int frequency) {
+        if (frequency <= 0) {
+            throw new IllegalArgumentException("Frequency must be positive.");
+        }
+        intervalNanos = TimeUnit.SECONDS.toNanos(1) / frequency;
+    }
+
+    /**
+     * Sets the value of a dataref with the next flush.
+     *
+     * @param dataref Name of the dataref.
+     * @param value   New value.
+     */
+    void write(String dataref, float value) {
+        Pending entry = pendingByDataref.get(dataref);
+        if (entry == null) {
+            entry = pendingByDataref.computeIfAbsent(dataref, this::create);
+        }
+
+        // a value written during a flush is either sent by it or schedules
+        // the next flush
+        entry.value = value;
+        entry.dirty.set(true);
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+            long delay = Math.max(nextFlush - System.nanoTime(), 0);
+            SCHEDULER.schedule(this, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Sends all pending values.
+     */
+    @Override
+    public synchronized void run() {
+        nextFlush = System.nanoTime() + intervalNanos;
+        scheduled.set(false);
+        for (Pending entry : pending) {
+            if (entry.dirty.getAndSet(false)) {
+                PacketTemplates.copy(entry.template, buffer);
+                buffer.putFloat(PacketTemplates.DREF_VALUE_OFFSET, entry.value);
+                try {
+                    sender.accept(buffer);
+                } catch (RuntimeException ex) {
+                    LOG.error("Error during writing dataref {}.", entry.dataref, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the entry of a dataref written for the first time.
+     *
+     * @param dataref Name of the dataref.
+     * @return New entry.
+     */
+    private Pending create(String dataref) {
+        LOG.debug("Writing dataref {}.", dataref);
+        Pending entry = new Pending(dataref, templates.dref(dataref));
+        pending.add(entry);
+        return entry;
+    }
+
+    /**
+     * Latest value of a dataref.
+     */
+    private static final class Pending {
+
+        /**
+         * Name of the dataref.
+         */
+        private final String dataref;
+
+        /**
+         * Pre-encoded message.
+         */
+        private final ByteBuffer template;
+
+        /**
+         * Has the value changed since the last flush?
+         */
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        /**
+         * Latest value.
+         */
+        private volatile float value;
+
+        /**
+         * Constructor.
+         *
+         * @param dataref  Name of the dataref.
+         * @param template Pre-encoded message.
+         */
+        Pending(String dataref, ByteBuffer template) {
+            this.dataref = dataref;
+            this.template = template;
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package de.painer.xplane.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for decoding a received message.
+ *
+ * <p>
+ * The duration covers reading the message up to the dispatch to the
+ * listeners. Only messages taking longer than the threshold are recorded.
+ * </p>
+ */
+@Name("de.painer.xplane.MessageDecoded")
+@Label("Message Decoded")
+@Description("Message received from X-Plane decoded")
+@Category({ "X-Plane", "Dispatch" })
+@Threshold("100 us")
+@StackTrace(false)
+final class DecodeEvent extends jdk.jfr.Event {
+
+    /**
+     * Type of the message.
+     */
+    @Label("Message Type")
+    String type;
+
+    /**
+     * Number of decoded values.
+     */
+    @Label("Values")
+    int values;
+
+}
@@ -0,0 +1,197 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.MessageDecoder;
+import de.painer.xplane.XPlane;
+
+/**
+ * Table of the additional message decoders of a connection.
+ *
+ * <p>
+ * The decoders are looked up by the header of a message read as int, so no
+ * objects are created for dispatching a message. The table is replaced as a
+ * whole when decoders are added or removed, so lookups do not take any locks.
+ * </p>
+ */
+final class DecoderTable {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DecoderTable.class);
+
+    /**
+     * Headers of the message types decoded by the dispatcher itself.
+     */
+    private static final int[] BUILT_IN = { PacketDispatcher.RPOS, PacketDispatcher.RREF, PacketDispatcher.DATA };
+
+    /**
+     * Connection the messages are received from.
+     */
+    private final XPlane xplane;
+
+    /**
+     * Current decoders with their headers.
+     */
+    private volatile Entries entries = new Entries(new int[0], new MessageDecoder[0]);
+
+    /**
+     * Constructor.
+     *
+     * @param xplane Connection the messages are received from.
+     */
+    DecoderTable(XPlane xplane) {
+        this.xplane = xplane;
+    }
+
+    /**
+     * Creates a table with the decoders provided as services.
+     *
+     * @param xplane Connection the messages are received from.
+     * @return New table.
+     */
+    static DecoderTable withServices(XPlane xplane) {
+        DecoderTable table = new DecoderTable(xplane);
+        for (MessageDecoder decoder : ServiceLoader.load(MessageDecoder.class)) {
+            LOG.debug("Adding decoder {} for message type {}.", decoder, decoder.type());
+            table.add(decoder);
+        }
+        return table;
+    }
+
+    /**
+     * Adds a decoder.
+     *
+     * <p>
+     * A decoder for the same type is replaced.
+     * </p>
+     *
+     * @param decoder Decoder to add.
+     * @throws IllegalArgumentException When the type is invalid or decoded by the
+     *                                  dispatcher itself.
+     */
+    synchronized void add(MessageDecoder decoder) {
+        int tag = tag(decoder.type());
+        for (int builtIn : BUILT_IN) {
+            if (tag == builtIn) {
+                throw new IllegalArgumentException("Message type " + decoder.type() + " is decoded by the library.");
+            }
+        }
+        Entries current = entries;
+        int index = indexOf(current.tags, tag);
+        if (index >= 0) {
+            MessageDecoder[] decoders = current.decoders.clone();
+            decoders[index] = decoder;
+            entries = new Entries(current.tags, decoders);
+        } else {
+            int[] tags = Arrays.copyOf(current.tags, current.tags.length + 1);
+            MessageDecoder[] decoders = Arrays.copyOf(current.decoders, current.decoders.length + 1);
+            tags[tags.length - 1] = tag;
+            decoders[decoders.length - 1] = decoder;
+            entries = new Entries(tags, decoders);
+        }
+    }
+
+    /**
+     * Removes a decoder.
+     *
+     * @param decoder Decoder to remove.
+     */
+    synchronized void remove(MessageDecoder decoder) {
+        Entries current = entries;
+        for (int i = 0; i < current.decoders.length; i++) {
+            if (current.decoders[i] == decoder) {
+                int[] tags = new int[current.tags.length - 1];
+                MessageDecoder[] decoders = new MessageDecoder[tags.length];
+                System.arraycopy(current.tags, 0, tags, 0, i);
+                System.arraycopy(current.tags, i + 1, tags, i, tags.length - i);
+                System.arraycopy(current.decoders, 0, decoders, 0, i);
+                System.arraycopy(current.decoders, i + 1, decoders, i, decoders.length - i);
+                entries = new Entries(tags, decoders);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the decoder for a message type.
+     *
+     * @param tag Header of the message as int in native byte order.
+     * @return Decoder or <code>null</code> if there is none for the type.
+     */
+    MessageDecoder get(int tag) {
+        Entries current = entries;
+        int index = indexOf(current.tags, tag);
+        return index >= 0 ? current.decoders[index] : null;
+    }
+
+    /**
+     * Returns the connection the messages are received from.
+     *
+     * @return Connection passed to the decoders.
+     */
+    XPlane xplane() {
+        return xplane;
+    }
+
+    /**
+     * Returns the header of a message type as int.
+     *
+     * @param type Type of the message.
+     * @return Header in native byte order.
+     * @throws IllegalArgumentException When the type does not have four ASCII
+     *                                  characters.
+     */
+    static int tag(String type) {
+        if (type == null || type.length() != 4
+                || !StandardCharsets.US_ASCII.newEncoder().canEncode(type)) {
+            throw new IllegalArgumentException("Invalid message type " + type + ".");
+        }
+        return PacketDispatcher.header(type);
+    }
+
+    /**
+     * Returns the message type of a header.
+     *
+     * @param tag Header of the message as int in native byte order.
+     * @return Type of the message.
+     */
+    static String type(int tag) {
+        byte[] bytes = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder()).putInt(tag).array();
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Searches a header in the table.
+     *
+     * @param tags Headers of the table.
+     * @param tag  Header to search.
+     * @return Index of the header or -1.
+     */
+    private static int indexOf(int[] tags, int tag) {
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == tag) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decoders with their headers at the same index.
+     *
+     * @param tags     Headers as int in native byte order.
+     * @param decoders Decoders.
+     */
+    private record Entries(int[] tags, MessageDecoder[] decoders) {
+    }
+
+}
@@ -0,0 +1,85 @@
+package de.painer.xplane.impl;
+
+import de.painer.xplane.data.PositionField;
+
+/**
+ * Virtual dataref computed by a pipeline.
+ *
+ * <p>
+ * Holds the stages with their state and the value currently passed through
+ * them. Only used by the receiving thread.
+ * </p>
+ */
+final class DerivedDataref {
+
+    /**
+     * Name of the virtual dataref.
+     */
+    final String dataref;
+
+    /**
+     * Id of the virtual dataref.
+     */
+    final int id;
+
+    /**
+     * Id of the source dataref (-1 for a position field).
+     */
+    final int sourceId;
+
+    /**
+     * Source field of the position (<code>null</code> for a dataref).
+     */
+    final PositionField field;
+
+    /**
+     * Stages of the pipeline.
+     */
+    private final PipelineStage[] stages;
+
+    /**
+     * Value currently passed through the stages.
+     */
+    double value;
+
+    /**
+     * Time of the current value.
+     */
+    long timestamp;
+
+    /**
+     * Constructor.
+     *
+     * @param dataref  Name of the virtual dataref.
+     * @param id       Id of the virtual dataref.
+     * @param sourceId Id of the source dataref or -1.
+     * @param field    Source field of the position or <code>null</code>.
+     * @param stages   Stages of the pipeline.
+     */
+    DerivedDataref(String dataref, int id, int sourceId, PositionField field, PipelineStage[] stages) {
+        this.dataref = dataref;
+        this.id = id;
+        this.sourceId = sourceId;
+        this.field = field;
+        this.stages = stages;
+    }
+
+    /**
+     * Passes a source value through the stages.
+     *
+     * @param source Value of the source.
+     * @param time   Time when the value was received.
+     * @return Was a value computed (or was it consumed by a stage)?
+     */
+    boolean push(double source, long time) {
+        value = source;
+        timestamp = time;
+        for (int i = 0; i < stages.length; i++) {
+            if (!stages[i].apply(this)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
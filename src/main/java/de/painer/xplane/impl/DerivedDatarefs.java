@@ -0,0 +1,273 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.DatarefPipeline;
+import de.painer.xplane.XPlane;
+import de.painer.xplane.data.PositionView;
+
+/**
+ * Virtual datarefs computed from received values.
+ *
+ * <p>
+ * The receiving thread passes every received message through the pipelines
+ * of the derived datarefs with the message as source. The computed values are
+ * written into a RREF message of their own, which is then handled like a
+ * received one, so derived values reach the snapshot, listeners, streams and
+ * publishers without any special handling. The pipelines are indexed by the
+ * slot of the source id in copy-on-write arrays.
+ * </p>
+ */
+final class DerivedDatarefs {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DerivedDatarefs.class);
+
+    /**
+     * Maximum number of derived datarefs, so all values computed from one
+     * message fit into one message.
+     */
+    static final int MAX_DERIVED = PacketDispatcher.MAX_RREF_VALUES;
+
+    /**
+     * Empty array of derived datarefs.
+     */
+    private static final DerivedDataref[] NONE = new DerivedDataref[0];
+
+    /**
+     * Connection used for watching the sources.
+     */
+    private final XPlane xplane;
+
+    /**
+     * Connection holding the position for derived datarefs.
+     */
+    private final DatarefHolder holder;
+
+    /**
+     * Ids of the watched datarefs.
+     */
+    private final DatarefRegistry registry;
+
+    /**
+     * Derived datarefs by name.
+     */
+    private final Map<String, DerivedDataref> byName = new HashMap<>();
+
+    /**
+     * Requested frequencies of the derived datarefs with a position field as
+     * source.
+     */
+    private final Map<String, Integer> positionFrequencies = new HashMap<>();
+
+    /**
+     * Derived datarefs by slot of the source id.
+     */
+    private volatile DerivedDataref[][] bySlot = new DerivedDataref[0][];
+
+    /**
+     * Derived datarefs with a position field as source.
+     */
+    private volatile DerivedDataref[] fromPosition = NONE;
+
+    /**
+     * Message with the computed values (reused for every message).
+     */
+    private final ByteBuffer output = ByteBuffer.allocate(PacketDispatcher.MAX_MESSAGE_SIZE)
+            .order(ByteOrder.nativeOrder());
+
+    /**
+     * View on received positions.
+     */
+    private final PositionView positionView = new PositionView();
+
+    /**
+     * Constructor.
+     *
+     * @param xplane   Connection used for watching the sources.
+     * @param holder   Connection holding the position for derived datarefs.
+     * @param registry Ids of the watched datarefs.
+     */
+    DerivedDatarefs(XPlane xplane, DatarefHolder holder, DatarefRegistry registry) {
+        this.xplane = xplane;
+        this.holder = holder;
+        this.registry = registry;
+        output.put("RREF".getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+    }
+
+    /**
+     * Adds a derived dataref and watches its source.
+     *
+     * @param dataref   Name of the virtual dataref.
+     * @param pipeline  Pipeline computing the values.
+     * @param frequency Number of source values per second.
+     */
+    void add(String dataref, DatarefPipeline pipeline, int frequency) {
+        // pipelines are sealed, so the operators are their only implementation
+        OperatorPipeline operators = (OperatorPipeline) pipeline;
+        synchronized (this) {
+            if (byName.containsKey(dataref) || registry.id(dataref) >= 0) {
+                throw new IllegalArgumentException("Dataref " + dataref + " is already watched.");
+            }
+            if (operators.dataref() != null && byName.containsKey(operators.dataref())) {
+                throw new IllegalArgumentException("Derived dataref " + operators.dataref() + " cannot be a source.");
+            }
+            if (byName.size() == MAX_DERIVED) {
+                throw new IllegalStateException("Too many derived datarefs.");
+            }
+
+            // the pipeline is in place before its source is watched below
+            int id = registry.register(dataref);
+            int sourceId = operators.dataref() != null ? registry.register(operators.dataref()) : -1;
+            DerivedDataref derived = new DerivedDataref(dataref, id, sourceId, operators.field(),
+                    operators.createStages());
+            byName.put(dataref, derived);
+            if (sourceId >= 0) {
+                int slot = DatarefRegistry.slot(sourceId);
+                DerivedDataref[][] table = bySlot;
+                table = slot >= table.length ? Arrays.copyOf(table, Math.max(slot + 1, table.length * 2))
+                        : table.clone();
+                DerivedDataref[] derivations = table[slot] != null ? table[slot] : NONE;
+                derivations = Arrays.copyOf(derivations, derivations.length + 1);
+                derivations[derivations.length - 1] = derived;
+                table[slot] = derivations;
+                bySlot = table;
+            } else {
+                DerivedDataref[] derivations = Arrays.copyOf(fromPosition, fromPosition.length + 1);
+                derivations[derivations.length - 1] = derived;
+                fromPosition = derivations;
+                positionFrequencies.put(dataref, frequency);
+            }
+            LOG.debug("Deriving dataref {} with ID {} from {}.", dataref, id, operators);
+        }
+        if (operators.dataref() != null) {
+            xplane.watchDataref(operators.dataref(), frequency);
+        } else {
+            holder.holdPosition(frequency);
+        }
+    }
+
+    /**
+     * Removes a derived dataref.
+     *
+     * <p>
+     * A source dataref stays watched, as it may still be used otherwise. The
+     * position is let go and only unwatched when it is not used otherwise.
+     * </p>
+     *
+     * @param dataref Name of the virtual dataref.
+     * @return Was the dataref derived?
+     */
+    synchronized boolean remove(String dataref) {
+        DerivedDataref derived = byName.remove(dataref);
+        if (derived == null) {
+            return false;
+        }
+        if (derived.sourceId >= 0) {
+            DerivedDataref[][] table = bySlot.clone();
+            int slot = DatarefRegistry.slot(derived.sourceId);
+            table[slot] = Arrays.stream(table[slot]).filter(d -> d != derived).toArray(DerivedDataref[]::new);
+            bySlot = table;
+        } else {
+            fromPosition = Arrays.stream(fromPosition).filter(d -> d != derived).toArray(DerivedDataref[]::new);
+            holder.unholdPosition(positionFrequencies.remove(dataref));
+        }
+        registry.release(dataref);
+        return true;
+    }
+
+    /**
+     * Checks whether a dataref is derived.
+     *
+     * @param dataref Name of a dataref.
+     * @return Is the dataref a virtual one?
+     */
+    synchronized boolean contains(String dataref) {
+        return byName.containsKey(dataref);
+    }
+
+    /**
+     * Removes all derived datarefs.
+     */
+    synchronized void clear() {
+        for (String dataref : byName.keySet().toArray(String[]::new)) {
+            remove(dataref);
+        }
+    }
+
+    /**
+     * Computes the derived values of a received message.
+     *
+     * <p>
+     * Must only be called by the receiving thread. The position of the message
+     * is not changed.
+     * </p>
+     *
+     * @param message   Received message, ready for reading.
+     * @param timestamp Time when the message was received.
+     * @return RREF message with the computed values (reused for the next call)
+     *         or <code>null</code> if no value was computed.
+     */
+    ByteBuffer process(ByteBuffer message, long timestamp) {
+        int start = message.position();
+        if (message.remaining() < 5) {
+            return null;
+        }
+        output.clear().position(5);
+        int tag = message.getInt(start);
+        if (tag == PacketDispatcher.RREF) {
+            DerivedDataref[][] table = bySlot;
+            if (table.length == 0) {
+                return null;
+            }
+            for (int offset = start + 5; offset + 8 <= message.limit(); offset += 8) {
+                int id = message.getInt(offset);
+                int slot = DatarefRegistry.slot(id);
+                if (id < 0 || slot >= table.length || table[slot] == null) {
+                    continue;
+                }
+                DerivedDataref[] derivations = table[slot];
+                for (int i = 0; i < derivations.length; i++) {
+                    if (derivations[i].sourceId == id) {
+                        push(derivations[i], message.getFloat(offset + 4), timestamp);
+                    }
+                }
+            }
+        } else if (tag == PacketDispatcher.RPOS) {
+            DerivedDataref[] derivations = fromPosition;
+            if (derivations.length == 0 || message.remaining() < 5 + PositionView.SIZE) {
+                return null;
+            }
+            positionView.wrap(message, start + 5);
+            for (int i = 0; i < derivations.length; i++) {
+                push(derivations[i], derivations[i].field.of(positionView), timestamp);
+            }
+        }
+        return output.position() > 5 ? output.flip() : null;
+    }
+
+    /**
+     * Passes a source value through a pipeline and appends the result.
+     *
+     * @param derived   Derived dataref.
+     * @param value     Value of the source.
+     * @param timestamp Time when the value was received.
+     */
+    private void push(DerivedDataref derived, double value, long timestamp) {
+        if (derived.push(value, timestamp) && output.remaining() >= 8) {
+            output.putInt(derived.id);
+            output.putFloat((float) derived.value);
+        }
+    }
+
+}
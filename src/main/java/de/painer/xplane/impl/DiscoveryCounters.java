@@ -0,0 +1,134 @@
+package de.painer.xplane.impl;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.painer.xplane.metrics.DiscoveryMetrics;
+
+/**
+ * Counters of a discovery.
+ */
+public final class DiscoveryCounters implements DiscoveryMetrics {
+
+    /**
+     * Number of received beacons.
+     */
+    private final LongAdder beacons = new LongAdder();
+
+    /**
+     * Number of received messages which are no beacons.
+     */
+    private final LongAdder invalidMessages = new LongAdder();
+
+    /**
+     * Number of errors while receiving.
+     */
+    private final LongAdder receiveErrors = new LongAdder();
+
+    /**
+     * Number of found instances.
+     */
+    private final LongAdder foundInstances = new LongAdder();
+
+    /**
+     * Number of lost instances.
+     */
+    private final LongAdder lostInstances = new LongAdder();
+
+    /**
+     * Number of exceptions thrown by listeners.
+     */
+    private final LongAdder listenerErrors = new LongAdder();
+
+    /**
+     * Currently known instances.
+     */
+    private final Map<?, ?> instances;
+
+    /**
+     * Constructor.
+     *
+     * @param instances Currently known instances.
+     */
+    public DiscoveryCounters(Map<?, ?> instances) {
+        this.instances = instances;
+    }
+
+    /**
+     * Counts a received beacon.
+     */
+    public void beacon() {
+        beacons.increment();
+    }
+
+    /**
+     * Counts a received message which is no beacon.
+     */
+    public void invalidMessage() {
+        invalidMessages.increment();
+    }
+
+    /**
+     * Counts an error while receiving.
+     */
+    public void receiveError() {
+        receiveErrors.increment();
+    }
+
+    /**
+     * Counts a found instance.
+     */
+    public void found() {
+        foundInstances.increment();
+    }
+
+    /**
+     * Counts a lost instance.
+     */
+    public void lost() {
+        lostInstances.increment();
+    }
+
+    /**
+     * Counts an exception thrown by a listener.
+     */
+    public void listenerError() {
+        listenerErrors.increment();
+    }
+
+    @Override
+    public long getBeacons() {
+        return beacons.sum();
+    }
+
+    @Override
+    public long getInvalidMessages() {
+        return invalidMessages.sum();
+    }
+
+    @Override
+    public long getReceiveErrors() {
+        return receiveErrors.sum();
+    }
+
+    @Override
+    public long getFoundInstances() {
+        return foundInstances.sum();
+    }
+
+    @Override
+    public long getLostInstances() {
+        return lostInstances.sum();
+    }
+
+    @Override
+    public int getKnownInstances() {
+        return instances.size();
+    }
+
+    @Override
+    public long getListenerErrors() {
+        return listenerErrors.sum();
+    }
+
+}
@@ -0,0 +1,55 @@
+package de.painer.xplane.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import de.painer.xplane.XPlaneInstance;
+
+/**
+ * Flight recorder event for a found or lost X-Plane instance.
+ */
+@Name("de.painer.xplane.InstanceDiscovered")
+@Label("Instance Discovered")
+@Description("X-Plane instance found or lost by the discovery")
+@Category({ "X-Plane", "Discovery" })
+@StackTrace(false)
+public final class DiscoveryEvent extends jdk.jfr.Event {
+
+    /**
+     * Name of the instance.
+     */
+    @Label("Instance")
+    String instance;
+
+    /**
+     * Address of the instance.
+     */
+    @Label("Address")
+    String address;
+
+    /**
+     * Was the instance found or lost?
+     */
+    @Label("Found")
+    boolean found;
+
+    /**
+     * Records that an instance was found or lost.
+     *
+     * @param instance Found or lost instance.
+     * @param found    Was the instance found or lost?
+     */
+    public static void emit(XPlaneInstance instance, boolean found) {
+        DiscoveryEvent event = new DiscoveryEvent();
+        if (event.shouldCommit()) {
+            event.instance = instance.getName();
+            event.address = String.valueOf(instance.getAddress());
+            event.found = found;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,629 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.DispatchStage;
+import de.painer.xplane.DispatchStatistics;
+import de.painer.xplane.OverflowPolicy;
+import de.painer.xplane.data.PositionView;
+
+/**
+ * Asynchronous dispatch stage between the receiving thread and the listeners.
+ *
+ * <p>
+ * The receiving thread copies each message into a preallocated slot of a ring
+ * buffer. Consumer threads take the messages from the ring buffer and dispatch
+ * them to the listeners. Each slot has a sequence number that tells whether it
+ * is free or filled (bounded queue by D. Vyukov), so neither the producer nor
+ * the consumers take locks while messages are flowing. Idle consumers park on a
+ * condition and are only signalled when they are waiting.
+ * </p>
+ *
+ * <p>
+ * With {@link OverflowPolicy#CONFLATE}, messages that do not fit into the ring
+ * buffer are merged into the latest position and the latest value per dataref.
+ * The merged values are dispatched when the ring buffer has been drained, and
+ * until then all further messages are merged as well, so older messages are
+ * never delivered after newer ones.
+ * </p>
+ *
+ * <p>
+ * Each consumer thread has a ring buffer of its own. With more than one
+ * consumer, the values of RREF messages are routed by the slot of their
+ * dataref id (elements of an array by the slot of the first element), so all
+ * values of a dataref are dispatched in order by the same consumer and arrays
+ * are assembled completely. All other messages are dispatched by the first
+ * consumer.
+ * </p>
+ */
+final class DispatchRing {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DispatchRing.class);
+
+    /**
+     * Behaviour when the ring buffer is full.
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * Ring buffers of the consumer threads.
+     */
+    private final Lane[] lanes;
+
+    /**
+     * Ids of the watched datarefs, used for routing array elements.
+     */
+    private final DatarefRegistry registry;
+
+    /**
+     * Messages with the values routed to each consumer (only used by the
+     * producer).
+     */
+    private final ByteBuffer[] parts;
+
+    /**
+     * Is the stage running?
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Number of dispatched messages.
+     */
+    private final LongAdder dispatched = new LongAdder();
+
+    /**
+     * Number of dropped messages.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Number of conflated messages.
+     */
+    private final LongAdder conflated = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The consumer threads are started immediately.
+     * </p>
+     *
+     * @param stage       Configuration of the stage.
+     * @param registry    Ids of the watched datarefs.
+     * @param dispatchers Factory for the dispatchers of the consumer threads.
+     * @param name        Name of the connection used for thread names.
+     */
+    DispatchRing(DispatchStage stage, DatarefRegistry registry, Supplier<PacketDispatcher> dispatchers,
+            String name) {
+        int capacity = 1;
+        while (capacity < stage.capacity()) {
+            capacity <<= 1;
+        }
+        this.policy = stage.policy();
+        this.registry = registry;
+
+        // create and start consumer threads with their ring buffers
+        lanes = new Lane[stage.consumers()];
+        parts = new ByteBuffer[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(capacity, dispatchers.get(), "xplane-dispatch-" + i + "-" + name);
+            parts[i] = ByteBuffer.allocate(PacketDispatcher.MAX_MESSAGE_SIZE).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Puts a received message into the ring buffers.
+     *
+     * <p>
+     * Must only be called by the receiving thread.
+     * </p>
+     *
+     * @param buffer Buffer with the message, ready for reading.
+     */
+    void publish(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (lanes.length == 1 || buffer.remaining() < 5 || buffer.getInt(start) != PacketDispatcher.RREF) {
+            lanes[0].publish(buffer);
+            return;
+        }
+
+        // split the values by consumer, keeping the header
+        for (ByteBuffer part : parts) {
+            part.clear();
+            part.put(0, buffer, start, 5);
+            part.position(5);
+        }
+        for (int offset = start + 5; offset + 8 <= buffer.limit(); offset += 8) {
+            ByteBuffer part = parts[lane(buffer.getInt(offset))];
+            part.put(part.position(), buffer, offset, 8);
+            part.position(part.position() + 8);
+        }
+        for (int i = 0; i < lanes.length; i++) {
+            if (parts[i].position() > 5) {
+                lanes[i].publish(parts[i].flip());
+            }
+        }
+    }
+
+    /**
+     * Returns the consumer dispatching the values of a dataref.
+     *
+     * @param id Id of the dataref.
+     * @return Index of the consumer.
+     */
+    private int lane(int id) {
+        DatarefArray array = registry.array(id);
+        return DatarefRegistry.slot(array != null ? array.firstId() : id) % lanes.length;
+    }
+
+    /**
+     * Returns the statistics of the stage.
+     *
+     * @return Current statistics.
+     */
+    DispatchStatistics statistics() {
+        int queued = 0;
+        for (Lane lane : lanes) {
+            queued += lane.queued();
+        }
+        return new DispatchStatistics(dispatched.sum(), dropped.sum(), conflated.sum(), queued);
+    }
+
+    /**
+     * Stops the consumer threads.
+     */
+    void close() {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.consumer.interrupt();
+        }
+    }
+
+    /**
+     * Ring buffer with the consumer thread dispatching its messages.
+     */
+    private final class Lane {
+
+        /**
+         * Slots with the message data.
+         */
+        private final ByteBuffer[] slots;
+
+        /**
+         * Sequence numbers of the slots.
+         */
+        private final AtomicLongArray sequences;
+
+        /**
+         * Mask for getting the slot of a position.
+         */
+        private final int mask;
+
+        /**
+         * Position of the next message to take.
+         */
+        private final AtomicLong head = new AtomicLong();
+
+        /**
+         * Position of the next message to put (only written by the producer).
+         */
+        private volatile long tail;
+
+        /**
+         * Consumer thread.
+         */
+        private final Thread consumer;
+
+        /**
+         * Lock for the waiting consumer.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Condition signalled when messages are available.
+         */
+        private final Condition notEmpty = lock.newCondition();
+
+        /**
+         * Number of waiting consumers.
+         */
+        private volatile int sleepers;
+
+        /**
+         * Lock for the conflated values.
+         */
+        private final ReentrantLock conflationLock = new ReentrantLock();
+
+        /**
+         * Are there conflated values waiting for dispatch?
+         */
+        private volatile boolean conflationPending;
+
+        /**
+         * Index + 1 of the conflated value by dataref slot (created on demand).
+         */
+        private int[] conflatedIndex;
+
+        /**
+         * Ids of the conflated values.
+         */
+        private int[] conflatedIds = new int[0];
+
+        /**
+         * Conflated values.
+         */
+        private float[] conflatedValues = new float[0];
+
+        /**
+         * Number of conflated values.
+         */
+        private int conflatedCount;
+
+        /**
+         * Latest conflated RPOS message.
+         */
+        private final ByteBuffer conflatedPosition = ByteBuffer.allocate(5 + PositionView.SIZE)
+                .order(ByteOrder.nativeOrder());
+
+        /**
+         * Is there a conflated position?
+         */
+        private boolean hasConflatedPosition;
+
+        /**
+         * Constructor starting the consumer thread.
+         *
+         * @param capacity   Number of slots (a power of two).
+         * @param dispatcher Dispatcher of the consumer thread.
+         * @param name       Name of the consumer thread.
+         */
+        Lane(int capacity, PacketDispatcher dispatcher, String name) {
+            this.mask = capacity - 1;
+            this.slots = new ByteBuffer[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = ByteBuffer.allocate(PacketDispatcher.MAX_MESSAGE_SIZE).order(ByteOrder.nativeOrder());
+                sequences.set(i, i);
+            }
+            consumer = new Thread(() -> consumeLoop(dispatcher), name);
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+
+        /**
+         * Puts a message into the ring buffer.
+         *
+         * @param buffer Buffer with the message, ready for reading.
+         */
+        void publish(ByteBuffer buffer) {
+            switch (policy) {
+                case BLOCK -> {
+                    while (!offer(buffer)) {
+                        if (!running) {
+                            return;
+                        }
+                        LockSupport.parkNanos(10_000);
+                    }
+                }
+                case DROP_NEWEST -> {
+                    if (!offer(buffer)) {
+                        dropped.increment();
+                    }
+                }
+                case DROP_OLDEST -> {
+                    // drop the newly received message while the oldest slot is still dispatched
+                    if (!offer(buffer)) {
+                        dropped.increment();
+                        if (!dropOldest() || !offer(buffer)) {
+                            return;
+                        }
+                    }
+                }
+                case CONFLATE -> {
+                    if (conflationPending || !offer(buffer)) {
+                        conflate(buffer);
+                    }
+                }
+            }
+
+            // wake up waiting consumers
+            if (sleepers > 0) {
+                lock.lock();
+                try {
+                    notEmpty.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Returns the number of queued messages.
+         *
+         * @return Number of filled slots.
+         */
+        int queued() {
+            return (int) Math.max(0, Math.min(tail - head.get(), slots.length));
+        }
+
+        /**
+         * Copies a message into the next free slot.
+         *
+         * @param buffer Buffer with the message.
+         * @return Was the message copied or is the ring buffer full?
+         */
+        private boolean offer(ByteBuffer buffer) {
+            long pos = tail;
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos) {
+                return false;
+            }
+            ByteBuffer slot = slots[index];
+            slot.clear();
+            slot.put(buffer);
+            slot.flip();
+            sequences.set(index, pos + 1);
+            tail = pos + 1;
+            return true;
+        }
+
+        /**
+         * Takes the next filled slot.
+         *
+         * @return Position of the taken slot or -1 when the ring buffer is empty.
+         */
+        private long poll() {
+            while (true) {
+                long pos = head.get();
+                long seq = sequences.get((int) pos & mask);
+                long diff = seq - (pos + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(pos, pos + 1)) {
+                        return pos;
+                    }
+                } else if (diff < 0) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Releases a slot taken with {@link #poll()}.
+         *
+         * @param pos Position of the slot.
+         */
+        private void release(long pos) {
+            sequences.set((int) pos & mask, pos + mask + 1);
+        }
+
+        /**
+         * Drops the oldest message in the ring buffer, which occupies the slot at
+         * the tail.
+         *
+         * <p>
+         * Nothing is dropped when the consumer already took that slot, as it is
+         * only free again when the consumer has dispatched it.
+         * </p>
+         *
+         * @return Was the message dropped, so the slot at the tail is free?
+         */
+        private boolean dropOldest() {
+            long pos = tail - slots.length;
+            if (sequences.get((int) pos & mask) != pos + 1 || !head.compareAndSet(pos, pos + 1)) {
+                return false;
+            }
+            release(pos);
+            return true;
+        }
+
+        /**
+         * Merges a message into the conflated values.
+         *
+         * @param buffer Buffer with the message.
+         */
+        private void conflate(ByteBuffer buffer) {
+            if (buffer.remaining() < 5) {
+                dropped.increment();
+                return;
+            }
+            int header = buffer.getInt(buffer.position());
+            conflationLock.lock();
+            try {
+                if (header == PacketDispatcher.RREF) {
+                    if (conflatedIndex == null) {
+                        conflatedIndex = new int[DatarefRegistry.MAX_SLOTS];
+                    }
+                    for (int offset = buffer.position() + 5; offset + 8 <= buffer.limit(); offset += 8) {
+                        conflateValue(buffer.getInt(offset), buffer.getFloat(offset + 4));
+                    }
+                } else if (header == PacketDispatcher.RPOS && buffer.remaining() >= conflatedPosition.capacity()) {
+                    conflatedPosition.clear();
+                    conflatedPosition.put(0, buffer, buffer.position(), conflatedPosition.capacity());
+                    hasConflatedPosition = true;
+                } else {
+                    dropped.increment();
+                    return;
+                }
+                conflated.increment();
+                conflationPending = true;
+            } finally {
+                conflationLock.unlock();
+            }
+        }
+
+        /**
+         * Merges one dataref value into the conflated values.
+         *
+         * @param id    Id of the dataref.
+         * @param value Value of the dataref.
+         */
+        private void conflateValue(int id, float value) {
+            if (id < 0) {
+                return;
+            }
+            int slot = DatarefRegistry.slot(id);
+            int index = conflatedIndex[slot] - 1;
+            if (index < 0) {
+                if (conflatedCount == conflatedIds.length) {
+                    int size = Math.max(64, conflatedCount * 2);
+                    conflatedIds = Arrays.copyOf(conflatedIds, size);
+                    conflatedValues = Arrays.copyOf(conflatedValues, size);
+                }
+                index = conflatedCount++;
+                conflatedIndex[slot] = index + 1;
+            }
+            conflatedIds[index] = id;
+            conflatedValues[index] = value;
+        }
+
+        /**
+         * Execution loop of the consumer thread.
+         *
+         * @param dispatcher Dispatcher of the thread.
+         */
+        private void consumeLoop(PacketDispatcher dispatcher) {
+            Drain drain = new Drain();
+            while (running) {
+                try {
+                    long pos = poll();
+                    if (pos >= 0) {
+                        try {
+                            dispatcher.dispatch(slots[(int) pos & mask]);
+                        } finally {
+                            release(pos);
+                        }
+                        dispatched.increment();
+                    } else if (conflationPending) {
+                        drainConflation(dispatcher, drain);
+                    } else {
+                        await();
+                    }
+                } catch (InterruptedException ex) {
+                    // this is normal behaviour during stopping of threads
+                } catch (RuntimeException ex) {
+                    LOG.error("Error during processing of message.", ex);
+                }
+            }
+        }
+
+        /**
+         * Waits until messages are available.
+         *
+         * @throws InterruptedException When the thread is interrupted.
+         */
+        private void await() throws InterruptedException {
+            lock.lock();
+            try {
+                sleepers++;
+                if (sequences.get((int) head.get() & mask) == head.get() + 1 || conflationPending || !running) {
+                    return;
+                }
+                notEmpty.await(10, TimeUnit.MILLISECONDS);
+            } finally {
+                sleepers--;
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Dispatches the conflated values.
+         *
+         * @param dispatcher Dispatcher of the thread.
+         * @param drain      Buffers of the thread for the conflated values.
+         */
+        private void drainConflation(PacketDispatcher dispatcher, Drain drain) {
+            // take conflated values
+            boolean position;
+            int count;
+            conflationLock.lock();
+            try {
+                if (!conflationPending) {
+                    return;
+                }
+                position = hasConflatedPosition;
+                if (position) {
+                    drain.position.clear();
+                    drain.position.put(0, conflatedPosition, 0, conflatedPosition.capacity());
+                }
+                count = conflatedCount;
+                if (drain.ids.length < count) {
+                    drain.ids = new int[conflatedIds.length];
+                    drain.values = new float[conflatedIds.length];
+                }
+                for (int i = 0; i < count; i++) {
+                    drain.ids[i] = conflatedIds[i];
+                    drain.values[i] = conflatedValues[i];
+                    conflatedIndex[DatarefRegistry.slot(conflatedIds[i])] = 0;
+                }
+                conflatedCount = 0;
+                hasConflatedPosition = false;
+                conflationPending = false;
+            } finally {
+                conflationLock.unlock();
+            }
+
+            // dispatch them as regular messages
+            if (position) {
+                dispatcher.dispatch(drain.position);
+                dispatched.increment();
+            }
+            for (int start = 0; start < count; start += PacketDispatcher.MAX_RREF_VALUES) {
+                ByteBuffer message = drain.message;
+                message.clear();
+                message.putInt(PacketDispatcher.RREF).put((byte) 0);
+                for (int i = start; i < count && i < start + PacketDispatcher.MAX_RREF_VALUES; i++) {
+                    message.putInt(drain.ids[i]).putFloat(drain.values[i]);
+                }
+                dispatcher.dispatch(message.flip());
+                dispatched.increment();
+            }
+        }
+
+    }
+
+    /**
+     * Buffers of a consumer thread for dispatching conflated values.
+     */
+    private static final class Drain {
+
+        /**
+         * Conflated position.
+         */
+        private final ByteBuffer position = ByteBuffer.allocate(5 + PositionView.SIZE)
+                .order(ByteOrder.nativeOrder());
+
+        /**
+         * Message for dispatching conflated values.
+         */
+        private final ByteBuffer message = ByteBuffer.allocate(PacketDispatcher.MAX_MESSAGE_SIZE)
+                .order(ByteOrder.nativeOrder());
+
+        /**
+         * Ids of the conflated values.
+         */
+        private int[] ids = new int[0];
+
+        /**
+         * Conflated values.
+         */
+        private float[] values = new float[0];
+
+    }
+
+}
@@ -0,0 +1,388 @@
+package de.painer.xplane.impl;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.XPlaneEventLoop;
+
+/**
+ * Fixed number of selector threads receiving the messages of many connections.
+ *
+ * <p>
+ * Each connection keeps its own channel, connected to the address of its
+ * instance, so the operating system already sorts the datagrams by source
+ * address and the selection key identifies the connection. A new connection is
+ * registered with the thread serving the fewest connections. Registrations and
+ * cancellations are queued and executed by the selector thread itself.
+ * </p>
+ */
+public final class EventLoopGroup implements XPlaneEventLoop {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(EventLoopGroup.class);
+
+    /**
+     * Maximum number of datagrams received from one channel per selection, so
+     * a busy connection does not starve the others.
+     */
+    private static final int MAX_BATCH = 64;
+
+    /**
+     * Counter for naming the groups.
+     */
+    private static final AtomicInteger GROUPS = new AtomicInteger();
+
+    /**
+     * Selector threads.
+     */
+    private final Loop[] loops;
+
+    /**
+     * Constructor starting the threads.
+     *
+     * @param threads Number of selector threads.
+     * @throws IOException When a selector could not be opened.
+     */
+    public EventLoopGroup(int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive.");
+        }
+        int group = GROUPS.incrementAndGet();
+        loops = new Loop[threads];
+        try {
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new Loop(Selector.open(), "xplane-loop-" + group + "-" + i);
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+        for (Loop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    @Override
+    public int getThreads() {
+        return loops.length;
+    }
+
+    @Override
+    public int getConnections() {
+        int connections = 0;
+        for (Loop loop : loops) {
+            connections += loop.connections.get();
+        }
+        return connections;
+    }
+
+    /**
+     * Registers a channel with the thread serving the fewest connections.
+     *
+     * @param channel  Non-blocking channel to receive from.
+     * @param receiver Receiver of the messages.
+     * @return Registration for cancelling.
+     */
+    Registration register(DatagramChannel channel, Receiver receiver) {
+        Loop target = leastLoaded();
+        Registration registration = new Registration(target, channel);
+        target.connections.incrementAndGet();
+        target.execute(() -> {
+            try {
+                registration.key = channel.register(target.selector, SelectionKey.OP_READ, receiver);
+            } catch (IOException | ClosedSelectorException ex) {
+                LOG.error("Error during registration of channel.", ex);
+                registration.release();
+            }
+        });
+        return registration;
+    }
+
+    /**
+     * Returns the thread serving the fewest connections.
+     *
+     * @return Selector thread for a new connection.
+     */
+    private Loop leastLoaded() {
+        Loop target = loops[0];
+        for (Loop loop : loops) {
+            if (loop.connections.get() < target.connections.get()) {
+                target = loop;
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public void close() {
+        for (Loop loop : loops) {
+            if (loop != null) {
+                loop.stop();
+            }
+        }
+    }
+
+    /**
+     * Receiver of the messages of a channel.
+     */
+    @FunctionalInterface
+    interface Receiver {
+
+        /**
+         * Processes a received message.
+         *
+         * @param buffer Buffer with the message, ready for reading and reused
+         *               after the call.
+         * @param source Address the message was received from.
+         */
+        void received(ByteBuffer buffer, SocketAddress source);
+
+    }
+
+    /**
+     * Registration of a channel with a selector thread.
+     */
+    static final class Registration {
+
+        /**
+         * Thread serving the channel.
+         */
+        private final Loop loop;
+
+        /**
+         * Registered channel.
+         */
+        private final DatagramChannel channel;
+
+        /**
+         * Key of the channel (only accessed by the selector thread).
+         */
+        private SelectionKey key;
+
+        /**
+         * Was the registration released?
+         */
+        private boolean released;
+
+        /**
+         * Constructor.
+         *
+         * @param loop    Thread serving the channel.
+         * @param channel Registered channel.
+         */
+        private Registration(Loop loop, DatagramChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        /**
+         * Cancels the registration and closes the channel.
+         *
+         * <p>
+         * When called by another thread, waits until the selector thread has
+         * released the channel.
+         * </p>
+         */
+        void cancel() {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            loop.execute(() -> {
+                release();
+                done.complete(null);
+            });
+            if (Thread.currentThread() != loop.thread && loop.thread.isAlive()) {
+                done.join();
+            }
+        }
+
+        /**
+         * Releases the key and the channel (called by the selector thread).
+         */
+        private void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOG.warn("Error during closing channel.", ex);
+            }
+            loop.connections.decrementAndGet();
+        }
+
+    }
+
+    /**
+     * Selector thread.
+     */
+    private static final class Loop {
+
+        /**
+         * Selector of the registered channels.
+         */
+        private final Selector selector;
+
+        /**
+         * Thread running the loop.
+         */
+        private final Thread thread;
+
+        /**
+         * Tasks to execute by the selector thread.
+         */
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Number of registered connections.
+         */
+        private final AtomicInteger connections = new AtomicInteger();
+
+        /**
+         * Buffer receiving the messages of all channels.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocate(PacketDispatcher.MAX_MESSAGE_SIZE)
+                .order(ByteOrder.nativeOrder());
+
+        /**
+         * Is the loop running?
+         */
+        private volatile boolean running = true;
+
+        /**
+         * Constructor.
+         *
+         * @param selector Selector of the registered channels.
+         * @param name     Name of the thread.
+         */
+        Loop(Selector selector, String name) {
+            this.selector = selector;
+            this.thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Executes a task by the selector thread.
+         *
+         * @param task Task to execute.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (!running) {
+                // run the task directly when the thread has already ended
+                runTasks();
+                return;
+            }
+            selector.wakeup();
+        }
+
+        /**
+         * Stops the thread and releases all channels.
+         */
+        void stop() {
+            running = false;
+            selector.wakeup();
+            if (Thread.currentThread() != thread && thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Execution loop of the selector thread.
+         */
+        private void run() {
+            while (running) {
+                try {
+                    runTasks();
+                    selector.select();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            receive((DatagramChannel) key.channel(), (Receiver) key.attachment());
+                        }
+                    }
+                } catch (IOException | ClosedSelectorException ex) {
+                    LOG.error("Error in event loop.", ex);
+                    break;
+                }
+            }
+
+            // release the channels which are still registered
+            runTasks();
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ex) {
+                    LOG.warn("Error during closing channel.", ex);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                LOG.warn("Error during closing selector.", ex);
+            }
+        }
+
+        /**
+         * Executes the queued tasks.
+         */
+        private void runTasks() {
+            for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    LOG.error("Error in event loop task.", ex);
+                }
+            }
+        }
+
+        /**
+         * Receives the available messages of a channel.
+         *
+         * @param channel  Channel to receive from.
+         * @param receiver Receiver of the messages.
+         */
+        private void receive(DatagramChannel channel, Receiver receiver) {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                SocketAddress source;
+                try {
+                    buffer.clear();
+                    source = channel.receive(buffer);
+                } catch (IOException ex) {
+                    // e.g. port unreachable while X-Plane is not running
+                    LOG.debug("Error during receiving message.", ex);
+                    return;
+                }
+                if (source == null) {
+                    return;
+                }
+                receiver.received(buffer.flip(), source);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,92 @@
+package de.painer.xplane.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import de.painer.xplane.metrics.Histogram;
+
+/**
+ * Histogram with buckets of powers of two from 1 microsecond to 17 seconds.
+ *
+ * <p>
+ * Each bucket is a striped counter, so recording from several threads does not
+ * contend and does not allocate.
+ * </p>
+ */
+final class FixedHistogram implements Histogram {
+
+    /**
+     * Exponent of the upper bound of the first bucket (1024 ns).
+     */
+    private static final int FIRST_EXPONENT = 10;
+
+    /**
+     * Exponent of the upper bound of the last bounded bucket (about 17 s).
+     */
+    private static final int LAST_EXPONENT = 34;
+
+    /**
+     * Number of buckets including the unbounded one.
+     */
+    private static final int BUCKETS = LAST_EXPONENT - FIRST_EXPONENT + 2;
+
+    /**
+     * Counters of the buckets.
+     */
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    /**
+     * Sum of the recorded durations.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Constructor.
+     */
+    FixedHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos Duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        int exponent = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 1) - 1);
+        int bucket = Math.min(Math.max(exponent - FIRST_EXPONENT, 0), BUCKETS - 1);
+        counts[bucket].increment();
+        sum.add(nanos);
+    }
+
+    @Override
+    public int buckets() {
+        return BUCKETS;
+    }
+
+    @Override
+    public long upperBound(int bucket) {
+        return bucket < BUCKETS - 1 ? 1L << (FIRST_EXPONENT + bucket) : Long.MAX_VALUE;
+    }
+
+    @Override
+    public long count(int bucket) {
+        return counts[bucket].sum();
+    }
+
+    @Override
+    public long count() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long sum() {
+        return sum.sum();
+    }
+
+}
@@ -0,0 +1,66 @@
+package de.painer.xplane.impl;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+
+/**
+ * Cached states of the flight recorder events emitted per message.
+ *
+ * <p>
+ * The events of the hot paths are only created when they are enabled in a
+ * running recording, so nothing is allocated per message while no recording
+ * is running. The states are refreshed whenever a recording is started or
+ * stopped.
+ * </p>
+ */
+final class FlightRecording {
+
+    /**
+     * Is the event for decoding a message enabled?
+     */
+    static volatile boolean decode;
+
+    /**
+     * Is the event for passing a message to a listener enabled?
+     */
+    static volatile boolean listener;
+
+    /**
+     * Is the event for a received datagram enabled?
+     */
+    static volatile boolean receive;
+
+    /**
+     * Is the event for a sent datagram enabled?
+     */
+    static volatile boolean send;
+
+    static {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                refresh();
+            }
+        });
+        refresh();
+    }
+
+    /**
+     * Constructor.
+     */
+    private FlightRecording() {
+    }
+
+    /**
+     * Reads the current states of the events.
+     */
+    private static void refresh() {
+        decode = EventType.getEventType(DecodeEvent.class).isEnabled();
+        listener = EventType.getEventType(ListenerEvent.class).isEnabled();
+        receive = EventType.getEventType(ReceiveEvent.class).isEnabled();
+        send = EventType.getEventType(SendEvent.class).isEnabled();
+    }
+
+}
@@ -0,0 +1,212 @@
+package de.painer.xplane.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.data.DatarefUpdate;
+import de.painer.xplane.data.Position;
+
+/**
+ * Reactive publishers of a connection.
+ *
+ * <p>
+ * Each subscription holds its datarefs or the position at the connection, so
+ * they stay watched while subscribed, even when they are unwatched otherwise.
+ * Cancelling the last subscription unwatches the data not used otherwise, so
+ * X-Plane only sends what is consumed.
+ * </p>
+ */
+final class FlowPublishers {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(FlowPublishers.class);
+
+    /**
+     * Connection holding the published datarefs and the position.
+     */
+    private final DatarefHolder holder;
+
+    /**
+     * Hub delivering the received data.
+     */
+    private final StreamHub hub;
+
+    /**
+     * Requested frequencies of the position subscriptions.
+     */
+    private final Map<PositionSubscription, Integer> positionFrequencies = new HashMap<>();
+
+    /**
+     * Active subscriptions.
+     */
+    private final Set<ConflatingSubscription<?>> active = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Was the connection closed?
+     */
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param holder Connection holding the published datarefs and the
+     *               position.
+     * @param hub    Hub delivering the received data.
+     */
+    FlowPublishers(DatarefHolder holder, StreamHub hub) {
+        this.holder = holder;
+        this.hub = hub;
+    }
+
+    /**
+     * Creates a publisher of datarefs.
+     *
+     * @param frequency Number of values per second.
+     * @param executor  Executor calling the subscribers.
+     * @param datarefs  Names of the datarefs.
+     * @return New publisher.
+     */
+    Flow.Publisher<DatarefUpdate> datarefs(int frequency, Executor executor, String... datarefs) {
+        Objects.requireNonNull(executor);
+        if (datarefs.length == 0) {
+            throw new IllegalArgumentException("No datarefs to publish.");
+        }
+        String[] names = new LinkedHashSet<>(Arrays.asList(datarefs)).toArray(String[]::new);
+        return subscriber -> {
+            DatarefSubscription subscription = new DatarefSubscription(this, Objects.requireNonNull(subscriber),
+                    executor, names);
+            subscriber.onSubscribe(subscription);
+            attach(subscription, frequency);
+        };
+    }
+
+    /**
+     * Creates a publisher of positions.
+     *
+     * @param frequency Number of positions per second.
+     * @param executor  Executor calling the subscribers.
+     * @return New publisher.
+     */
+    Flow.Publisher<Position> position(int frequency, Executor executor) {
+        Objects.requireNonNull(executor);
+        return subscriber -> {
+            PositionSubscription subscription = new PositionSubscription(this, Objects.requireNonNull(subscriber),
+                    executor);
+            subscriber.onSubscribe(subscription);
+            attach(subscription, frequency);
+        };
+    }
+
+    /**
+     * Completes all subscriptions after the connection was closed.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (ConflatingSubscription<?> subscription : active) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Registers a dataref subscription and watches its datarefs.
+     *
+     * @param subscription Subscription to register.
+     * @param frequency    Number of values per second.
+     */
+    private synchronized void attach(DatarefSubscription subscription, int frequency) {
+        if (!start(subscription)) {
+            return;
+        }
+        String[] datarefs = subscription.datarefs();
+        for (int i = 0; i < datarefs.length; i++) {
+            int index = i;
+            holder.hold(datarefs[i], frequency, id -> {
+                subscription.id(index, id);
+                hub.add(subscription, id);
+            });
+        }
+    }
+
+    /**
+     * Registers a position subscription and watches the position.
+     *
+     * @param subscription Subscription to register.
+     * @param frequency    Number of positions per second.
+     */
+    private synchronized void attach(PositionSubscription subscription, int frequency) {
+        if (!start(subscription)) {
+            return;
+        }
+        hub.add(subscription);
+        positionFrequencies.put(subscription, frequency);
+        holder.holdPosition(frequency);
+    }
+
+    /**
+     * Activates a new subscription.
+     *
+     * <p>
+     * Must be called with the monitor held.
+     * </p>
+     *
+     * @param subscription New subscription.
+     * @return Should the subscription be registered (or was it cancelled
+     *         during <code>onSubscribe</code> or is the connection closed)?
+     */
+    private boolean start(ConflatingSubscription<?> subscription) {
+        if (subscription.isCancelled()) {
+            return false;
+        }
+        if (closed) {
+            subscription.complete();
+            return false;
+        }
+        active.add(subscription);
+        return true;
+    }
+
+    /**
+     * Removes a dataref subscription and unwatches datarefs not used
+     * otherwise.
+     *
+     * @param subscription Cancelled subscription.
+     */
+    synchronized void detach(DatarefSubscription subscription) {
+        if (!active.remove(subscription)) {
+            return;
+        }
+        hub.remove(subscription);
+        holder.unhold(subscription.datarefs());
+    }
+
+    /**
+     * Removes a position subscription and unwatches the position when it is
+     * not used otherwise.
+     *
+     * @param subscription Cancelled subscription.
+     */
+    synchronized void detach(PositionSubscription subscription) {
+        if (!active.remove(subscription)) {
+            return;
+        }
+        hub.remove(subscription);
+        int frequency = positionFrequencies.remove(subscription);
+        LOG.debug("Subscription of position with frequency {} Hz cancelled.", frequency);
+        holder.unholdPosition(frequency);
+    }
+
+}
@@ -0,0 +1,37 @@
+package de.painer.xplane.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for passing a message to a listener.
+ *
+ * <p>
+ * Only listeners taking longer than the threshold are recorded.
+ * </p>
+ */
+@Name("de.painer.xplane.ListenerDispatched")
+@Label("Listener Dispatched")
+@Description("Message passed to a listener")
+@Category({ "X-Plane", "Dispatch" })
+@Threshold("1 ms")
+@StackTrace(false)
+final class ListenerEvent extends jdk.jfr.Event {
+
+    /**
+     * Class of the listener.
+     */
+    @Label("Listener")
+    Class<?> listener;
+
+    /**
+     * Type of the message.
+     */
+    @Label("Message Type")
+    String type;
+
+}
@@ -0,0 +1,72 @@
+package de.painer.xplane.impl;
+
+import java.util.Arrays;
+
+import de.painer.xplane.XPlaneListener;
+
+/**
+ * Copy-on-write list of listeners.
+ *
+ * <p>
+ * Adding and removing listeners replaces the array of listeners, which is
+ * published atomically. Dispatching threads read the current array without
+ * locks and iterate over it with a plain indexed loop, so listeners can be
+ * changed at any time without disturbing a running dispatch.
+ * </p>
+ */
+final class Listeners {
+
+    /**
+     * Empty array of listeners.
+     */
+    private static final XPlaneListener[] EMPTY = new XPlaneListener[0];
+
+    /**
+     * Current listeners.
+     */
+    private volatile XPlaneListener[] listeners = EMPTY;
+
+    /**
+     * Adds a listener.
+     *
+     * @param listener Listener to add.
+     */
+    synchronized void add(XPlaneListener listener) {
+        XPlaneListener[] current = listeners;
+        XPlaneListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener Listener to remove.
+     */
+    synchronized void remove(XPlaneListener listener) {
+        XPlaneListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(listener)) {
+                XPlaneListener[] updated = new XPlaneListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the current listeners.
+     *
+     * <p>
+     * The returned array must not be modified.
+     * </p>
+     *
+     * @return Array with the current listeners.
+     */
+    XPlaneListener[] get() {
+        return listeners;
+    }
+
+}
@@ -0,0 +1,178 @@
+package de.painer.xplane.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import de.painer.xplane.DatarefPipeline;
+import de.painer.xplane.data.PositionField;
+
+/**
+ * Immutable description of a pipeline.
+ *
+ * <p>
+ * The pipeline only keeps factories of the stages. The stages with their state
+ * are created for each derived dataref.
+ * </p>
+ */
+public final class OperatorPipeline implements DatarefPipeline {
+
+    /**
+     * Source dataref (<code>null</code> for a position field).
+     */
+    private final String dataref;
+
+    /**
+     * Source field of the position (<code>null</code> for a dataref).
+     */
+    private final PositionField field;
+
+    /**
+     * Factories of the stages.
+     */
+    private final List<Supplier<PipelineStage>> stages;
+
+    /**
+     * Constructor.
+     *
+     * @param dataref Source dataref or <code>null</code>.
+     * @param field   Source field of the position or <code>null</code>.
+     * @param stages  Factories of the stages.
+     */
+    private OperatorPipeline(String dataref, PositionField field, List<Supplier<PipelineStage>> stages) {
+        this.dataref = dataref;
+        this.field = field;
+        this.stages = stages;
+    }
+
+    /**
+     * Creates a pipeline for the values of a dataref.
+     *
+     * @param dataref Source dataref.
+     * @return Pipeline without operations.
+     */
+    public static OperatorPipeline of(String dataref) {
+        return new OperatorPipeline(Objects.requireNonNull(dataref), null, List.of());
+    }
+
+    /**
+     * Creates a pipeline for a field of the received positions.
+     *
+     * @param field Source field.
+     * @return Pipeline without operations.
+     */
+    public static OperatorPipeline of(PositionField field) {
+        return new OperatorPipeline(null, Objects.requireNonNull(field), List.of());
+    }
+
+    /**
+     * Returns the source dataref.
+     *
+     * @return Name of the dataref or <code>null</code> for a position field.
+     */
+    String dataref() {
+        return dataref;
+    }
+
+    /**
+     * Returns the source field of the position.
+     *
+     * @return Field or <code>null</code> for a dataref.
+     */
+    PositionField field() {
+        return field;
+    }
+
+    /**
+     * Creates the stages with initial state.
+     *
+     * @return New stages in order.
+     */
+    PipelineStage[] createStages() {
+        PipelineStage[] created = new PipelineStage[stages.size()];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = stages.get(i).get();
+        }
+        return created;
+    }
+
+    @Override
+    public DatarefPipeline decimate(int n) {
+        positive(n);
+        return then(() -> new PipelineStage.Decimate(n));
+    }
+
+    @Override
+    public DatarefPipeline ema(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Alpha must be in (0, 1].");
+        }
+        return then(() -> new PipelineStage.Ema(alpha));
+    }
+
+    @Override
+    public DatarefPipeline average(int window) {
+        positive(window);
+        return then(() -> new PipelineStage.Average(window));
+    }
+
+    @Override
+    public DatarefPipeline derivative() {
+        return then(PipelineStage.Derivative::new);
+    }
+
+    @Override
+    public DatarefPipeline clamp(double min, double max) {
+        if (!(min <= max)) {
+            throw new IllegalArgumentException("Invalid interval [" + min + ", " + max + "].");
+        }
+        return then(() -> new PipelineStage.Clamp(min, max));
+    }
+
+    @Override
+    public DatarefPipeline scale(double factor, double offset) {
+        return then(() -> new PipelineStage.Scale(factor, offset));
+    }
+
+    @Override
+    public DatarefPipeline min(int window) {
+        positive(window);
+        return then(() -> new PipelineStage.Extremum(window, false));
+    }
+
+    @Override
+    public DatarefPipeline max(int window) {
+        positive(window);
+        return then(() -> new PipelineStage.Extremum(window, true));
+    }
+
+    /**
+     * Creates a pipeline with an additional stage.
+     *
+     * @param stage Factory of the stage.
+     * @return New pipeline.
+     */
+    private OperatorPipeline then(Supplier<PipelineStage> stage) {
+        List<Supplier<PipelineStage>> extended = new ArrayList<>(stages);
+        extended.add(stage);
+        return new OperatorPipeline(dataref, field, List.copyOf(extended));
+    }
+
+    /**
+     * Checks that a count is positive.
+     *
+     * @param n Count to check.
+     */
+    private static void positive(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Count must be positive.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OperatorPipeline[" + (dataref != null ? dataref : field) + ", " + stages.size() + " stages]";
+    }
+
+}
@@ -0,0 +1,546 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.MessageDecoder;
+import de.painer.xplane.XPlaneListener;
+import de.painer.xplane.data.DataView;
+import de.painer.xplane.data.PositionView;
+
+/**
+ * Decoding of received messages and dispatch to the listeners.
+ *
+ * <p>
+ * The dispatcher keeps reusable state for decoding messages, so each thread
+ * dispatching messages needs its own instance. This includes the elements of
+ * array datarefs collected until all elements of a frame have been received.
+ * </p>
+ */
+final class PacketDispatcher {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(PacketDispatcher.class);
+
+    /**
+     * Maximum size of a message received from X-Plane.
+     */
+    static final int MAX_MESSAGE_SIZE = 1500;
+
+    /**
+     * Maximum number of values in one RREF message (5 bytes header, 8 bytes per
+     * value).
+     */
+    static final int MAX_RREF_VALUES = (MAX_MESSAGE_SIZE - 5) / 8;
+
+    /**
+     * Header of RPOS messages as int in native byte order.
+     */
+    static final int RPOS = header("RPOS");
+
+    /**
+     * Header of RREF messages as int in native byte order.
+     */
+    static final int RREF = header("RREF");
+
+    /**
+     * Header of DATA messages as int in native byte order.
+     */
+    static final int DATA = header("DATA");
+
+    /**
+     * Registry of the watched datarefs.
+     */
+    private final DatarefRegistry registry;
+
+    /**
+     * Listeners to dispatch to.
+     */
+    private final Listeners listeners;
+
+    /**
+     * Open streams to dispatch to.
+     */
+    private final StreamHub streams;
+
+    /**
+     * Counters of the connection.
+     */
+    private final ConnectionCounters counters;
+
+    /**
+     * Additional decoders of the connection.
+     */
+    private final DecoderTable decoders;
+
+    /**
+     * Ids of the datarefs in the currently processed RREF message.
+     */
+    private final int[] rrefIds = new int[MAX_RREF_VALUES];
+
+    /**
+     * Names of the datarefs in the currently processed RREF message.
+     */
+    private final String[] rrefDatarefs = new String[MAX_RREF_VALUES];
+
+    /**
+     * Values of the datarefs in the currently processed RREF message.
+     */
+    private final float[] rrefValues = new float[MAX_RREF_VALUES];
+
+    /**
+     * Ids of the array elements in the currently processed RREF message.
+     */
+    private final int[] elementIds = new int[MAX_RREF_VALUES];
+
+    /**
+     * Names of the array elements in the currently processed RREF message.
+     */
+    private final String[] elementDatarefs = new String[MAX_RREF_VALUES];
+
+    /**
+     * Values of the array elements in the currently processed RREF message.
+     */
+    private final float[] elementValues = new float[MAX_RREF_VALUES];
+
+    /**
+     * Arrays completed by the currently processed RREF message (each one only
+     * once, with the latest completed frame).
+     */
+    private final ArrayAssembly[] completedArrays = new ArrayAssembly[MAX_RREF_VALUES];
+
+    /**
+     * Assemblies of array datarefs by slot of the first element (grown on
+     * demand).
+     */
+    private ArrayAssembly[] assemblies = new ArrayAssembly[0];
+
+    /**
+     * View on the position in the currently processed RPOS message.
+     */
+    private final PositionView positionView = new PositionView();
+
+    /**
+     * View on the records in the currently processed DATA message.
+     */
+    private final DataView dataView = new DataView();
+
+    /**
+     * Constructor.
+     *
+     * @param registry  Registry of the watched datarefs.
+     * @param listeners Listeners to dispatch to.
+     * @param streams   Open streams to dispatch to.
+     * @param counters  Counters of the connection.
+     * @param decoders  Additional decoders of the connection.
+     */
+    PacketDispatcher(DatarefRegistry registry, Listeners listeners, StreamHub streams, ConnectionCounters counters,
+            DecoderTable decoders) {
+        this.registry = registry;
+        this.listeners = listeners;
+        this.streams = streams;
+        this.counters = counters;
+        this.decoders = decoders;
+    }
+
+    /**
+     * Decodes a message and dispatches it to the listeners.
+     *
+     * @param buffer Buffer with the message, ready for reading.
+     */
+    void dispatch(ByteBuffer buffer) {
+        DecodeEvent event = null;
+        if (FlightRecording.decode) {
+            // events are only created while recorded
+            event = new DecodeEvent();
+            event.begin();
+        }
+        if (buffer.remaining() < 5) {
+            counters.decodeError();
+            LOG.debug("Received message with {} bytes.", buffer.remaining());
+            return;
+        }
+
+        // handle the message according to the header read as int, the fifth
+        // byte of the header is not always a null-termination
+        int tag = buffer.getInt(buffer.position());
+        buffer.position(buffer.position() + 5);
+        if (tag == RREF) {
+            receivedRref(buffer, event);
+        } else if (tag == RPOS) {
+            receivedRpos(buffer, event);
+        } else if (tag == DATA) {
+            receivedData(buffer, event);
+        } else {
+            MessageDecoder decoder = decoders.get(tag);
+            if (decoder != null) {
+                decode(decoder, buffer, event);
+            } else {
+                counters.unknownMessage();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Unknown message type received: {}.", DecoderTable.type(tag));
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes a message to an additional decoder.
+     *
+     * @param decoder Decoder for the message type.
+     * @param buffer  Buffer with the message, positioned after the header.
+     * @param event   Flight recorder event for the decoding.
+     */
+    private void decode(MessageDecoder decoder, ByteBuffer buffer, DecodeEvent event) {
+        try {
+            decoder.decode(decoders.xplane(), buffer);
+        } catch (RuntimeException ex) {
+            counters.decodeError();
+            LOG.error("Error in decoder {} for message type {}.", decoder, decoder.type(), ex);
+        }
+        decoded(event, decoder.type(), 0);
+    }
+
+    /**
+     * Process position received from X-Plane.
+     *
+     * <p>
+     * The position is not copied but passed to the listeners as a view on the
+     * receive buffer.
+     * </p>
+     *
+     * @param buffer Buffer with the message, positioned after the header.
+     * @param event  Flight recorder event for the decoding.
+     */
+    private void receivedRpos(ByteBuffer buffer, DecodeEvent event) {
+        if (buffer.remaining() < PositionView.SIZE) {
+            counters.decodeError();
+            LOG.warn("Received incomplete position with {} bytes.", buffer.remaining());
+            return;
+        }
+        positionView.wrap(buffer, buffer.position());
+        decoded(event, "RPOS", 1);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received position {}.", positionView.toPosition());
+        }
+
+        // send data to listeners
+        XPlaneListener[] current = listeners.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < current.length; i++) {
+            ListenerEvent listenerEvent = listenerEvent();
+            try {
+                current[i].receivedPosition(positionView);
+            } catch (RuntimeException ex) {
+                counters.listenerError();
+                LOG.error("Error in listener {} during processing of position.", current[i], ex);
+            }
+            dispatched(listenerEvent, current[i], "RPOS");
+        }
+        counters.listenerTime(System.nanoTime() - start);
+        streams.offer(positionView);
+    }
+
+    /**
+     * Processes records of output groups received from X-Plane.
+     *
+     * <p>
+     * The records are not copied but passed to the listeners as a view on the
+     * receive buffer.
+     * </p>
+     *
+     * @param buffer Buffer with the message, positioned after the header.
+     * @param event  Flight recorder event for the decoding.
+     */
+    private void receivedData(ByteBuffer buffer, DecodeEvent event) {
+        dataView.wrap(buffer, buffer.position(), buffer.remaining());
+        decoded(event, "DATA", dataView.count());
+        if (dataView.count() == 0) {
+            counters.decodeError();
+            LOG.warn("Received DATA message without records.");
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received data {}.", dataView);
+        }
+
+        // send data to listeners
+        XPlaneListener[] current = listeners.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < current.length; i++) {
+            ListenerEvent listenerEvent = listenerEvent();
+            try {
+                current[i].receivedData(dataView);
+            } catch (RuntimeException ex) {
+                counters.listenerError();
+                LOG.error("Error in listener {} during processing of data.", current[i], ex);
+            }
+            dispatched(listenerEvent, current[i], "DATA");
+        }
+        counters.listenerTime(System.nanoTime() - start);
+    }
+
+    /**
+     * Processes received datarefs.
+     *
+     * <p>
+     * One RREF message contains an arbitrary number of pairs of dataref id and
+     * value. All pairs are parsed and delivered to the listeners as one batch.
+     * Values for unknown ids are ignored.
+     * </p>
+     *
+     * @param buffer Buffer with the message, positioned after the header.
+     * @param event  Flight recorder event for the decoding.
+     */
+    private void receivedRref(ByteBuffer buffer, DecodeEvent event) {
+        // read all values of the message, array elements are collected
+        // separately
+        int count = 0;
+        int elements = 0;
+        int completed = 0;
+        while (buffer.remaining() >= 8 && count + elements < MAX_RREF_VALUES) {
+            int index = buffer.getInt();
+            float value = buffer.getFloat();
+            String dataref = registry.received(index);
+            if (dataref == null) {
+                LOG.debug("Received value for unknown dataref ID {}.", index);
+                continue;
+            }
+            DatarefArray array = registry.array(index);
+            if (array != null) {
+                elementIds[elements] = index;
+                elementDatarefs[elements] = dataref;
+                elementValues[elements] = value;
+                elements++;
+                ArrayAssembly assembly = assembly(array);
+                if (assembly.add(array.elementOf(index), value) && !assembly.pending) {
+                    assembly.pending = true;
+                    completedArrays[completed++] = assembly;
+                }
+                continue;
+            }
+            rrefIds[count] = index;
+            rrefDatarefs[count] = dataref;
+            rrefValues[count] = value;
+            count++;
+        }
+        for (int i = 0; i < completed; i++) {
+            completedArrays[i].pending = false;
+        }
+        decoded(event, "RREF", count + elements);
+        if (count == 0 && elements == 0) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            for (int i = 0; i < count; i++) {
+                LOG.debug("Received dataref {} with ID {} and value {}.", rrefDatarefs[i], rrefIds[i], rrefValues[i]);
+            }
+        }
+
+        // inform listeners
+        XPlaneListener[] current = listeners.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < current.length; i++) {
+            ListenerEvent listenerEvent = listenerEvent();
+            try {
+                if (count > 0) {
+                    current[i].receivedDatarefs(rrefIds, rrefDatarefs, rrefValues, count);
+                }
+                for (int j = 0; j < completed; j++) {
+                    ArrayAssembly assembly = completedArrays[j];
+                    current[i].receivedDatarefArray(assembly.array.dataref(), assembly.array.from(),
+                            assembly.frame);
+                }
+            } catch (RuntimeException ex) {
+                counters.listenerError();
+                LOG.error("Error in listener {} during processing of datarefs.", current[i], ex);
+            }
+            dispatched(listenerEvent, current[i], "RREF");
+        }
+        counters.listenerTime(System.nanoTime() - start);
+
+        // inform streams
+        if (streams.hasDatarefStreams()) {
+            long timestamp = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                streams.offer(rrefIds[i], rrefDatarefs[i], rrefValues[i], timestamp);
+            }
+            for (int i = 0; i < elements; i++) {
+                streams.offer(elementIds[i], elementDatarefs[i], elementValues[i], timestamp);
+            }
+        }
+    }
+
+    /**
+     * Returns the assembly of an array dataref.
+     *
+     * @param array Subscription of the array.
+     * @return Assembly of this dispatcher for the array.
+     */
+    private ArrayAssembly assembly(DatarefArray array) {
+        int slot = DatarefRegistry.slot(array.firstId());
+        if (slot >= assemblies.length) {
+            assemblies = Arrays.copyOf(assemblies, Math.max(slot + 1, assemblies.length * 2));
+        }
+        ArrayAssembly assembly = assemblies[slot];
+        if (assembly == null || assembly.array != array) {
+            // slot is used by a new subscription
+            assembly = new ArrayAssembly(array);
+            assemblies[slot] = assembly;
+        }
+        return assembly;
+    }
+
+    /**
+     * Completes the flight recorder event of decoding a message.
+     *
+     * @param event  Event started before decoding or <code>null</code>.
+     * @param type   Type of the message.
+     * @param values Number of decoded values.
+     */
+    private static void decoded(DecodeEvent event, String type, int values) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.type = type;
+            event.values = values;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts the flight recorder event of passing a message to a listener.
+     *
+     * @return Started event or <code>null</code> if the event is not recorded.
+     */
+    private static ListenerEvent listenerEvent() {
+        if (!FlightRecording.listener) {
+            return null;
+        }
+        ListenerEvent event = new ListenerEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Completes the flight recorder event of passing a message to a listener.
+     *
+     * @param event    Event started before calling the listener or
+     *                 <code>null</code>.
+     * @param listener Called listener.
+     * @param type     Type of the message.
+     */
+    private static void dispatched(ListenerEvent event, XPlaneListener listener, String type) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.listener = listener.getClass();
+            event.type = type;
+            event.commit();
+        }
+    }
+
+    /**
+     * Elements of an array dataref collected until all elements of a frame are
+     * received.
+     */
+    private static final class ArrayAssembly {
+
+        /**
+         * Subscription of the array.
+         */
+        private final DatarefArray array;
+
+        /**
+         * Values of the elements received in the current frame.
+         */
+        private final float[] values;
+
+        /**
+         * Values of the latest completed frame (passed to the listeners).
+         */
+        private final float[] frame;
+
+        /**
+         * Bit set of the elements received in the current frame.
+         */
+        private final long[] received;
+
+        /**
+         * Number of elements not yet received in the current frame.
+         */
+        private int missing;
+
+        /**
+         * Was a frame completed by the currently processed message?
+         */
+        private boolean pending;
+
+        /**
+         * Constructor.
+         *
+         * @param array Subscription of the array.
+         */
+        ArrayAssembly(DatarefArray array) {
+            this.array = array;
+            this.values = new float[array.size()];
+            this.frame = new float[array.size()];
+            this.received = new long[(array.size() + 63) >>> 6];
+            this.missing = array.size();
+        }
+
+        /**
+         * Adds the value of an element.
+         *
+         * <p>
+         * A frame is complete when all elements have been received. When an
+         * element is received again before, the missing elements were lost and a
+         * new frame is started. A complete frame is copied, so elements of the
+         * next frame in the same message do not change it.
+         * </p>
+         *
+         * @param element Number of the element.
+         * @param value   Value of the element.
+         * @return Is the frame complete?
+         */
+        boolean add(int element, float value) {
+            long bit = 1L << element;
+            if ((received[element >>> 6] & bit) != 0) {
+                Arrays.fill(received, 0);
+                missing = values.length;
+            }
+            received[element >>> 6] |= bit;
+            values[element] = value;
+            if (--missing == 0) {
+                System.arraycopy(values, 0, frame, 0, values.length);
+                Arrays.fill(received, 0);
+                missing = values.length;
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Returns a message header as int.
+     *
+     * @param header Header of a message.
+     * @return First four bytes of the message read in native byte order.
+     */
+    static int header(String header) {
+        return ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)).order(ByteOrder.nativeOrder()).getInt();
+    }
+
+}
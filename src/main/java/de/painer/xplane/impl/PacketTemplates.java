@@ -0,0 +1,156 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of pre-encoded messages.
+ *
+ * <p>
+ * Messages which are sent repeatedly (commands, RREF requests and DREF writes)
+ * are encoded only once. For sending, the template is copied into a send buffer
+ * and only the changing fields are patched. The templates are read with absolute
+ * methods only, so they can be shared between threads.
+ * </p>
+ */
+final class PacketTemplates {
+
+    /**
+     * Offset of the frequency in a RREF message.
+     */
+    static final int RREF_FREQUENCY_OFFSET = 5;
+
+    /**
+     * Offset of the id in a RREF message.
+     */
+    static final int RREF_ID_OFFSET = 9;
+
+    /**
+     * Size of a RREF message.
+     */
+    static final int RREF_SIZE = 413;
+
+    /**
+     * Offset of the value in a DREF message.
+     */
+    static final int DREF_VALUE_OFFSET = 5;
+
+    /**
+     * Size of a DREF message.
+     */
+    static final int DREF_SIZE = 509;
+
+    /**
+     * Maximum number of cached templates per message type.
+     */
+    private static final int MAX_TEMPLATES = 1024;
+
+    /**
+     * Templates for CMND messages by command.
+     */
+    private final ConcurrentHashMap<String, ByteBuffer> commands = new ConcurrentHashMap<>();
+
+    /**
+     * Templates for RREF messages by dataref.
+     */
+    private final ConcurrentHashMap<String, ByteBuffer> datarefs = new ConcurrentHashMap<>();
+
+    /**
+     * Templates for DREF messages by dataref.
+     */
+    private final ConcurrentHashMap<String, ByteBuffer> writes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the template of a CMND message.
+     *
+     * @param command Command to send.
+     * @return Encoded message.
+     */
+    ByteBuffer command(String command) {
+        ByteBuffer template = commands.get(command);
+        if (template == null) {
+            DataWriter writer = new DataWriter(5 + command.length() + 1);
+            writer.writeString("CMND");
+            writer.writeString(command);
+            template = cache(commands, command, writer.export());
+        }
+        return template;
+    }
+
+    /**
+     * Returns the template of a RREF message.
+     *
+     * <p>
+     * Frequency and id have to be patched at {@link #RREF_FREQUENCY_OFFSET} and
+     * {@link #RREF_ID_OFFSET}.
+     * </p>
+     *
+     * @param dataref Dataref to request.
+     * @return Encoded message.
+     */
+    ByteBuffer rref(String dataref) {
+        ByteBuffer template = datarefs.get(dataref);
+        if (template == null) {
+            DataWriter writer = new DataWriter(RREF_SIZE);
+            writer.writeString("RREF");
+            writer.writeInt(0);
+            writer.writeInt(0);
+            writer.writeString(dataref, 400);
+            template = cache(datarefs, dataref, writer.export());
+        }
+        return template;
+    }
+
+    /**
+     * Returns the template of a DREF message.
+     *
+     * <p>
+     * The value has to be patched at {@link #DREF_VALUE_OFFSET}.
+     * </p>
+     *
+     * @param dataref Dataref to write.
+     * @return Encoded message.
+     */
+    ByteBuffer dref(String dataref) {
+        ByteBuffer template = writes.get(dataref);
+        if (template == null) {
+            DataWriter writer = new DataWriter(DREF_SIZE);
+            writer.writeString("DREF");
+            writer.writeFloat(0);
+            writer.writeString(dataref, 500);
+            template = cache(writes, dataref, writer.export());
+        }
+        return template;
+    }
+
+    /**
+     * Copies a template into a buffer.
+     *
+     * @param template Template to copy.
+     * @param buffer   Buffer to copy the template to.
+     * @return Buffer ready for sending the template.
+     */
+    static ByteBuffer copy(ByteBuffer template, ByteBuffer buffer) {
+        int length = template.limit();
+        buffer.clear();
+        buffer.put(0, template, 0, length);
+        return buffer.limit(length);
+    }
+
+    /**
+     * Adds a template to a cache if the cache is not full.
+     *
+     * @param cache    Cache to add the template to.
+     * @param key      Key of the template.
+     * @param template Template to add.
+     * @return Cached template.
+     */
+    private static ByteBuffer cache(ConcurrentHashMap<String, ByteBuffer> cache, String key, ByteBuffer template) {
+        if (cache.size() >= MAX_TEMPLATES) {
+            return template;
+        }
+        ByteBuffer existing = cache.putIfAbsent(key, template);
+        return existing != null ? existing : template;
+    }
+
+}
@@ -0,0 +1,340 @@
+package de.painer.xplane.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stage of a pipeline with primitive state.
+ *
+ * <p>
+ * Stages are applied by the receiving thread only. They transform the current
+ * value of a derived dataref in place and never allocate.
+ * </p>
+ */
+abstract class PipelineStage {
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Applies the stage to the current value.
+     *
+     * @param sample Derived dataref with the current value and its time.
+     * @return Should the value be passed on (or was it consumed)?
+     */
+    abstract boolean apply(DerivedDataref sample);
+
+    /**
+     * Passes on every n-th value.
+     */
+    static final class Decimate extends PipelineStage {
+
+        /**
+         * Number of values per passed value.
+         */
+        private final int n;
+
+        /**
+         * Number of values since the last passed one.
+         */
+        private int count;
+
+        /**
+         * Constructor.
+         *
+         * @param n Number of values per passed value.
+         */
+        Decimate(int n) {
+            this.n = n;
+        }
+
+        @Override
+        boolean apply(DerivedDataref sample) {
+            if (++count < n) {
+                return false;
+            }
+            count = 0;
+            return true;
+        }
+
+    }
+
+    /**
+     * Exponential moving average.
+     */
+    static final class Ema extends PipelineStage {
+
+        /**
+         * Weight of a new value.
+         */
+        private final double alpha;
+
+        /**
+         * Current average.
+         */
+        private double average;
+
+        /**
+         * Was a value received before?
+         */
+        private boolean initialized;
+
+        /**
+         * Constructor.
+         *
+         * @param alpha Weight of a new value.
+         */
+        Ema(double alpha) {
+            this.alpha = alpha;
+        }
+
+        @Override
+        boolean apply(DerivedDataref sample) {
+            // the first value starts the average
+            average = initialized ? average + alpha * (sample.value - average) : sample.value;
+            initialized = true;
+            sample.value = average;
+            return true;
+        }
+
+    }
+
+    /**
+     * Average of the latest values.
+     */
+    static final class Average extends PipelineStage {
+
+        /**
+         * Latest values in a ring buffer.
+         */
+        private final double[] window;
+
+        /**
+         * Sum of the values in the window.
+         */
+        private double sum;
+
+        /**
+         * Index of the next value.
+         */
+        private int next;
+
+        /**
+         * Number of values in the window.
+         */
+        private int count;
+
+        /**
+         * Constructor.
+         *
+         * @param size Number of averaged values.
+         */
+        Average(int size) {
+            this.window = new double[size];
+        }
+
+        @Override
+        boolean apply(DerivedDataref sample) {
+            if (count == window.length) {
+                sum -= window[next];
+            } else {
+                count++;
+            }
+            window[next] = sample.value;
+            sum += sample.value;
+            next = (next + 1) % window.length;
+            sample.value = sum / count;
+            return true;
+        }
+
+    }
+
+    /**
+     * Change per second between consecutive values.
+     */
+    static final class Derivative extends PipelineStage {
+
+        /**
+         * Previous value.
+         */
+        private double previous;
+
+        /**
+         * Time of the previous value.
+         */
+        private long previousTime;
+
+        /**
+         * Was a value received before?
+         */
+        private boolean initialized;
+
+        @Override
+        boolean apply(DerivedDataref sample) {
+            double value = sample.value;
+            long elapsed = sample.timestamp - previousTime;
+            boolean valid = initialized && elapsed > 0;
+            if (valid) {
+                sample.value = (value - previous) * NANOS_PER_SECOND / elapsed;
+            }
+            previous = value;
+            previousTime = sample.timestamp;
+            initialized = true;
+            return valid;
+        }
+
+    }
+
+    /**
+     * Limitation to an interval.
+     */
+    static final class Clamp extends PipelineStage {
+
+        /**
+         * Lower limit.
+         */
+        private final double min;
+
+        /**
+         * Upper limit.
+         */
+        private final double max;
+
+        /**
+         * Constructor.
+         *
+         * @param min Lower limit.
+         * @param max Upper limit.
+         */
+        Clamp(double min, double max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        boolean apply(DerivedDataref sample) {
+            sample.value = Math.min(Math.max(sample.value, min), max);
+            return true;
+        }
+
+    }
+
+    /**
+     * Linear transformation.
+     */
+    static final class Scale extends PipelineStage {
+
+        /**
+         * Factor.
+         */
+        private final double factor;
+
+        /**
+         * Offset added after multiplying.
+         */
+        private final double offset;
+
+        /**
+         * Constructor.
+         *
+         * @param factor Factor.
+         * @param offset Offset added after multiplying.
+         */
+        Scale(double factor, double offset) {
+            this.factor = factor;
+            this.offset = offset;
+        }
+
+        @Override
+        boolean apply(DerivedDataref sample) {
+            sample.value = sample.value * factor + offset;
+            return true;
+        }
+
+    }
+
+    /**
+     * Minimum or maximum of the latest values.
+     *
+     * <p>
+     * Uses a monotonic queue: values that can never become the extremum
+     * because a newer value is at least as extreme are dropped, so the front of
+     * the queue is always the extremum of the window.
+     * </p>
+     */
+    static final class Extremum extends PipelineStage {
+
+        /**
+         * Values of the queue in a ring buffer.
+         */
+        private final double[] values;
+
+        /**
+         * Sequence numbers of the queued values.
+         */
+        private final long[] sequences;
+
+        /**
+         * Compute the maximum (or the minimum)?
+         */
+        private final boolean maximum;
+
+        /**
+         * Index of the front of the queue.
+         */
+        private int head;
+
+        /**
+         * Number of queued values.
+         */
+        private int size;
+
+        /**
+         * Sequence number of the current value.
+         */
+        private long sequence;
+
+        /**
+         * Constructor.
+         *
+         * @param window  Number of compared values.
+         * @param maximum Compute the maximum (or the minimum)?
+         */
+        Extremum(int window, boolean maximum) {
+            this.values = new double[window];
+            this.sequences = new long[window];
+            this.maximum = maximum;
+        }
+
+        @Override
+        boolean apply(DerivedDataref sample) {
+            int capacity = values.length;
+            double value = sample.value;
+
+            // drop the front when it left the window
+            if (size > 0 && sequences[head] <= sequence - capacity) {
+                head = (head + 1) % capacity;
+                size--;
+            }
+
+            // drop values from the back which are less extreme
+            while (size > 0) {
+                int last = (head + size - 1) % capacity;
+                if (maximum ? values[last] > value : values[last] < value) {
+                    break;
+                }
+                size--;
+            }
+            int tail = (head + size) % capacity;
+            values[tail] = value;
+            sequences[tail] = sequence++;
+            size++;
+
+            sample.value = values[head];
+            return true;
+        }
+
+    }
+
+}
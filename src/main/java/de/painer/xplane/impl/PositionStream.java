@@ -0,0 +1,109 @@
+package de.painer.xplane.impl;
+
+import de.painer.xplane.data.Position;
+import de.painer.xplane.data.PositionView;
+
+/**
+ * Stream of received positions.
+ */
+final class PositionStream extends BlockingStream<Position> implements StreamHub.PositionSink {
+
+    /**
+     * Number of double values of a position.
+     */
+    private static final int DOUBLES = 3;
+
+    /**
+     * Number of float values of a position.
+     */
+    private static final int FLOATS = 10;
+
+    /**
+     * Hub the stream is registered at.
+     */
+    private final StreamHub hub;
+
+    /**
+     * Action releasing the position when the stream is closed.
+     */
+    private final Runnable release;
+
+    /**
+     * Double values of the buffered positions.
+     */
+    private final double[] doubles;
+
+    /**
+     * Float values of the buffered positions.
+     */
+    private final float[] floats;
+
+    /**
+     * Constructor.
+     *
+     * @param hub      Hub the stream is registered at.
+     * @param capacity Capacity of the buffer.
+     * @param release  Action releasing the position of the stream when it is
+     *                 closed.
+     */
+    PositionStream(StreamHub hub, int capacity, Runnable release) {
+        super(capacity);
+        this.hub = hub;
+        this.release = release;
+        this.doubles = new double[capacity * DOUBLES];
+        this.floats = new float[capacity * FLOATS];
+    }
+
+    @Override
+    public void offer(PositionView position) {
+        lock.lock();
+        try {
+            int index = reserve();
+            int d = index * DOUBLES;
+            doubles[d] = position.longitude();
+            doubles[d + 1] = position.latitude();
+            doubles[d + 2] = position.elevationMSL();
+            int f = index * FLOATS;
+            floats[f] = position.elevationAGL();
+            floats[f + 1] = position.pitch();
+            floats[f + 2] = position.heading();
+            floats[f + 3] = position.roll();
+            floats[f + 4] = position.speedX();
+            floats[f + 5] = position.speedY();
+            floats[f + 6] = position.speedZ();
+            floats[f + 7] = position.rollRate();
+            floats[f + 8] = position.pitchRate();
+            floats[f + 9] = position.yawRate();
+            signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected Position element(int index) {
+        int d = index * DOUBLES;
+        int f = index * FLOATS;
+        return new Position(
+                doubles[d],
+                doubles[d + 1],
+                doubles[d + 2],
+                floats[f],
+                floats[f + 1],
+                floats[f + 2],
+                floats[f + 3],
+                floats[f + 4],
+                floats[f + 5],
+                floats[f + 6],
+                floats[f + 7],
+                floats[f + 8],
+                floats[f + 9]);
+    }
+
+    @Override
+    protected void detach() {
+        hub.remove(this);
+        release.run();
+    }
+
+}
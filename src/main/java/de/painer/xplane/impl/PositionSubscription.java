@@ -0,0 +1,103 @@
+package de.painer.xplane.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import de.painer.xplane.data.Position;
+import de.painer.xplane.data.PositionView;
+
+/**
+ * Subscription of a publisher of positions.
+ *
+ * <p>
+ * Only the latest position is stored, copied field by field from the view of
+ * the received message.
+ * </p>
+ */
+final class PositionSubscription extends ConflatingSubscription<Position> implements StreamHub.PositionSink {
+
+    /**
+     * Publishers the subscription belongs to.
+     */
+    private final FlowPublishers publishers;
+
+    /**
+     * Double values of the latest position.
+     */
+    private final double[] doubles = new double[3];
+
+    /**
+     * Float values of the latest position.
+     */
+    private final float[] floats = new float[10];
+
+    /**
+     * Was the latest position not delivered yet?
+     */
+    private boolean fresh;
+
+    /**
+     * Constructor.
+     *
+     * @param publishers Publishers the subscription belongs to.
+     * @param subscriber Subscriber receiving the positions.
+     * @param executor   Executor calling the subscriber.
+     */
+    PositionSubscription(FlowPublishers publishers, Flow.Subscriber<? super Position> subscriber,
+            Executor executor) {
+        super(subscriber, executor);
+        this.publishers = publishers;
+    }
+
+    @Override
+    public void offer(PositionView position) {
+        lock.lock();
+        try {
+            doubles[0] = position.longitude();
+            doubles[1] = position.latitude();
+            doubles[2] = position.elevationMSL();
+            floats[0] = position.elevationAGL();
+            floats[1] = position.pitch();
+            floats[2] = position.heading();
+            floats[3] = position.roll();
+            floats[4] = position.speedX();
+            floats[5] = position.speedY();
+            floats[6] = position.speedZ();
+            floats[7] = position.rollRate();
+            floats[8] = position.pitchRate();
+            floats[9] = position.yawRate();
+            fresh = true;
+        } finally {
+            lock.unlock();
+        }
+        stored();
+    }
+
+    @Override
+    protected Position poll() {
+        if (!fresh) {
+            return null;
+        }
+        fresh = false;
+        return new Position(
+                doubles[0],
+                doubles[1],
+                doubles[2],
+                floats[0],
+                floats[1],
+                floats[2],
+                floats[3],
+                floats[4],
+                floats[5],
+                floats[6],
+                floats[7],
+                floats[8],
+                floats[9]);
+    }
+
+    @Override
+    protected void detach() {
+        publishers.detach(this);
+    }
+
+}
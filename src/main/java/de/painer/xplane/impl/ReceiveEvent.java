@@ -0,0 +1,45 @@
+package de.painer.xplane.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a received datagram.
+ *
+ * <p>
+ * Disabled by default, as one event is emitted for every datagram.
+ * </p>
+ */
+@Name("de.painer.xplane.DatagramReceived")
+@Label("Datagram Received")
+@Description("Datagram received from X-Plane")
+@Category({ "X-Plane", "Network" })
+@Enabled(false)
+@StackTrace(false)
+final class ReceiveEvent extends jdk.jfr.Event {
+
+    /**
+     * Name of the connection.
+     */
+    @Label("Connection")
+    String connection;
+
+    /**
+     * Address the datagram was sent from.
+     */
+    @Label("Source")
+    String source;
+
+    /**
+     * Size of the datagram.
+     */
+    @Label("Size")
+    @DataAmount
+    int size;
+
+}
@@ -0,0 +1,43 @@
+package de.painer.xplane.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for sending a message to X-Plane.
+ *
+ * <p>
+ * Only sends taking longer than the threshold are recorded.
+ * </p>
+ */
+@Name("de.painer.xplane.MessageSent")
+@Label("Message Sent")
+@Description("Message sent to X-Plane")
+@Category({ "X-Plane", "Network" })
+@Threshold("1 ms")
+final class SendEvent extends jdk.jfr.Event {
+
+    /**
+     * Name of the connection.
+     */
+    @Label("Connection")
+    String connection;
+
+    /**
+     * Type of the message.
+     */
+    @Label("Message Type")
+    String type;
+
+    /**
+     * Size of the message.
+     */
+    @Label("Size")
+    @DataAmount
+    int size;
+
+}
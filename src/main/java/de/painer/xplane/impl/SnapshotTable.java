@@ -0,0 +1,226 @@
+package de.painer.xplane.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.painer.xplane.DatarefSnapshot;
+
+/**
+ * Table with the latest values of the watched datarefs.
+ *
+ * <p>
+ * The values are stored in primitive arrays indexed by the slot of the dataref
+ * id. There is only one writer (the receiving thread), which protects each
+ * update with a sequence lock: the version is odd while a message is written.
+ * Single values are read without checking the version, consistent snapshots
+ * of several values are repeated until the version did not change.
+ * </p>
+ */
+final class SnapshotTable implements DatarefSnapshot {
+
+    /**
+     * Handle for atomic access to the timestamps.
+     */
+    private static final VarHandle TIMESTAMPS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Handle for atomic access to the update counters.
+     */
+    private static final VarHandle UPDATES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Initial number of slots.
+     */
+    private static final int INITIAL_SIZE = 64;
+
+    /**
+     * Registry of the watched datarefs.
+     */
+    private final DatarefRegistry registry;
+
+    /**
+     * Version of the table (odd while writing).
+     */
+    private volatile long version;
+
+    /**
+     * Current arrays (replaced when growing).
+     */
+    private volatile Table table = new Table(INITIAL_SIZE);
+
+    /**
+     * Constructor.
+     *
+     * @param registry Registry of the watched datarefs.
+     */
+    SnapshotTable(DatarefRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Stores the values of a received message.
+     *
+     * <p>
+     * Only RREF messages are processed. The position of the buffer is not
+     * changed. Must only be called by the receiving thread.
+     * </p>
+     *
+     * @param buffer    Buffer with the message, ready for reading.
+     * @param timestamp Time when the message was received.
+     */
+    void update(ByteBuffer buffer, long timestamp) {
+        if (buffer.remaining() < 5 || buffer.getInt(buffer.position()) != PacketDispatcher.RREF) {
+            return;
+        }
+
+        // start writing
+        long v = version;
+        version = v + 1;
+        VarHandle.storeStoreFence();
+
+        // store values of registered datarefs
+        Table t = table;
+        for (int offset = buffer.position() + 5; offset + 8 <= buffer.limit(); offset += 8) {
+            int id = buffer.getInt(offset);
+            if (registry.lookup(id) == null) {
+                continue;
+            }
+            int slot = DatarefRegistry.slot(id);
+            if (slot >= t.ids.length) {
+                t = grow(t, slot);
+            }
+            long updates = t.ids[slot] == id ? t.updates[slot] + 1 : 1;
+            t.ids[slot] = id;
+            t.values[slot] = buffer.getFloat(offset + 4);
+            TIMESTAMPS.setOpaque(t.timestamps, slot, timestamp);
+            UPDATES.setOpaque(t.updates, slot, updates);
+        }
+
+        // finish writing
+        version = v + 2;
+    }
+
+    @Override
+    public int id(String dataref) {
+        return registry.id(dataref);
+    }
+
+    @Override
+    public float get(int id) {
+        Table t = table;
+        int slot = DatarefRegistry.slot(id);
+        if (id < 0 || slot >= t.ids.length || t.ids[slot] != id) {
+            return Float.NaN;
+        }
+        return t.values[slot];
+    }
+
+    @Override
+    public long timestamp(int id) {
+        Table t = table;
+        int slot = DatarefRegistry.slot(id);
+        if (id < 0 || slot >= t.ids.length || t.ids[slot] != id) {
+            return 0;
+        }
+        return (long) TIMESTAMPS.getOpaque(t.timestamps, slot);
+    }
+
+    /**
+     * Returns the number of values received for a dataref.
+     *
+     * @param id Id of the dataref.
+     * @return Number of received values.
+     */
+    long updates(int id) {
+        Table t = table;
+        int slot = DatarefRegistry.slot(id);
+        if (id < 0 || slot >= t.ids.length || t.ids[slot] != id) {
+            return 0;
+        }
+        return (long) UPDATES.getOpaque(t.updates, slot);
+    }
+
+    @Override
+    public void snapshot(int[] ids, float[] into, long[] timestamps) {
+        while (true) {
+            long v = version;
+            if ((v & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            // read values
+            Table t = table;
+            for (int i = 0; i < ids.length; i++) {
+                int id = ids[i];
+                int slot = DatarefRegistry.slot(id);
+                boolean valid = id >= 0 && slot < t.ids.length && t.ids[slot] == id;
+                into[i] = valid ? t.values[slot] : Float.NaN;
+                if (timestamps != null) {
+                    timestamps[i] = valid ? (long) TIMESTAMPS.getOpaque(t.timestamps, slot) : 0;
+                }
+            }
+
+            // repeat if the table was changed while reading
+            VarHandle.acquireFence();
+            if (version == v) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Grows the arrays so that a slot fits.
+     *
+     * @param t    Current arrays.
+     * @param slot Slot that has to fit.
+     * @return New arrays.
+     */
+    private Table grow(Table t, int slot) {
+        int size = t.ids.length;
+        while (size <= slot) {
+            size *= 2;
+        }
+        int[] ids = Arrays.copyOf(t.ids, size);
+        Arrays.fill(ids, t.ids.length, size, -1);
+        Table grown = new Table(ids, Arrays.copyOf(t.values, size), Arrays.copyOf(t.timestamps, size),
+                Arrays.copyOf(t.updates, size));
+        table = grown;
+        return grown;
+    }
+
+    /**
+     * Arrays of the table.
+     *
+     * @param ids        Ids of the datarefs by slot.
+     * @param values     Values by slot.
+     * @param timestamps Times of the values by slot.
+     * @param updates    Number of received values by slot.
+     */
+    private record Table(int[] ids, float[] values, long[] timestamps, long[] updates) {
+
+        /**
+         * Constructor for empty arrays.
+         *
+         * @param size Number of slots.
+         */
+        Table(int size) {
+            this(filled(new int[size]), new float[size], new long[size], new long[size]);
+        }
+
+        /**
+         * Marks all slots of an id array as unused.
+         *
+         * @param ids Id array.
+         * @return Same array filled with -1.
+         */
+        private static int[] filled(int[] ids) {
+            Arrays.fill(ids, -1);
+            return ids;
+        }
+
+    }
+
+}
@@ -0,0 +1,197 @@
+package de.painer.xplane.impl;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import de.painer.xplane.data.PositionView;
+
+/**
+ * Fan-out of received data to open streams and publishers.
+ *
+ * <p>
+ * Dataref sinks are indexed by the slot of the dataref id, so a received
+ * value is only offered to the streams interested in it. All indexes are
+ * copy-on-write arrays, so the dispatching threads read them without locks.
+ * </p>
+ */
+final class StreamHub {
+
+    /**
+     * Empty array of position sinks.
+     */
+    private static final PositionSink[] NO_POSITION_SINKS = new PositionSink[0];
+
+    /**
+     * Dataref sinks by slot of the dataref id.
+     */
+    private volatile Subscription[][] bySlot = new Subscription[0][];
+
+    /**
+     * Position sinks.
+     */
+    private volatile PositionSink[] positionStreams = NO_POSITION_SINKS;
+
+    /**
+     * Ids of the datarefs per dataref sink.
+     */
+    private final Map<DatarefSink, int[]> streamIds = new IdentityHashMap<>();
+
+    /**
+     * Registers a dataref sink for a dataref.
+     *
+     * @param stream Sink to register.
+     * @param id     Id of the dataref.
+     */
+    synchronized void add(DatarefSink stream, int id) {
+        int slot = DatarefRegistry.slot(id);
+        Subscription[][] table = bySlot;
+        if (slot >= table.length) {
+            table = Arrays.copyOf(table, Math.max(slot + 1, table.length * 2));
+        } else {
+            table = table.clone();
+        }
+        Subscription[] subscriptions = table[slot] != null ? table[slot] : new Subscription[0];
+        subscriptions = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        subscriptions[subscriptions.length - 1] = new Subscription(id, stream);
+        table[slot] = subscriptions;
+        bySlot = table;
+
+        int[] ids = streamIds.getOrDefault(stream, new int[0]);
+        ids = Arrays.copyOf(ids, ids.length + 1);
+        ids[ids.length - 1] = id;
+        streamIds.put(stream, ids);
+    }
+
+    /**
+     * Removes a dataref sink.
+     *
+     * @param stream Sink to remove.
+     */
+    synchronized void remove(DatarefSink stream) {
+        int[] ids = streamIds.remove(stream);
+        if (ids == null) {
+            return;
+        }
+        Subscription[][] table = bySlot.clone();
+        for (int id : ids) {
+            int slot = DatarefRegistry.slot(id);
+            Subscription[] subscriptions = table[slot];
+            table[slot] = Arrays.stream(subscriptions).filter(s -> s.stream() != stream).toArray(Subscription[]::new);
+        }
+        bySlot = table;
+    }
+
+    /**
+     * Registers a position sink.
+     *
+     * @param stream Sink to register.
+     */
+    synchronized void add(PositionSink stream) {
+        PositionSink[] streams = Arrays.copyOf(positionStreams, positionStreams.length + 1);
+        streams[streams.length - 1] = stream;
+        positionStreams = streams;
+    }
+
+    /**
+     * Removes a position sink.
+     *
+     * @param stream Sink to remove.
+     */
+    synchronized void remove(PositionSink stream) {
+        positionStreams = Arrays.stream(positionStreams).filter(s -> s != stream).toArray(PositionSink[]::new);
+    }
+
+    /**
+     * Offers a received dataref value to the interested sinks.
+     *
+     * @param id        Id of the dataref.
+     * @param dataref   Name of the dataref.
+     * @param value     Value of the dataref.
+     * @param timestamp Time when the value was received.
+     */
+    void offer(int id, String dataref, float value, long timestamp) {
+        Subscription[][] table = bySlot;
+        int slot = DatarefRegistry.slot(id);
+        if (slot >= table.length || table[slot] == null) {
+            return;
+        }
+        Subscription[] subscriptions = table[slot];
+        for (int i = 0; i < subscriptions.length; i++) {
+            if (subscriptions[i].id() == id) {
+                subscriptions[i].stream().offer(id, dataref, value, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Offers a received position to all position sinks.
+     *
+     * @param position View on the received position.
+     */
+    void offer(PositionView position) {
+        PositionSink[] streams = positionStreams;
+        for (int i = 0; i < streams.length; i++) {
+            streams[i].offer(position);
+        }
+    }
+
+    /**
+     * Checks whether there are any dataref sinks.
+     *
+     * @return Are dataref sinks registered?
+     */
+    boolean hasDatarefStreams() {
+        return bySlot.length > 0;
+    }
+
+    /**
+     * Receiver of dataref values.
+     */
+    interface DatarefSink {
+
+        /**
+         * Receives a dataref value.
+         *
+         * <p>
+         * Called by the dispatching thread, which must not be blocked.
+         * </p>
+         *
+         * @param id        Id of the dataref.
+         * @param dataref   Name of the dataref.
+         * @param value     Value of the dataref.
+         * @param timestamp Time when the value was received.
+         */
+        void offer(int id, String dataref, float value, long timestamp);
+
+    }
+
+    /**
+     * Receiver of positions.
+     */
+    interface PositionSink {
+
+        /**
+         * Receives a position.
+         *
+         * <p>
+         * Called by the dispatching thread, which must not be blocked. The view
+         * is only valid during the call.
+         * </p>
+         *
+         * @param position View on the received position.
+         */
+        void offer(PositionView position);
+
+    }
+
+    /**
+     * Registration of a sink for a dataref id.
+     *
+     * @param id     Id of the dataref.
+     * @param stream Registered sink.
+     */
+    private record Subscription(int id, DatarefSink stream) {
+    }
+
+}
@@ -0,0 +1,137 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Cache of strings decoded from messages.
+ *
+ * <p>
+ * Values like host names in beacons are received again and again. The cache
+ * returns the same instance for equal bytes, so decoding them repeatedly does
+ * not create new strings. The cache is direct-mapped by a hash of the bytes and
+ * a colliding value replaces the cached one. Lookups do not take any locks;
+ * concurrent updates may replace each other, which only costs a cache miss.
+ * </p>
+ */
+public final class StringCache {
+
+    /**
+     * Maximum length of cached strings (longer strings are always created).
+     */
+    private static final int MAX_LENGTH = 512;
+
+    /**
+     * Cached strings.
+     */
+    private final Entry[] entries;
+
+    /**
+     * Mask for getting the entry of a hash.
+     */
+    private final int mask;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries (rounded up to a power of two).
+     */
+    public StringCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the string for a range of bytes.
+     *
+     * <p>
+     * Each byte is one character (ISO 8859-1).
+     * </p>
+     *
+     * @param buffer Buffer with the bytes.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes.
+     * @return Cached or new string.
+     */
+    public String get(ByteBuffer buffer, int offset, int length) {
+        if (length > MAX_LENGTH) {
+            return DataReader.decode(buffer, offset, length);
+        }
+
+        // compare with the cached bytes
+        int index = hash(buffer, offset, length) & mask;
+        Entry cached = entries[index];
+        if (cached != null && matches(cached.bytes(), buffer, offset, length)) {
+            return cached.value();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        String value = new String(bytes, StandardCharsets.ISO_8859_1);
+        entries[index] = new Entry(bytes, value);
+        return value;
+    }
+
+    /**
+     * Computes the hash of a range of bytes.
+     *
+     * <p>
+     * Only the length and the first and last eight bytes are used, which is
+     * enough to distinguish the few values of a cache.
+     * </p>
+     *
+     * @param buffer Buffer with the bytes.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes.
+     * @return Hash of the bytes.
+     */
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        long hash = length;
+        if (length >= 8) {
+            hash = hash * 31 + buffer.getLong(offset);
+            hash = hash * 31 + buffer.getLong(offset + length - 8);
+        } else {
+            for (int i = 0; i < length; i++) {
+                hash = hash * 31 + buffer.get(offset + i);
+            }
+        }
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Checks whether a range of a buffer contains the given bytes.
+     *
+     * @param bytes  Bytes to compare with.
+     * @param buffer Buffer with the bytes.
+     * @param offset Offset of the first byte.
+     * @param length Number of bytes.
+     * @return Are the bytes equal?
+     */
+    private static boolean matches(byte[] bytes, ByteBuffer buffer, int offset, int length) {
+        if (bytes.length != length) {
+            return false;
+        }
+        if (buffer.hasArray()) {
+            int start = buffer.arrayOffset() + offset;
+            return Arrays.equals(bytes, 0, length, buffer.array(), start, start + length);
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cached string with its bytes.
+     *
+     * @param bytes Bytes of the string.
+     * @param value String.
+     */
+    private record Entry(byte[] bytes, String value) {
+    }
+
+}
@@ -3,7 +3,9 @@ package de.painer.xplane.impl;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 
+import de.painer.xplane.DispatchStage;
 import de.painer.xplane.XPlane;
+import de.painer.xplane.XPlaneEventLoop;
 import de.painer.xplane.XPlaneInstance;
 import de.painer.xplane.data.Beacon;
 
@@ -53,4 +55,14 @@ public final class XPlaneInstanceUDP implements XPlaneInstance {
         return new XPlaneUDP(name, address);
     }
 
+    @Override
+    public XPlane connect(DispatchStage dispatchStage) throws IOException {
+        return new XPlaneUDP(name, address, dispatchStage);
+    }
+
+    @Override
+    public XPlane connect(XPlaneEventLoop eventLoop, DispatchStage dispatchStage) throws IOException {
+        return new XPlaneUDP(name, address, dispatchStage, eventLoop);
+    }
+
 }
@@ -0,0 +1,753 @@
+package de.painer.xplane.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.DatarefPipeline;
+import de.painer.xplane.DatarefSnapshot;
+import de.painer.xplane.DispatchStatistics;
+import de.painer.xplane.MessageDecoder;
+import de.painer.xplane.SubscriptionPacing;
+import de.painer.xplane.XPlaneListener;
+import de.painer.xplane.XPlaneStream;
+import de.painer.xplane.data.DatarefUpdate;
+import de.painer.xplane.data.Position;
+import de.painer.xplane.metrics.ConnectionMetrics;
+import de.painer.xplane.recording.PacketLog;
+import de.painer.xplane.recording.PacketRecorder;
+import de.painer.xplane.recording.PacketReplay;
+
+/**
+ * Implementation of the replay of a recorded connection.
+ *
+ * <p>
+ * The received messages are read from the log by a replay thread and passed to
+ * the same dispatcher as the messages of a live connection. The dataref ids of
+ * the recording are translated to the ids of this connection before.
+ * </p>
+ *
+ * <p>
+ * All datarefs requested during the recording are replayed, elements of arrays
+ * one by one. Watching an array takes over its recorded elements, so they are
+ * assembled like on a live connection.
+ * </p>
+ */
+public final class XPlaneReplay implements PacketReplay, DatarefHolder {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(XPlaneReplay.class);
+
+    /**
+     * Value of {@link #pendingSeek} when no seek is requested.
+     */
+    private static final long NO_SEEK = Long.MIN_VALUE;
+
+    /**
+     * Name of the replay.
+     */
+    private final String name;
+
+    /**
+     * Log with the recorded messages.
+     */
+    private final PacketLog log;
+
+    /**
+     * Thread replaying the messages.
+     */
+    private final Thread replayThread;
+
+    /**
+     * Listeners for the replayed data.
+     */
+    private final Listeners listeners = new Listeners();
+
+    /**
+     * Ids of the watched datarefs of this connection.
+     */
+    private final DatarefRegistry watchedDatarefs = new DatarefRegistry();
+
+    /**
+     * Open streams.
+     */
+    private final StreamHub streams = new StreamHub();
+
+    /**
+     * Virtual datarefs computed from received values.
+     */
+    private final DerivedDatarefs derived;
+
+    /**
+     * Reactive publishers.
+     */
+    private final FlowPublishers publishers;
+
+    /**
+     * Latest values of the watched datarefs.
+     */
+    private final SnapshotTable snapshot = new SnapshotTable(watchedDatarefs);
+
+    /**
+     * Metrics of the connection.
+     */
+    private final ConnectionCounters counters = new ConnectionCounters(watchedDatarefs, snapshot);
+
+    /**
+     * Additional decoders for received messages.
+     */
+    private final DecoderTable decoders;
+
+    /**
+     * Dispatcher used by the replay thread.
+     */
+    private final PacketDispatcher dispatcher;
+
+    /**
+     * Number of dispatched messages.
+     */
+    private final LongAdder dispatched = new LongAdder();
+
+    /**
+     * Recorded dataref ids by slot.
+     */
+    private final int[] recordedIds = new int[DatarefRegistry.MAX_SLOTS];
+
+    /**
+     * Recorded dataref names by slot.
+     */
+    private final String[] recordedDatarefs = new String[DatarefRegistry.MAX_SLOTS];
+
+    /**
+     * Recorded dataref names for ids whose slot was reused during the recording.
+     */
+    private final Map<Integer, String> reusedSlots = new HashMap<>();
+
+    /**
+     * Recorded slots by dataref name.
+     */
+    private final Map<String, int[]> recordedSlots = new HashMap<>();
+
+    /**
+     * Datarefs only watched because they were requested during the recording
+     * (guarded by the set).
+     */
+    private final Set<String> recordedOnly = new HashSet<>();
+
+    /**
+     * Ids of this connection by slot of the recorded ids (-1 when not watched,
+     * replaced on every change).
+     */
+    private volatile int[] translatedIds;
+
+    /**
+     * Completed when all messages have been dispatched.
+     */
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    /**
+     * Time requested by the last seek that has not been executed.
+     */
+    private final AtomicLong pendingSeek = new AtomicLong(NO_SEEK);
+
+    /**
+     * Speed of the replay.
+     */
+    private volatile double speed;
+
+    /**
+     * Recorded time of the last dispatched message.
+     */
+    private volatile long time;
+
+    /**
+     * Was the replay started?
+     */
+    private boolean started;
+
+    /**
+     * Is the replay closed?
+     */
+    private volatile boolean closed;
+
+    /**
+     * Recorder for the replayed messages (<code>null</code> when not recording).
+     */
+    private volatile PacketRecorder recorder;
+
+    /**
+     * Constructor.
+     *
+     * @param name  Name of the replay.
+     * @param log   Log with the recorded messages.
+     * @param speed Speed of the replay relative to the recorded time.
+     */
+    public XPlaneReplay(String name, PacketLog log, double speed) {
+        this.name = name;
+        this.log = log;
+        this.decoders = DecoderTable.withServices(this);
+        this.publishers = new FlowPublishers(this, streams);
+        this.derived = new DerivedDatarefs(this, this, watchedDatarefs);
+        this.dispatcher = new PacketDispatcher(watchedDatarefs, listeners, streams, counters, decoders);
+        setSpeed(speed);
+
+        // watch all datarefs requested during the recording
+        Arrays.fill(recordedIds, -1);
+        log.scanSent(this::recordedRequest);
+        for (String dataref : recordedDatarefs) {
+            if (dataref != null) {
+                watchedDatarefs.register(dataref);
+                recordedOnly.add(dataref);
+            }
+        }
+        for (String dataref : reusedSlots.values()) {
+            watchedDatarefs.register(dataref);
+            recordedOnly.add(dataref);
+        }
+
+        // index the recorded slots, so a change of a dataref only updates its
+        // own slots
+        int size = 0;
+        for (int slot = 0; slot < recordedDatarefs.length; slot++) {
+            if (recordedDatarefs[slot] != null) {
+                int[] slots = recordedSlots.get(recordedDatarefs[slot]);
+                slots = slots != null ? Arrays.copyOf(slots, slots.length + 1) : new int[1];
+                slots[slots.length - 1] = slot;
+                recordedSlots.put(recordedDatarefs[slot], slots);
+                size = slot + 1;
+            }
+        }
+        translatedIds = new int[size];
+        Arrays.fill(translatedIds, -1);
+        translateIds(recordedSlots.keySet().toArray(String[]::new));
+        this.time = log.getStartTime();
+
+        // create thread for replaying, started on request
+        replayThread = new Thread(this::replayLoop, "xplane-replay");
+        replayThread.setDaemon(true);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void addXPlaneListener(XPlaneListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeXPlaneListener(XPlaneListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void addMessageDecoder(MessageDecoder decoder) {
+        decoders.add(decoder);
+    }
+
+    @Override
+    public void removeMessageDecoder(MessageDecoder decoder) {
+        decoders.remove(decoder);
+    }
+
+    @Override
+    public void watchPosition(int frequency) {
+        // positions are replayed as recorded
+    }
+
+    @Override
+    public void unwatchPosition() {
+        // positions are replayed as recorded
+    }
+
+    @Override
+    public void sendCommand(String command) {
+        LOG.debug("Ignoring command {} during replay.", command);
+    }
+
+    @Override
+    public void selectDataOutput(int... indices) {
+        // output groups are replayed as recorded
+    }
+
+    @Override
+    public void unselectDataOutput(int... indices) {
+        // output groups are replayed as recorded
+    }
+
+    @Override
+    public void setDataref(String dataref, float value) {
+        LOG.debug("Ignoring value {} of dataref {} during replay.", value, dataref);
+    }
+
+    @Override
+    public void setDatarefWriteFrequency(int frequency) {
+        // nothing is written during replay
+    }
+
+    @Override
+    public void watchDataref(String dataref, int frequency) {
+        watchedExplicitly(dataref);
+        watchedDatarefs.register(dataref);
+        translateIds(dataref);
+    }
+
+    @Override
+    public void unwatchDataref(String dataref) {
+        // derived datarefs are only removed explicitly
+        if (!derived.contains(dataref) && watchedDatarefs.release(dataref) >= 0) {
+            translateIds(dataref);
+        }
+    }
+
+    @Override
+    public void watchDatarefArray(String dataref, int from, int to, int frequency) {
+        synchronized (recordedOnly) {
+            // elements only watched for the recording are taken over by the array
+            List<String> released = new ArrayList<>();
+            for (int index = from; index <= to; index++) {
+                String element = DatarefArray.element(dataref, index);
+                if (recordedOnly.remove(element)) {
+                    watchedDatarefs.release(element);
+                    released.add(element);
+                }
+            }
+            try {
+                translateIds(watchedDatarefs.registerArray(dataref, from, to));
+            } catch (IllegalArgumentException ex) {
+                for (String element : released) {
+                    watchedDatarefs.register(element);
+                    recordedOnly.add(element);
+                }
+                translateIds(released.toArray(String[]::new));
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public void unwatchDatarefArray(String dataref, int from, int to) {
+        synchronized (recordedOnly) {
+            DatarefArray array = watchedDatarefs.releaseArray(dataref, from, to);
+            if (array == null) {
+                return;
+            }
+
+            // recorded elements are replayed separately again
+            for (int i = 0; i < array.size(); i++) {
+                if (recordedSlots.containsKey(array.element(i))) {
+                    watchedDatarefs.register(array.element(i));
+                    recordedOnly.add(array.element(i));
+                }
+            }
+            translateIds(array);
+        }
+    }
+
+    @Override
+    public void addDerivedDataref(String dataref, DatarefPipeline pipeline, int frequency) {
+        derived.add(dataref, pipeline, frequency);
+    }
+
+    @Override
+    public void removeDerivedDataref(String dataref) {
+        derived.remove(dataref);
+    }
+
+    @Override
+    public CompletableFuture<Void> watchDatarefs(Collection<String> datarefs, int frequency,
+            SubscriptionPacing pacing) {
+        for (String dataref : datarefs) {
+            watchedExplicitly(dataref);
+            watchedDatarefs.register(dataref);
+        }
+        translateIds(datarefs.toArray(String[]::new));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> unwatchDatarefs(Collection<String> datarefs, SubscriptionPacing pacing) {
+        for (String dataref : datarefs) {
+            watchedDatarefs.release(dataref);
+        }
+        translateIds(datarefs.toArray(String[]::new));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public DispatchStatistics getDispatchStatistics() {
+        return new DispatchStatistics(dispatched.sum(), 0, 0, 0);
+    }
+
+    @Override
+    public DatarefSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public ConnectionMetrics getMetrics() {
+        return counters;
+    }
+
+    @Override
+    public void setPacketRecorder(PacketRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public XPlaneStream<DatarefUpdate> openStream(int frequency, int capacity, String... datarefs) {
+        DatarefStream stream = new DatarefStream(streams, capacity, () -> unhold(datarefs));
+        for (String dataref : datarefs) {
+            hold(dataref, frequency, id -> streams.add(stream, id));
+        }
+        return stream;
+    }
+
+    @Override
+    public XPlaneStream<Position> openPositionStream(int frequency, int capacity) {
+        PositionStream stream = new PositionStream(streams, capacity, () -> unholdPosition(frequency));
+        streams.add(stream);
+        return stream;
+    }
+
+    @Override
+    public Flow.Publisher<DatarefUpdate> publishDatarefs(int frequency, Executor executor, String... datarefs) {
+        return publishers.datarefs(frequency, executor, datarefs);
+    }
+
+    @Override
+    public Flow.Publisher<Position> publishPosition(int frequency, Executor executor) {
+        return publishers.position(frequency, executor);
+    }
+
+    @Override
+    public void sendAlert(String line1, String line2, String line3, String line4) {
+        LOG.debug("Ignoring alert {}; {}; {}; {} during replay.", line1, line2, line3, line4);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (started || closed) {
+            return;
+        }
+        started = true;
+        replayThread.start();
+    }
+
+    @Override
+    public void seek(long epochNanos) {
+        pendingSeek.set(epochNanos);
+        LockSupport.unpark(replayThread);
+    }
+
+    @Override
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive.");
+        }
+        this.speed = speed;
+        LockSupport.unpark(replayThread);
+    }
+
+    @Override
+    public double getSpeed() {
+        return speed;
+    }
+
+    @Override
+    public long getStartTime() {
+        return log.getStartTime();
+    }
+
+    @Override
+    public long getEndTime() {
+        return log.getEndTime();
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        publishers.close();
+        derived.clear();
+        LockSupport.unpark(replayThread);
+        boolean running;
+        synchronized (this) {
+            running = started;
+        }
+        if (running && Thread.currentThread() == replayThread) {
+            // called by a listener, the replay thread closes the log when it stops
+            return;
+        }
+        if (running) {
+            // the log is closed only after the replay thread stopped reading
+            // it, an interrupt is kept for the caller
+            boolean interrupted = false;
+            while (replayThread.isAlive()) {
+                try {
+                    replayThread.join();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.close();
+        completion.cancel(false);
+    }
+
+    @Override
+    public void hold(String dataref, int frequency, IntConsumer attach) {
+        attach.accept(watchedDatarefs.hold(dataref));
+        translateIds(dataref);
+    }
+
+    @Override
+    public void unhold(String... datarefs) {
+        for (String dataref : datarefs) {
+            watchedDatarefs.unhold(dataref);
+        }
+        translateIds(datarefs);
+    }
+
+    @Override
+    public void holdPosition(int frequency) {
+        // positions are replayed as recorded
+    }
+
+    @Override
+    public void unholdPosition(int frequency) {
+        // positions are replayed as recorded
+    }
+
+    /**
+     * Marks a dataref as watched explicitly, so it is no longer taken over by
+     * an array.
+     *
+     * @param dataref Name of the dataref.
+     */
+    private void watchedExplicitly(String dataref) {
+        synchronized (recordedOnly) {
+            recordedOnly.remove(dataref);
+        }
+    }
+
+    /**
+     * Stores a dataref request sent during the recording.
+     *
+     * @param buffer Buffer with the sent message.
+     */
+    private void recordedRequest(ByteBuffer buffer) {
+        if (buffer.remaining() < PacketTemplates.RREF_SIZE || buffer.getInt(0) != PacketDispatcher.RREF
+                || buffer.getInt(PacketTemplates.RREF_FREQUENCY_OFFSET) <= 0) {
+            return;
+        }
+        int id = buffer.getInt(PacketTemplates.RREF_ID_OFFSET);
+        int end = PacketTemplates.RREF_ID_OFFSET + 4;
+        while (end < buffer.limit() && buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] dataref = new byte[end - PacketTemplates.RREF_ID_OFFSET - 4];
+        buffer.get(PacketTemplates.RREF_ID_OFFSET + 4, dataref);
+
+        // the latest id of a slot is translated by the table, older ones by name
+        int slot = DatarefRegistry.slot(id);
+        if (recordedIds[slot] >= 0 && recordedIds[slot] != id) {
+            reusedSlots.put(recordedIds[slot], recordedDatarefs[slot]);
+        }
+        recordedIds[slot] = id;
+        recordedDatarefs[slot] = new String(dataref, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Updates the translation of the recorded ids of array elements.
+     *
+     * @param array Watched or unwatched elements.
+     */
+    private void translateIds(DatarefArray array) {
+        String[] elements = new String[array.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = array.element(i);
+        }
+        translateIds(elements);
+    }
+
+    /**
+     * Updates the translation of the recorded ids of datarefs to the ids of
+     * this connection.
+     *
+     * <p>
+     * Only the slots recorded for the datarefs are updated in a copy of the
+     * table, so the replay thread always sees a consistent table.
+     * </p>
+     *
+     * @param datarefs Watched or unwatched datarefs.
+     */
+    private synchronized void translateIds(String... datarefs) {
+        int[] ids = null;
+        for (String dataref : datarefs) {
+            int[] slots = recordedSlots.get(dataref);
+            if (slots == null) {
+                continue;
+            }
+            ids = ids != null ? ids : translatedIds.clone();
+            int id = watchedDatarefs.id(dataref);
+            for (int slot : slots) {
+                ids[slot] = id;
+            }
+        }
+        if (ids != null) {
+            translatedIds = ids;
+        }
+    }
+
+    /**
+     * Execution loop of the replay thread.
+     */
+    private void replayLoop() {
+        try {
+            replayMessages();
+            LOG.debug("Replay {} finished after {} messages.", name, dispatched.sum());
+            completion.complete(null);
+        } catch (Error ex) {
+            completion.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            if (closed) {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * Replays the messages until the end of the log or closing the replay.
+     */
+    private void replayMessages() {
+        ByteBuffer buffer = ByteBuffer.allocate(PacketDispatcher.MAX_MESSAGE_SIZE);
+        buffer.order(ByteOrder.nativeOrder());
+
+        // recorded and real time at the start of the current pacing
+        long originTime = log.getStartTime();
+        long originNanos = System.nanoTime();
+        double originSpeed = speed;
+
+        while (!closed) {
+            // continue at another time
+            long seek = pendingSeek.getAndSet(NO_SEEK);
+            if (seek != NO_SEEK) {
+                LOG.debug("Continuing replay at {}.", seek);
+                log.seek(seek);
+                originTime = seek;
+                originNanos = System.nanoTime();
+            }
+
+            // read next received message
+            if (!log.next(buffer)) {
+                break;
+            }
+            if (log.isSent()) {
+                continue;
+            }
+
+            // wait until the message is due
+            double currentSpeed = speed;
+            if (currentSpeed != originSpeed) {
+                originTime = time;
+                originNanos = System.nanoTime();
+                originSpeed = currentSpeed;
+            }
+            if (!Double.isInfinite(currentSpeed)) {
+                long due = originNanos + (long) ((log.time() - originTime) / currentSpeed);
+                long now;
+                while (!closed && pendingSeek.get() == NO_SEEK && speed == currentSpeed
+                        && (now = System.nanoTime()) < due) {
+                    LockSupport.parkNanos(due - now);
+                }
+                if (closed || pendingSeek.get() != NO_SEEK) {
+                    continue;
+                }
+            }
+
+            // dispatch the message like a received one
+            try {
+                translate(buffer);
+                counters.received(buffer.remaining());
+                long now = System.nanoTime();
+                PacketRecorder current = recorder;
+                if (current != null) {
+                    current.recordReceived(buffer, now);
+                }
+                snapshot.update(buffer, now);
+                ByteBuffer values = derived.process(buffer, now);
+                dispatcher.dispatch(buffer);
+                dispatched.increment();
+                if (values != null) {
+                    // values of derived datarefs are handled like received ones
+                    snapshot.update(values, now);
+                    dispatcher.dispatch(values);
+                }
+                time = log.time();
+            } catch (RuntimeException ex) {
+                counters.decodeError();
+                LOG.error("Error during processing of message.", ex);
+            }
+        }
+    }
+
+    /**
+     * Replaces the recorded dataref ids in a RREF message by the ids of this
+     * connection.
+     *
+     * @param buffer Buffer with the message, ready for reading.
+     */
+    private void translate(ByteBuffer buffer) {
+        if (buffer.remaining() < 5 || buffer.getInt(0) != PacketDispatcher.RREF) {
+            return;
+        }
+        int[] ids = translatedIds;
+        for (int offset = 5; offset + 8 <= buffer.limit(); offset += 8) {
+            int id = buffer.getInt(offset);
+            int slot = DatarefRegistry.slot(id);
+            if (id >= 0 && recordedIds[slot] == id) {
+                buffer.putInt(offset, ids[slot]);
+            } else {
+                String dataref = reusedSlots.get(id);
+                buffer.putInt(offset, dataref != null ? watchedDatarefs.id(dataref) : -1);
+            }
+        }
+    }
+
+}
@@ -2,40 +2,81 @@ package de.painer.xplane.impl;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.StandardProtocolFamily;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.painer.xplane.DatarefPipeline;
+import de.painer.xplane.DatarefSnapshot;
+import de.painer.xplane.DispatchStage;
+import de.painer.xplane.DispatchStatistics;
+import de.painer.xplane.MessageDecoder;
+import de.painer.xplane.SubscriptionPacing;
 import de.painer.xplane.XPlane;
+import de.painer.xplane.XPlaneEventLoop;
 import de.painer.xplane.XPlaneListener;
+import de.painer.xplane.XPlaneStream;
+import de.painer.xplane.data.DatarefUpdate;
 import de.painer.xplane.data.Position;
+import de.painer.xplane.metrics.ConnectionMetrics;
+import de.painer.xplane.recording.PacketRecorder;
 
 /**
  * Implementation of X-Plane connection.
  */
-public final class XPlaneUDP implements XPlane {
+public final class XPlaneUDP implements XPlane, DatarefHolder {
 
     /**
      * Logger.
      */
     private static final Logger LOG = LoggerFactory.getLogger(XPlaneUDP.class);
 
+    /**
+     * Size of the buffers for sending messages (large enough for ALRT).
+     */
+    private static final int SEND_BUFFER_SIZE = 1024;
+
+    /**
+     * Maximum number of output groups in one DSEL or USEL message.
+     */
+    private static final int MAX_SELECTED_GROUPS = (SEND_BUFFER_SIZE - 5) / 4;
+
+    /**
+     * Number of pooled buffers for sending messages.
+     */
+    private static final int SEND_BUFFER_COUNT = 8;
+
     /**
      * Name of the instance.
      */
     private final String name;
 
     /**
-     * Thread for receiving data from X-Plane.
+     * Thread for receiving data from X-Plane (<code>null</code> when using an
+     * event loop).
      */
     private final Thread receiveThread;
 
+    /**
+     * Registration with the event loop (<code>null</code> when using an own
+     * thread).
+     */
+    private final EventLoopGroup.Registration registration;
+
     /**
      * UDP channel for communication with X-Plane.
      */
@@ -49,12 +90,95 @@ public final class XPlaneUDP implements XPlane {
     /**
      * Listeners for data from X-Plane.
      */
-    private final List<XPlaneListener> listeners = new ArrayList<>();
+    private final Listeners listeners = new Listeners();
+
+    /**
+     * Ids of currently watched datarefs.
+     */
+    private final DatarefRegistry watchedDatarefs = new DatarefRegistry();
+
+    /**
+     * Number of holders of the position by requested frequency.
+     */
+    private final TreeMap<Integer, Integer> positionHolders = new TreeMap<>();
+
+    /**
+     * Frequency of the position watched explicitly (guarded by the holders of
+     * the position).
+     */
+    private int watchedPosition;
+
+    /**
+     * Pool of direct buffers for sending messages.
+     */
+    private final BufferPool sendBuffers = new BufferPool(SEND_BUFFER_COUNT, SEND_BUFFER_SIZE);
 
     /**
-     * Currently watched datarefs.
+     * Pre-encoded messages for commands and RREF requests.
      */
-    private final List<String> watchedDatarefs = new ArrayList<>();
+    private final PacketTemplates templates = new PacketTemplates();
+
+    /**
+     * Coalescing writer of datarefs.
+     */
+    private final DatarefWriter writer = new DatarefWriter(templates, this::transmit);
+
+    /**
+     * Open streams.
+     */
+    private final StreamHub streams = new StreamHub();
+
+    /**
+     * Virtual datarefs computed from received values.
+     */
+    private final DerivedDatarefs derived;
+
+    /**
+     * Reactive publishers.
+     */
+    private final FlowPublishers publishers;
+
+    /**
+     * Latest values of the watched datarefs.
+     */
+    private final SnapshotTable snapshot = new SnapshotTable(watchedDatarefs);
+
+    /**
+     * Metrics of the connection.
+     */
+    private final ConnectionCounters counters = new ConnectionCounters(watchedDatarefs, snapshot);
+
+    /**
+     * Number of messages dispatched by the receiving thread.
+     */
+    private final LongAdder dispatched = new LongAdder();
+
+    /**
+     * Additional decoders for received messages.
+     */
+    private final DecoderTable decoders;
+
+    /**
+     * Dispatcher used by the receiving thread.
+     */
+    private final PacketDispatcher dispatcher;
+
+    /**
+     * Asynchronous dispatch stage (<code>null</code> when the listeners are
+     * called by the receiving thread).
+     */
+    private final DispatchRing dispatchRing;
+
+    /**
+     * Recorder for sent and received messages (<code>null</code> when not
+     * recording).
+     */
+    private volatile PacketRecorder recorder;
+
+    /**
+     * Was the connection closed?
+     */
+    private volatile boolean closed;
 
     /**
      * Constructor.
@@ -64,14 +188,67 @@ public final class XPlaneUDP implements XPlane {
      * @throws IOException In case of connection error.
      */
     public XPlaneUDP(String name, InetSocketAddress address) throws IOException {
+        this(name, address, null);
+    }
+
+    /**
+     * Constructor with asynchronous dispatch stage.
+     * 
+     * @param name          Name of the instance.
+     * @param address       Address of the instance.
+     * @param dispatchStage Configuration of the dispatch stage (<code>null</code>
+     *                      for calling the listeners by the receiving thread).
+     * @throws IOException In case of connection error.
+     */
+    public XPlaneUDP(String name, InetSocketAddress address, DispatchStage dispatchStage) throws IOException {
+        this(name, address, dispatchStage, null);
+    }
+
+    /**
+     * Constructor with asynchronous dispatch stage and event loop.
+     * 
+     * @param name          Name of the instance.
+     * @param address       Address of the instance.
+     * @param dispatchStage Configuration of the dispatch stage (<code>null</code>
+     *                      for calling the listeners by the receiving thread).
+     * @param eventLoop     Event loop receiving the messages (<code>null</code>
+     *                      for an own receiving thread).
+     * @throws IOException In case of connection error.
+     */
+    public XPlaneUDP(String name, InetSocketAddress address, DispatchStage dispatchStage,
+            XPlaneEventLoop eventLoop) throws IOException {
         this.name = name;
         this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
         this.address = address;
-
-        // create and start thread for receiving data
-        receiveThread = new Thread(this::receiveLoop, "xplane-receive");
-        receiveThread.setDaemon(true);
-        receiveThread.start();
+        this.decoders = DecoderTable.withServices(this);
+        this.publishers = new FlowPublishers(this, streams);
+        this.derived = new DerivedDatarefs(this, this, watchedDatarefs);
+        this.dispatcher = new PacketDispatcher(watchedDatarefs, listeners, streams, counters, decoders);
+        this.dispatchRing = dispatchStage != null
+                ? new DispatchRing(dispatchStage, watchedDatarefs,
+                        () -> new PacketDispatcher(watchedDatarefs, listeners, streams, counters, decoders), name)
+                : null;
+
+        if (eventLoop != null) {
+            // register channel with the event loop, which only receives
+            // messages from the instance as the channel is connected
+            try {
+                channel.connect(address);
+                channel.configureBlocking(false);
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+            // the event loop is sealed, so the group is its only implementation
+            receiveThread = null;
+            registration = ((EventLoopGroup) eventLoop).register(channel, this::received);
+        } else {
+            // create and start thread for receiving data
+            registration = null;
+            receiveThread = new Thread(this::receiveLoop, "xplane-receive");
+            receiveThread.setDaemon(true);
+            receiveThread.start();
+        }
     }
 
     @Override
@@ -90,14 +267,21 @@ public final class XPlaneUDP implements XPlane {
     }
 
     @Override
-    public void watchPosition(int frequency) {
-        frequency = limitFrequency(frequency);
-        LOG.debug("Watch position with frequency {} Hz.", frequency);
+    public void addMessageDecoder(MessageDecoder decoder) {
+        decoders.add(decoder);
+    }
 
-        DataWriter writer = new DataWriter(8);
-        writer.writeString("RPOS");
-        writer.writeString(Integer.toString(frequency));
-        send(writer.export());
+    @Override
+    public void removeMessageDecoder(MessageDecoder decoder) {
+        decoders.remove(decoder);
+    }
+
+    @Override
+    public void watchPosition(int frequency) {
+        synchronized (positionHolders) {
+            watchedPosition = frequency;
+            requestPosition();
+        }
     }
 
     @Override
@@ -109,40 +293,157 @@ public final class XPlaneUDP implements XPlane {
     public void sendCommand(String command) {
         LOG.debug("Sending command {}.", command);
 
-        DataWriter writer = new DataWriter(500);
-        writer.writeString("CMND");
-        writer.writeString(command);
-        send(writer.export());
+        send(PacketTemplates.copy(templates.command(command), sendBuffers.acquire()));
+    }
+
+    @Override
+    public void selectDataOutput(int... indices) {
+        LOG.debug("Selecting output groups {}.", indices);
+        sendSelection("DSEL", indices);
+    }
+
+    @Override
+    public void unselectDataOutput(int... indices) {
+        LOG.debug("Unselecting output groups {}.", indices);
+        sendSelection("USEL", indices);
+    }
+
+    @Override
+    public void setDataref(String dataref, float value) {
+        writer.write(dataref, value);
+    }
+
+    @Override
+    public void setDatarefWriteFrequency(int frequency) {
+        writer.setFrequency(frequency);
     }
 
     @Override
     public void watchDataref(String dataref, int frequency) {
-        // index in the list is used as ID for messages
-        int index = watchedDatarefs.indexOf(dataref);
-        if (index < 0) {
-            index = watchedDatarefs.size();
-            watchedDatarefs.add(dataref);
+        if (derived.contains(dataref)) {
+            // values of derived datarefs are not sent by X-Plane
+            return;
         }
-        LOG.debug("Watching dataref {} with ID {} and frequency {}.", dataref, index, frequency);
 
-        DataWriter writer = new DataWriter(413);
-        writer.writeString("RREF");
-        writer.writeInt(frequency);
-        writer.writeInt(index);
-        writer.writeString(dataref, 400);
-        send(writer.export());
+        // id from the registry is used for messages
+        int index = watchedDatarefs.register(dataref);
+        LOG.debug("Watching dataref {} with ID {} and frequency {}.", dataref, index, frequency);
+        sendRref(dataref, index, frequency);
     }
 
     @Override
     public void unwatchDataref(String dataref) {
-        watchDataref(dataref, 0);
+        if (derived.contains(dataref)) {
+            return;
+        }
+
+        // release the id first, so late values are not delivered any more,
+        // unless the dataref is still used by streams or publishers
+        int index = watchedDatarefs.release(dataref);
+        if (index < 0) {
+            return;
+        }
+        LOG.debug("Unwatching dataref {} with ID {}.", dataref, index);
+        sendRref(dataref, index, 0);
+    }
+
+    @Override
+    public void watchDatarefArray(String dataref, int from, int to, int frequency) {
+        // ids of the elements are contiguous
+        DatarefArray array = watchedDatarefs.registerArray(dataref, from, to);
+        LOG.debug("Watching dataref {}[{}..{}] with IDs from {} and frequency {}.", dataref, from, to,
+                array.firstId(), frequency);
+        for (int i = 0; i < array.size(); i++) {
+            sendRref(array.element(i), array.firstId() + i, frequency);
+        }
+    }
+
+    @Override
+    public void unwatchDatarefArray(String dataref, int from, int to) {
+        // release the whole range first, so no assembly waits for elements
+        DatarefArray array = watchedDatarefs.releaseArray(dataref, from, to);
+        if (array == null) {
+            return;
+        }
+        LOG.debug("Unwatching dataref {}[{}..{}] with IDs from {}.", dataref, from, to, array.firstId());
+        for (int i = 0; i < array.size(); i++) {
+            sendRref(array.element(i), array.firstId() + i, 0);
+        }
+    }
+
+    @Override
+    public void addDerivedDataref(String dataref, DatarefPipeline pipeline, int frequency) {
+        derived.add(dataref, pipeline, frequency);
+    }
+
+    @Override
+    public void removeDerivedDataref(String dataref) {
+        derived.remove(dataref);
+    }
+
+    @Override
+    public CompletableFuture<Void> watchDatarefs(Collection<String> datarefs, int frequency,
+            SubscriptionPacing pacing) {
+        return BulkSubscription.watch(this, watchedDatarefs, datarefs, frequency, pacing);
+    }
+
+    @Override
+    public CompletableFuture<Void> unwatchDatarefs(Collection<String> datarefs, SubscriptionPacing pacing) {
+        return BulkSubscription.unwatch(this, watchedDatarefs, datarefs, pacing);
+    }
+
+    @Override
+    public DispatchStatistics getDispatchStatistics() {
+        return dispatchRing != null ? dispatchRing.statistics() : new DispatchStatistics(dispatched.sum(), 0, 0, 0);
+    }
+
+    @Override
+    public DatarefSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public ConnectionMetrics getMetrics() {
+        return counters;
+    }
+
+    @Override
+    public void setPacketRecorder(PacketRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public XPlaneStream<DatarefUpdate> openStream(int frequency, int capacity, String... datarefs) {
+        DatarefStream stream = new DatarefStream(streams, capacity, () -> unhold(datarefs));
+        for (String dataref : datarefs) {
+            hold(dataref, frequency, id -> streams.add(stream, id));
+        }
+        return stream;
+    }
+
+    @Override
+    public XPlaneStream<Position> openPositionStream(int frequency, int capacity) {
+        PositionStream stream = new PositionStream(streams, capacity, () -> unholdPosition(frequency));
+        streams.add(stream);
+        holdPosition(frequency);
+        return stream;
+    }
+
+    @Override
+    public Flow.Publisher<DatarefUpdate> publishDatarefs(int frequency, Executor executor, String... datarefs) {
+        return publishers.datarefs(frequency, executor, datarefs);
+    }
+
+    @Override
+    public Flow.Publisher<Position> publishPosition(int frequency, Executor executor) {
+        return publishers.position(frequency, executor);
     }
 
     @Override
     public void sendAlert(String line1, String line2, String line3, String line4) {
         LOG.debug("Sending alert {}; {}; {}; {}.", line1, line2, line3, line4);
 
-        DataWriter writer = new DataWriter(965);
+        DataWriter writer = new DataWriter(sendBuffers.acquire());
         writer.writeString("ALRT");
         writer.writeString(line1 != null ? line1 : "", 240);
         writer.writeString(line2 != null ? line2 : "", 240);
@@ -153,69 +454,199 @@ public final class XPlaneUDP implements XPlane {
 
     @Override
     public void close() throws Exception {
-        unwatchPosition();
-        for (String dataref : watchedDatarefs) {
-            unwatchDataref(dataref);
+        if (closed) {
+            return;
+        }
+        publishers.close();
+        derived.clear();
+        sendRpos(0);
+        for (String dataref : watchedDatarefs.datarefs()) {
+            // datarefs held by open streams are unwatched as well
+            DatarefArray array = watchedDatarefs.arrayOf(dataref);
+            int index = watchedDatarefs.id(dataref);
+            if (array != null) {
+                unwatchDatarefArray(array.dataref(), array.from(), array.from() + array.size() - 1);
+            } else if (index >= 0) {
+                sendRref(dataref, index, 0);
+            }
+        }
+        closed = true;
+
+        // stop dispatching first, so a receiving thread blocked by a full ring
+        // buffer is released before waiting for it
+        if (dispatchRing != null) {
+            dispatchRing.close();
+        }
+
+        // release channel and stop receiving
+        if (registration != null) {
+            registration.cancel();
+        } else {
+            channel.close();
+            if (Thread.currentThread() != receiveThread) {
+                receiveThread.join();
+            }
+        }
+    }
+
+    @Override
+    public void hold(String dataref, int frequency, IntConsumer attach) {
+        int index = watchedDatarefs.hold(dataref);
+        attach.accept(index);
+        if (!derived.contains(dataref)) {
+            LOG.debug("Holding dataref {} with ID {} and frequency {}.", dataref, index, frequency);
+            sendRref(dataref, index, frequency);
+        }
+    }
+
+    @Override
+    public void unhold(String... datarefs) {
+        for (String dataref : datarefs) {
+            int index = watchedDatarefs.unhold(dataref);
+            if (index >= 0 && !derived.contains(dataref)) {
+                LOG.debug("Unwatching dataref {} with ID {}.", dataref, index);
+                sendRref(dataref, index, 0);
+            }
+        }
+    }
+
+    @Override
+    public void holdPosition(int frequency) {
+        synchronized (positionHolders) {
+            positionHolders.merge(frequency, 1, Integer::sum);
+            requestPosition();
+        }
+    }
+
+    @Override
+    public void unholdPosition(int frequency) {
+        synchronized (positionHolders) {
+            positionHolders.computeIfPresent(frequency, (f, count) -> count > 1 ? count - 1 : null);
+            requestPosition();
         }
     }
 
     /**
-     * Sends a message to X-Plane.
+     * Watches the position with the highest frequency requested explicitly or
+     * by a holder, or unwatches it when it is not used any more.
+     *
+     * <p>
+     * Must be called with the holders of the position locked.
+     * </p>
+     */
+    private void requestPosition() {
+        int frequency = watchedPosition;
+        if (!positionHolders.isEmpty()) {
+            frequency = Math.max(frequency, positionHolders.lastKey());
+        }
+        sendRpos(frequency);
+    }
+
+    /**
+     * Sends a RPOS request to X-Plane.
      * 
-     * @param buffer Content of the message to send.
+     * @param frequency Number of positions per second (0 to stop).
      */
-    private void send(ByteBuffer buffer) {
-        try {
-            channel.send(buffer, address);
-        } catch (IOException ex) {
-            LOG.error("Error during sending data to X-Plane.", ex);
+    private void sendRpos(int frequency) {
+        frequency = limitFrequency(frequency);
+        LOG.debug("Watch position with frequency {} Hz.", frequency);
+
+        DataWriter writer = new DataWriter(sendBuffers.acquire());
+        writer.writeString("RPOS");
+        writer.writeString(Integer.toString(frequency));
+        send(writer.export());
+    }
+
+    /**
+     * Sends a RREF request to X-Plane.
+     * 
+     * @param dataref   Name of the dataref.
+     * @param index     Id of the dataref.
+     * @param frequency Number of values per second (0 to stop).
+     */
+    private void sendRref(String dataref, int index, int frequency) {
+        ByteBuffer buffer = PacketTemplates.copy(templates.rref(dataref), sendBuffers.acquire());
+        buffer.putInt(PacketTemplates.RREF_FREQUENCY_OFFSET, frequency);
+        buffer.putInt(PacketTemplates.RREF_ID_OFFSET, index);
+        send(buffer);
+    }
+
+    /**
+     * Sends DSEL or USEL messages to X-Plane.
+     * 
+     * @param type    Type of the message.
+     * @param indices Indices of the output groups.
+     */
+    private void sendSelection(String type, int[] indices) {
+        for (int start = 0; start < indices.length; start += MAX_SELECTED_GROUPS) {
+            DataWriter writer = new DataWriter(sendBuffers.acquire());
+            writer.writeString(type);
+            for (int i = start; i < Math.min(start + MAX_SELECTED_GROUPS, indices.length); i++) {
+                writer.writeInt(indices[i]);
+            }
+            send(writer.export());
         }
     }
 
     /**
-     * Process position received from X-Plane.
+     * Sends a message to X-Plane.
+     * 
+     * <p>
+     * The buffer is returned to the pool of send buffers afterwards.
+     * </p>
      * 
-     * @param reader Reader for reading content.
-     */
-    private void receivedRpos(DataReader reader) {
-        // parse data
-        Position pos = new Position(
-                reader.readDouble(),
-                reader.readDouble(),
-                reader.readDouble(),
-                reader.readFloat(),
-                reader.readFloat(),
-                reader.readFloat(),
-                reader.readFloat(),
-                reader.readFloat(),
-                reader.readFloat(),
-                reader.readFloat(),
-                reader.readFloat(),
-                reader.readFloat(),
-                reader.readFloat());
-        LOG.debug("Received position {}.", pos);
-
-        // send data to listeners
-        for (var listener : listeners) {
-            listener.receivedPosition(pos);
+     * @param buffer Content of the message to send.
+     */
+    private void send(ByteBuffer buffer) {
+        try {
+            transmit(buffer);
+        } finally {
+            sendBuffers.release(buffer);
         }
     }
 
     /**
-     * Processed received dataref.
+     * Records and sends a message to X-Plane.
      * 
-     * @param reader Reader to read message data.
-     */
-    private void receivedRref(DataReader reader) {
-        // read message data
-        int index = reader.readInt();
-        float value = reader.readFloat();
-        String dataref = watchedDatarefs.get(index);
-        LOG.debug("Received dataref {} with ID {} and value {}.", dataref, index, value);
-
-        // inform listeners
-        for (var listener : listeners) {
-            listener.receivedDataref(dataref, value);
+     * @param buffer Content of the message to send.
+     */
+    private void transmit(ByteBuffer buffer) {
+        if (closed) {
+            return;
+        }
+        try {
+            PacketRecorder current = recorder;
+            if (current != null) {
+                current.recordSent(buffer);
+            }
+            // events are only created while recorded
+            SendEvent event = null;
+            if (FlightRecording.send) {
+                event = new SendEvent();
+                event.begin();
+            }
+            int size = channel.send(buffer, address);
+            if (event != null) {
+                event.end();
+            }
+            if (size == 0) {
+                // send buffer of a non-blocking channel is full
+                counters.sendError();
+                LOG.warn("Message to X-Plane dropped.");
+                return;
+            }
+            counters.sent(size);
+            if (event != null && event.shouldCommit()) {
+                event.connection = name;
+                event.type = messageType(buffer);
+                event.size = size;
+                event.commit();
+            }
+        } catch (ClosedChannelException ex) {
+            LOG.debug("Message not sent as connection is closed.");
+        } catch (IOException ex) {
+            counters.sendError();
+            LOG.error("Error during sending data to X-Plane.", ex);
         }
     }
 
@@ -224,32 +655,94 @@ public final class XPlaneUDP implements XPlane {
      */
     private void receiveLoop() {
         // allocate buffer to receive messages
-        ByteBuffer buffer = ByteBuffer.allocate(1500);
+        ByteBuffer buffer = ByteBuffer.allocate(PacketDispatcher.MAX_MESSAGE_SIZE);
         buffer.order(ByteOrder.nativeOrder());
 
-        while (true) {
+        while (!closed) {
             try {
                 // receive data
                 buffer.clear();
-                channel.receive(buffer);
-
-                // create reader for data
-                buffer.flip();
-                DataReader reader = new DataReader(buffer);
-
-                // handle the message according to it's type
-                String msgType = reader.readString(5);
-                switch (msgType) {
-                    case "RPOS" -> receivedRpos(reader);
-                    case "RREF" -> receivedRref(reader);
-                    default -> LOG.warn("Unknown message type received: {}.", msgType);
-                }
+                SocketAddress source = channel.receive(buffer);
+                received(buffer.flip(), source);
+            } catch (ClosedChannelException ex) {
+                // channel closed by close()
+                break;
             } catch (IOException ex) {
+                counters.receiveError();
                 LOG.error("Error during receiving messge.", ex);
             }
         }
     }
 
+    /**
+     * Processes a received message.
+     * 
+     * <p>
+     * Called by the receiving thread or the event loop.
+     * </p>
+     * 
+     * @param buffer Received message, which is reused afterwards.
+     * @param source Address the message was received from.
+     */
+    private void received(ByteBuffer buffer, SocketAddress source) {
+        try {
+            // record message, store latest values and handle the message
+            // directly or by the dispatch stage
+            counters.received(buffer.remaining());
+            if (FlightRecording.receive) {
+                ReceiveEvent event = new ReceiveEvent();
+                if (event.shouldCommit()) {
+                    event.connection = name;
+                    event.source = String.valueOf(source);
+                    event.size = buffer.remaining();
+                    event.commit();
+                }
+            }
+            long now = System.nanoTime();
+            PacketRecorder current = recorder;
+            if (current != null) {
+                current.recordReceived(buffer, now);
+            }
+            snapshot.update(buffer, now);
+            ByteBuffer values = derived.process(buffer, now);
+            deliver(buffer);
+            if (values != null) {
+                // values of derived datarefs are handled like received ones
+                snapshot.update(values, now);
+                deliver(values);
+            }
+        } catch (RuntimeException ex) {
+            counters.decodeError();
+            LOG.error("Error during processing of message.", ex);
+        }
+    }
+
+    /**
+     * Handles a message directly or by the dispatch stage.
+     * 
+     * @param buffer Message to dispatch.
+     */
+    private void deliver(ByteBuffer buffer) {
+        if (dispatchRing != null) {
+            dispatchRing.publish(buffer);
+        } else {
+            dispatcher.dispatch(buffer);
+            dispatched.increment();
+        }
+    }
+
+    /**
+     * Returns the type of a sent message.
+     *
+     * @param buffer Sent message.
+     * @return Type from the first four bytes of the message.
+     */
+    private static String messageType(ByteBuffer buffer) {
+        byte[] type = new byte[4];
+        buffer.get(0, type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
     /**
      * Limits a frequency to the interval [0, 99];
      */
@@ -0,0 +1,109 @@
+package de.painer.xplane.metrics;
+
+/**
+ * Metrics of a connection to X-Plane.
+ *
+ * <p>
+ * All values are counted since the connection was opened. Recording the
+ * metrics does not allocate, reading them is thread-safe.
+ * </p>
+ */
+public interface ConnectionMetrics {
+
+    /**
+     * Returns the number of received messages.
+     *
+     * @return Number of messages.
+     */
+    long getReceivedMessages();
+
+    /**
+     * Returns the number of received bytes.
+     *
+     * @return Number of bytes.
+     */
+    long getReceivedBytes();
+
+    /**
+     * Returns the number of errors while receiving messages.
+     *
+     * @return Number of errors.
+     */
+    long getReceiveErrors();
+
+    /**
+     * Returns the number of sent messages.
+     *
+     * @return Number of messages.
+     */
+    long getSentMessages();
+
+    /**
+     * Returns the number of sent bytes.
+     *
+     * @return Number of bytes.
+     */
+    long getSentBytes();
+
+    /**
+     * Returns the number of errors while sending messages.
+     *
+     * @return Number of errors.
+     */
+    long getSendErrors();
+
+    /**
+     * Returns the number of messages which could not be decoded.
+     *
+     * @return Number of invalid messages.
+     */
+    long getDecodeErrors();
+
+    /**
+     * Returns the number of messages with unknown type.
+     *
+     * @return Number of messages.
+     */
+    long getUnknownMessages();
+
+    /**
+     * Returns the number of exceptions thrown by listeners.
+     *
+     * @return Number of exceptions.
+     */
+    long getListenerErrors();
+
+    /**
+     * Returns the time needed by all listeners for processing one message.
+     *
+     * @return Histogram of the durations.
+     */
+    Histogram getListenerTime();
+
+    /**
+     * Passes the metrics of all watched datarefs to a consumer.
+     *
+     * @param consumer Consumer of the metrics.
+     */
+    void datarefs(DatarefConsumer consumer);
+
+    /**
+     * Consumer of the metrics of a dataref.
+     */
+    @FunctionalInterface
+    interface DatarefConsumer {
+
+        /**
+         * Accepts the metrics of a dataref.
+         *
+         * @param dataref    Name of the dataref.
+         * @param updates    Number of received values.
+         * @param lastUpdate Time of the latest value as returned by
+         *                   {@link System#nanoTime()} or 0 if no value was
+         *                   received yet.
+         */
+        void accept(String dataref, long updates, long lastUpdate);
+
+    }
+
+}
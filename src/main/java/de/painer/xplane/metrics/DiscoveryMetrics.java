@@ -0,0 +1,57 @@
+package de.painer.xplane.metrics;
+
+/**
+ * Metrics of the discovery of X-Plane instances.
+ */
+public interface DiscoveryMetrics {
+
+    /**
+     * Returns the number of received beacons.
+     *
+     * @return Number of beacons.
+     */
+    long getBeacons();
+
+    /**
+     * Returns the number of received messages which are no beacons.
+     *
+     * @return Number of messages.
+     */
+    long getInvalidMessages();
+
+    /**
+     * Returns the number of errors while receiving messages.
+     *
+     * @return Number of errors.
+     */
+    long getReceiveErrors();
+
+    /**
+     * Returns the number of found instances.
+     *
+     * @return Number of found events.
+     */
+    long getFoundInstances();
+
+    /**
+     * Returns the number of lost instances.
+     *
+     * @return Number of lost events.
+     */
+    long getLostInstances();
+
+    /**
+     * Returns the number of currently known instances.
+     *
+     * @return Number of instances.
+     */
+    int getKnownInstances();
+
+    /**
+     * Returns the number of exceptions thrown by listeners.
+     *
+     * @return Number of exceptions.
+     */
+    long getListenerErrors();
+
+}
@@ -0,0 +1,51 @@
+package de.painer.xplane.metrics;
+
+/**
+ * Histogram of durations with fixed buckets.
+ *
+ * <p>
+ * The upper bounds of the buckets are powers of two in nanoseconds. The last
+ * bucket has no upper bound.
+ * </p>
+ */
+public interface Histogram {
+
+    /**
+     * Returns the number of buckets.
+     *
+     * @return Number of buckets including the one without upper bound.
+     */
+    int buckets();
+
+    /**
+     * Returns the upper bound of a bucket.
+     *
+     * @param bucket Index of the bucket.
+     * @return Inclusive upper bound in nanoseconds or {@link Long#MAX_VALUE} for
+     *         the last bucket.
+     */
+    long upperBound(int bucket);
+
+    /**
+     * Returns the number of recorded durations in a bucket.
+     *
+     * @param bucket Index of the bucket.
+     * @return Number of durations in the bucket (not cumulative).
+     */
+    long count(int bucket);
+
+    /**
+     * Returns the total number of recorded durations.
+     *
+     * @return Number of durations.
+     */
+    long count();
+
+    /**
+     * Returns the sum of all recorded durations.
+     *
+     * @return Sum in nanoseconds.
+     */
+    long sum();
+
+}
@@ -0,0 +1,367 @@
+package de.painer.xplane.metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToLongFunction;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.painer.xplane.XPlane;
+import de.painer.xplane.XPlaneDiscovery;
+
+/**
+ * Exports the metrics of connections and discoveries in the OpenMetrics text
+ * format, which is understood by Prometheus.
+ *
+ * <p>
+ * The metrics are only read when they are written, so registered connections
+ * and discoveries are not slowed down by the exporter. The exporter can serve
+ * the metrics over HTTP at {@code /metrics} or write them to any
+ * {@link Appendable}.
+ * </p>
+ */
+public final class OpenMetricsExporter implements AutoCloseable {
+
+    /**
+     * Content type of the OpenMetrics text format.
+     */
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    /**
+     * Path the metrics are served at.
+     */
+    public static final String PATH = "/metrics";
+
+    /**
+     * Nanoseconds per second for converting durations.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Counters of the connections.
+     */
+    private static final List<ConnectionCounter> CONNECTION_COUNTERS = List.of(
+            new ConnectionCounter("xplane_received_messages", "Received messages.",
+                    ConnectionMetrics::getReceivedMessages),
+            new ConnectionCounter("xplane_received_bytes", "Received bytes.", ConnectionMetrics::getReceivedBytes),
+            new ConnectionCounter("xplane_receive_errors", "Errors while receiving.",
+                    ConnectionMetrics::getReceiveErrors),
+            new ConnectionCounter("xplane_sent_messages", "Sent messages.", ConnectionMetrics::getSentMessages),
+            new ConnectionCounter("xplane_sent_bytes", "Sent bytes.", ConnectionMetrics::getSentBytes),
+            new ConnectionCounter("xplane_send_errors", "Errors while sending.", ConnectionMetrics::getSendErrors),
+            new ConnectionCounter("xplane_decode_errors", "Messages which could not be decoded.",
+                    ConnectionMetrics::getDecodeErrors),
+            new ConnectionCounter("xplane_unknown_messages", "Messages with unknown type.",
+                    ConnectionMetrics::getUnknownMessages),
+            new ConnectionCounter("xplane_listener_errors", "Exceptions thrown by listeners.",
+                    ConnectionMetrics::getListenerErrors));
+
+    /**
+     * Counters of the discoveries.
+     */
+    private static final List<DiscoveryCounter> DISCOVERY_COUNTERS = List.of(
+            new DiscoveryCounter("xplane_discovery_beacons", "Received beacons.", DiscoveryMetrics::getBeacons),
+            new DiscoveryCounter("xplane_discovery_invalid_messages", "Received messages which are no beacons.",
+                    DiscoveryMetrics::getInvalidMessages),
+            new DiscoveryCounter("xplane_discovery_receive_errors", "Errors while receiving.",
+                    DiscoveryMetrics::getReceiveErrors),
+            new DiscoveryCounter("xplane_discovery_found_instances", "Found instances.",
+                    DiscoveryMetrics::getFoundInstances),
+            new DiscoveryCounter("xplane_discovery_lost_instances", "Lost instances.",
+                    DiscoveryMetrics::getLostInstances),
+            new DiscoveryCounter("xplane_discovery_listener_errors", "Exceptions thrown by listeners.",
+                    DiscoveryMetrics::getListenerErrors));
+
+    /**
+     * Registered connections.
+     */
+    private final List<XPlane> connections = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registered discoveries.
+     */
+    private final List<NamedDiscovery> discoveries = new CopyOnWriteArrayList<>();
+
+    /**
+     * HTTP server or null if the metrics are not served.
+     */
+    private final HttpServer server;
+
+    /**
+     * Creates an exporter which does not serve the metrics, they can be written
+     * with {@link #write(Appendable)}.
+     */
+    public OpenMetricsExporter() {
+        this.server = null;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param server HTTP server or null.
+     */
+    private OpenMetricsExporter(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Creates an exporter serving the metrics over HTTP.
+     *
+     * @param address Address to listen at.
+     * @return Started exporter.
+     * @throws IOException When the server could not be started.
+     */
+    public static OpenMetricsExporter start(InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        OpenMetricsExporter exporter = new OpenMetricsExporter(server);
+        server.createContext(PATH, exporter::handle);
+        server.start();
+        return exporter;
+    }
+
+    /**
+     * Returns the address the metrics are served at.
+     *
+     * @return Address of the server or null if the metrics are not served.
+     */
+    public InetSocketAddress getAddress() {
+        return server != null ? server.getAddress() : null;
+    }
+
+    /**
+     * Registers a connection. The connection is identified by its name.
+     *
+     * @param xplane Connection.
+     */
+    public void register(XPlane xplane) {
+        connections.add(xplane);
+    }
+
+    /**
+     * Unregisters a connection.
+     *
+     * @param xplane Connection.
+     */
+    public void unregister(XPlane xplane) {
+        connections.remove(xplane);
+    }
+
+    /**
+     * Registers a discovery.
+     *
+     * @param name      Name identifying the discovery in the metrics.
+     * @param discovery Discovery.
+     */
+    public void register(String name, XPlaneDiscovery discovery) {
+        discoveries.add(new NamedDiscovery(name, discovery));
+    }
+
+    /**
+     * Unregisters a discovery.
+     *
+     * @param discovery Discovery.
+     */
+    public void unregister(XPlaneDiscovery discovery) {
+        discoveries.removeIf(named -> named.discovery() == discovery);
+    }
+
+    /**
+     * Writes the metrics of all registered connections and discoveries.
+     *
+     * @param out Target of the metrics.
+     * @throws IOException When writing fails.
+     */
+    public void write(Appendable out) throws IOException {
+        for (ConnectionCounter counter : CONNECTION_COUNTERS) {
+            family(out, counter.name(), "counter", counter.help());
+            for (XPlane xplane : connections) {
+                sample(out, counter.name() + "_total", "connection", xplane.getName(),
+                        counter.value().applyAsLong(xplane.getMetrics()));
+            }
+        }
+
+        family(out, "xplane_listener_duration_seconds", "histogram", "Time for passing a message to all listeners.");
+        for (XPlane xplane : connections) {
+            histogram(out, "xplane_listener_duration_seconds", xplane.getName(),
+                    xplane.getMetrics().getListenerTime());
+        }
+
+        // dataref metrics are collected per connection, the age refers to now
+        family(out, "xplane_dataref_updates", "counter", "Received values of a dataref.");
+        StringBuilder ages = new StringBuilder();
+        for (XPlane xplane : connections) {
+            String connection = xplane.getName();
+            long now = System.nanoTime();
+            IOException[] error = new IOException[1];
+            xplane.getMetrics().datarefs((dataref, updates, lastUpdate) -> {
+                try {
+                    out.append("xplane_dataref_updates_total{connection=\"").append(escape(connection))
+                            .append("\",dataref=\"").append(escape(dataref)).append("\"} ")
+                            .append(Long.toString(updates)).append('\n');
+                } catch (IOException ex) {
+                    error[0] = ex;
+                }
+                if (lastUpdate != 0) {
+                    ages.append("xplane_dataref_age_seconds{connection=\"").append(escape(connection))
+                            .append("\",dataref=\"").append(escape(dataref)).append("\"} ")
+                            .append((now - lastUpdate) / NANOS_PER_SECOND).append('\n');
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        family(out, "xplane_dataref_age_seconds", "gauge", "Time since the latest value of a dataref.");
+        out.append(ages);
+
+        for (DiscoveryCounter counter : DISCOVERY_COUNTERS) {
+            family(out, counter.name(), "counter", counter.help());
+            for (NamedDiscovery named : discoveries) {
+                sample(out, counter.name() + "_total", "discovery", named.name(),
+                        counter.value().applyAsLong(named.discovery().getMetrics()));
+            }
+        }
+        family(out, "xplane_discovery_known_instances", "gauge", "Currently known instances.");
+        for (NamedDiscovery named : discoveries) {
+            sample(out, "xplane_discovery_known_instances", "discovery", named.name(),
+                    named.discovery().getMetrics().getKnownInstances());
+        }
+
+        out.append("# EOF\n");
+    }
+
+    /**
+     * Stops serving the metrics.
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Answers a scrape request.
+     *
+     * @param exchange HTTP exchange.
+     * @throws IOException When the answer could not be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder text = new StringBuilder(4096);
+            write(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    /**
+     * Writes the metadata of a metric family.
+     *
+     * @param out  Target.
+     * @param name Name of the family.
+     * @param type Type of the family.
+     * @param help Description of the family.
+     * @throws IOException When writing fails.
+     */
+    private static void family(Appendable out, String name, String type, String help) throws IOException {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    /**
+     * Writes a sample with one label.
+     *
+     * @param out   Target.
+     * @param name  Name of the sample.
+     * @param label Name of the label.
+     * @param value Value of the label.
+     * @param count Value of the sample.
+     * @throws IOException When writing fails.
+     */
+    private static void sample(Appendable out, String name, String label, String value, long count)
+            throws IOException {
+        out.append(name).append('{').append(label).append("=\"").append(escape(value)).append("\"} ")
+                .append(Long.toString(count)).append('\n');
+    }
+
+    /**
+     * Writes the samples of a histogram of durations.
+     *
+     * @param out        Target.
+     * @param name       Name of the histogram.
+     * @param connection Name of the connection.
+     * @param histogram  Histogram in nanoseconds.
+     * @throws IOException When writing fails.
+     */
+    private static void histogram(Appendable out, String name, String connection, Histogram histogram)
+            throws IOException {
+        String label = escape(connection);
+        long cumulative = 0;
+        for (int i = 0; i < histogram.buckets(); i++) {
+            cumulative += histogram.count(i);
+            long bound = histogram.upperBound(i);
+            String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / NANOS_PER_SECOND);
+            out.append(name).append("_bucket{connection=\"").append(label).append("\",le=\"").append(le)
+                    .append("\"} ").append(Long.toString(cumulative)).append('\n');
+        }
+        // count is derived from the buckets so it matches the +Inf bucket
+        out.append(name).append("_count{connection=\"").append(label).append("\"} ")
+                .append(Long.toString(cumulative)).append('\n');
+        out.append(name).append("_sum{connection=\"").append(label).append("\"} ")
+                .append(Double.toString(histogram.sum() / NANOS_PER_SECOND)).append('\n');
+    }
+
+    /**
+     * Escapes a label value.
+     *
+     * @param value Label value.
+     * @return Escaped label value.
+     */
+    private static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Counter of a connection.
+     *
+     * @param name  Name of the metric family.
+     * @param help  Description of the metric.
+     * @param value Accessor of the value.
+     */
+    private record ConnectionCounter(String name, String help, ToLongFunction<ConnectionMetrics> value) {
+    }
+
+    /**
+     * Counter of a discovery.
+     *
+     * @param name  Name of the metric family.
+     * @param help  Description of the metric.
+     * @param value Accessor of the value.
+     */
+    private record DiscoveryCounter(String name, String help, ToLongFunction<DiscoveryMetrics> value) {
+    }
+
+    /**
+     * Discovery with the name used in the metrics.
+     *
+     * @param name      Name of the discovery.
+     * @param discovery Discovery.
+     */
+    private record NamedDiscovery(String name, XPlaneDiscovery discovery) {
+    }
+
+}
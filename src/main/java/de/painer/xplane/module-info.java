@@ -1,8 +1,14 @@
 module de.painer.xplane {
 
     requires org.slf4j;
+    requires jdk.httpserver;
+    requires jdk.jfr;
 
     exports de.painer.xplane;
     exports de.painer.xplane.data;
+    exports de.painer.xplane.metrics;
+    exports de.painer.xplane.recording;
+
+    uses de.painer.xplane.MessageDecoder;
 
 }
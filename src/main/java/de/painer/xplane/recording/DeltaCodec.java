@@ -0,0 +1,98 @@
+package de.painer.xplane.recording;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delta compression of messages.
+ *
+ * <p>
+ * A message is combined with the previous message of the same type by XOR, so
+ * unchanged bytes become zero. The result is stored as a sequence of runs: a
+ * control byte below 128 is followed by <code>control + 1</code> literal bytes,
+ * a control byte of 128 or above stands for <code>control - 127</code> zero
+ * bytes.
+ * </p>
+ */
+final class DeltaCodec {
+
+    /**
+     * Maximum length of a run.
+     */
+    private static final int MAX_RUN = 128;
+
+    /**
+     * Constructor.
+     */
+    private DeltaCodec() {
+    }
+
+    /**
+     * Encodes a message as difference to the previous one.
+     *
+     * @param message  Message bytes.
+     * @param previous Previous message of the same type and length.
+     * @param length   Length of the messages.
+     * @param target   Buffer for the encoded bytes.
+     * @return Number of encoded bytes or -1 if the encoded message would not be
+     *         smaller than the message.
+     */
+    static int encode(byte[] message, byte[] previous, int length, byte[] target) {
+        int out = 0;
+        int index = 0;
+        while (index < length) {
+            // run of zeros
+            int run = 0;
+            while (index + run < length && run < MAX_RUN && message[index + run] == previous[index + run]) {
+                run++;
+            }
+            if (run > 0) {
+                if (out + 1 >= length) {
+                    return -1;
+                }
+                target[out++] = (byte) (run + 127);
+                index += run;
+                continue;
+            }
+
+            // run of literals
+            while (index + run < length && run < MAX_RUN && message[index + run] != previous[index + run]) {
+                run++;
+            }
+            if (out + 1 + run >= length) {
+                return -1;
+            }
+            target[out++] = (byte) (run - 1);
+            for (int i = 0; i < run; i++, index++) {
+                target[out++] = (byte) (message[index] ^ previous[index]);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decodes a message encoded with {@link #encode(byte[], byte[], int, byte[])}.
+     *
+     * @param source   Buffer positioned at the encoded bytes.
+     * @param encoded  Number of encoded bytes.
+     * @param previous Previous message of the same type and length.
+     * @param length   Length of the message.
+     * @param target   Array receiving the decoded message.
+     */
+    static void decode(ByteBuffer source, int encoded, byte[] previous, int length, byte[] target) {
+        int end = source.position() + encoded;
+        int index = 0;
+        while (source.position() < end && index < length) {
+            int control = Byte.toUnsignedInt(source.get());
+            if (control >= MAX_RUN) {
+                for (int i = 0; i < control - 127; i++, index++) {
+                    target[index] = previous[index];
+                }
+            } else {
+                for (int i = 0; i <= control; i++, index++) {
+                    target[index] = (byte) (source.get() ^ previous[index]);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package de.painer.xplane.recording;
+
+import java.nio.ByteOrder;
+
+/**
+ * Format of the packet log files.
+ *
+ * <p>
+ * A packet log consists of segment files, which are read in the order of their
+ * names. Each segment starts with a file header (magic number, version, time
+ * of the recording start in nanoseconds since the epoch) followed by records.
+ * Each record has a header (length, direction, flags, raw length of the
+ * message, time in nanoseconds since the epoch) followed by the message data.
+ * Records start at multiples of 8 bytes; a length of 0 marks the end of the
+ * data in a segment. All numbers are stored in little endian byte order.
+ * </p>
+ *
+ * <p>
+ * Delta compressed records are XOR differences to the previous record of the
+ * same type. At least every {@link #KEYFRAME_NANOS} a record of each type is
+ * stored uncompressed, so reading can start anywhere and is complete after this
+ * time.
+ * </p>
+ */
+final class LogFormat {
+
+    /**
+     * Magic number at the start of each segment ("XPRC").
+     */
+    static final int MAGIC = 0x43525058;
+
+    /**
+     * Version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Byte order of the headers.
+     */
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Size of the file header.
+     */
+    static final int FILE_HEADER_SIZE = 16;
+
+    /**
+     * Size of the record header.
+     */
+    static final int RECORD_HEADER_SIZE = 16;
+
+    /**
+     * Offset of the direction in the record header.
+     */
+    static final int DIRECTION_OFFSET = 4;
+
+    /**
+     * Offset of the flags in the record header.
+     */
+    static final int FLAGS_OFFSET = 5;
+
+    /**
+     * Offset of the raw message length in the record header.
+     */
+    static final int RAW_LENGTH_OFFSET = 6;
+
+    /**
+     * Offset of the time in the record header.
+     */
+    static final int TIME_OFFSET = 8;
+
+    /**
+     * Direction of messages received from X-Plane.
+     */
+    static final byte RECEIVED = 0;
+
+    /**
+     * Direction of messages sent to X-Plane.
+     */
+    static final byte SENT = 1;
+
+    /**
+     * Flag for delta compressed messages.
+     */
+    static final byte FLAG_DELTA = 1;
+
+    /**
+     * Flag for delta compressed RREF messages (RPOS otherwise).
+     */
+    static final byte FLAG_RREF = 2;
+
+    /**
+     * Maximum time between two records of the same type stored without delta
+     * compression (nanoseconds).
+     */
+    static final long KEYFRAME_NANOS = 1_000_000_000L;
+
+    /**
+     * File name extension of the segments.
+     */
+    static final String SUFFIX = ".xrec";
+
+    /**
+     * Constructor.
+     */
+    private LogFormat() {
+    }
+
+    /**
+     * Rounds a record length up to the alignment of the records.
+     *
+     * @param length Length of the record.
+     * @return Aligned length.
+     */
+    static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+}
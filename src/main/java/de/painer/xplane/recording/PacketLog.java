@@ -0,0 +1,403 @@
+package de.painer.xplane.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Reader for a recording written by {@link PacketRecorder}.
+ *
+ * <p>
+ * The segment files are mapped into memory and read sequentially. When opening
+ * the log, a sparse index with the time of every {@value #INDEX_INTERVAL}th
+ * record is built from the record headers, which allows seeking to any time
+ * without decoding the records before it.
+ * </p>
+ *
+ * <p>
+ * A log is not thread-safe and must only be read by one thread.
+ * </p>
+ */
+public final class PacketLog implements AutoCloseable {
+
+    /**
+     * Number of records between two entries of the index.
+     */
+    public static final int INDEX_INTERVAL = 1024;
+
+    /**
+     * Maximum size of a recorded message.
+     */
+    private static final int MAX_MESSAGE_SIZE = 65535;
+
+    /**
+     * Mapped segment files.
+     */
+    private final ByteBuffer[] segments;
+
+    /**
+     * Time of the indexed records (nanoseconds since the epoch).
+     */
+    private long[] indexTimes = new long[64];
+
+    /**
+     * Segment of the indexed records.
+     */
+    private int[] indexSegments = new int[64];
+
+    /**
+     * Offset of the indexed records in their segment.
+     */
+    private int[] indexOffsets = new int[64];
+
+    /**
+     * Number of entries in the index.
+     */
+    private int indexSize;
+
+    /**
+     * Number of records in the log.
+     */
+    private long records;
+
+    /**
+     * Time of the first record (nanoseconds since the epoch).
+     */
+    private long startTime;
+
+    /**
+     * Time of the last record (nanoseconds since the epoch).
+     */
+    private long endTime;
+
+    /**
+     * Segment of the next record.
+     */
+    private int segment;
+
+    /**
+     * Offset of the next record.
+     */
+    private int offset;
+
+    /**
+     * Records before this time are decoded but not returned.
+     */
+    private long skipUntil = Long.MIN_VALUE;
+
+    /**
+     * Time of the current record.
+     */
+    private long time;
+
+    /**
+     * Direction of the current record.
+     */
+    private byte direction;
+
+    /**
+     * Previous received message per delta compressed type.
+     */
+    private final byte[][] previous = { new byte[MAX_MESSAGE_SIZE], new byte[MAX_MESSAGE_SIZE] };
+
+    /**
+     * Length of the previous received message per delta compressed type (-1 if
+     * unknown).
+     */
+    private final int[] previousLength = { -1, -1 };
+
+    /**
+     * Current message.
+     */
+    private final byte[] message = new byte[MAX_MESSAGE_SIZE];
+
+    /**
+     * Constructor.
+     *
+     * @param segments Mapped segment files.
+     */
+    private PacketLog(ByteBuffer[] segments) {
+        this.segments = segments;
+        buildIndex();
+        this.offset = LogFormat.FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Opens a recording.
+     *
+     * @param directory Directory with the segment files.
+     * @return Log for reading the recording.
+     * @throws IOException When a segment file could not be read or has an
+     *                     invalid format.
+     */
+    public static PacketLog open(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(LogFormat.SUFFIX)).sorted()
+                    .toList();
+        }
+
+        // map all segments, the mappings stay valid after closing the channels
+        ByteBuffer[] segments = new ByteBuffer[files.size()];
+        for (int i = 0; i < segments.length; i++) {
+            try (FileChannel channel = FileChannel.open(files.get(i), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(LogFormat.ORDER);
+                if (buffer.capacity() < LogFormat.FILE_HEADER_SIZE || buffer.getInt(0) != LogFormat.MAGIC) {
+                    throw new IOException("Invalid segment file " + files.get(i) + ".");
+                }
+                if (buffer.getInt(4) != LogFormat.VERSION) {
+                    throw new IOException("Unsupported version " + buffer.getInt(4) + " of " + files.get(i) + ".");
+                }
+                segments[i] = buffer;
+            }
+        }
+        return new PacketLog(segments);
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return Number of records in the log.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the time of the first record.
+     *
+     * @return Time in nanoseconds since the epoch (0 when the log is empty).
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the time of the last record.
+     *
+     * @return Time in nanoseconds since the epoch (0 when the log is empty).
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Positions the log at the first record at or after the given time.
+     *
+     * <p>
+     * Reading starts at the indexed record before the time which is early
+     * enough for restoring the state of delta compressed records.
+     * </p>
+     *
+     * @param epochNanos Time in nanoseconds since the epoch.
+     */
+    public void seek(long epochNanos) {
+        // find last index entry before the time
+        int index = Arrays.binarySearch(indexTimes, 0, indexSize, epochNanos - LogFormat.KEYFRAME_NANOS);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index < 0) {
+            segment = 0;
+            offset = LogFormat.FILE_HEADER_SIZE;
+        } else {
+            segment = indexSegments[index];
+            offset = indexOffsets[index];
+        }
+        skipUntil = epochNanos;
+        previousLength[0] = -1;
+        previousLength[1] = -1;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * <p>
+     * The message of the record is copied into the buffer, which is ready for
+     * reading afterwards. Time and direction of the record are available with
+     * {@link #time()} and {@link #isSent()}.
+     * </p>
+     *
+     * @param target Buffer for the message.
+     * @return Was a record read (<code>false</code> at the end of the log)?
+     */
+    public boolean next(ByteBuffer target) {
+        while (segment < segments.length) {
+            ByteBuffer buffer = segments[segment];
+            int length = offset <= buffer.capacity() - LogFormat.RECORD_HEADER_SIZE ? buffer.getInt(offset) : 0;
+            if (length < LogFormat.RECORD_HEADER_SIZE) {
+                // end of the segment
+                segment++;
+                offset = LogFormat.FILE_HEADER_SIZE;
+                continue;
+            }
+
+            // decode the record
+            int start = offset;
+            offset += LogFormat.align(length);
+            time = buffer.getLong(start + LogFormat.TIME_OFFSET);
+            direction = buffer.get(start + LogFormat.DIRECTION_OFFSET);
+            int rawLength = Short.toUnsignedInt(buffer.getShort(start + LogFormat.RAW_LENGTH_OFFSET));
+            int dataLength = length - LogFormat.RECORD_HEADER_SIZE;
+            if (!decode(buffer, start + LogFormat.RECORD_HEADER_SIZE, dataLength, rawLength,
+                    buffer.get(start + LogFormat.FLAGS_OFFSET)) || time < skipUntil) {
+                continue;
+            }
+
+            // copy message to the buffer
+            target.clear();
+            target.put(message, 0, Math.min(rawLength, target.remaining()));
+            target.flip();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the time of the current record.
+     *
+     * @return Time in nanoseconds since the epoch.
+     */
+    public long time() {
+        return time;
+    }
+
+    /**
+     * Checks whether the current record is a message sent to X-Plane.
+     *
+     * @return Was the message sent to X-Plane (<code>false</code> for received
+     *         messages)?
+     */
+    public boolean isSent() {
+        return direction == LogFormat.SENT;
+    }
+
+    /**
+     * Passes all messages sent to X-Plane to a consumer.
+     *
+     * <p>
+     * Messages sent to X-Plane are never compressed, so they can be read without
+     * decoding the received messages. The current position of the log is not
+     * changed.
+     * </p>
+     *
+     * @param consumer Consumer getting a buffer with each sent message, ready
+     *                 for reading.
+     */
+    public void scanSent(Consumer<ByteBuffer> consumer) {
+        for (ByteBuffer buffer : segments) {
+            int position = LogFormat.FILE_HEADER_SIZE;
+            while (position <= buffer.capacity() - LogFormat.RECORD_HEADER_SIZE) {
+                int length = buffer.getInt(position);
+                if (length < LogFormat.RECORD_HEADER_SIZE) {
+                    break;
+                }
+                if (buffer.get(position + LogFormat.DIRECTION_OFFSET) == LogFormat.SENT) {
+                    consumer.accept(buffer.slice(position + LogFormat.RECORD_HEADER_SIZE,
+                            length - LogFormat.RECORD_HEADER_SIZE).order(ByteOrder.nativeOrder()));
+                }
+                position += LogFormat.align(length);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // the mappings are released by the garbage collector
+        Arrays.fill(segments, null);
+        segment = segments.length;
+    }
+
+    /**
+     * Decodes the data of a record into the current message.
+     *
+     * @param buffer     Segment with the record.
+     * @param position   Position of the record data.
+     * @param dataLength Length of the record data.
+     * @param rawLength  Length of the original message.
+     * @param flags      Flags of the record.
+     * @return Was the message decoded (<code>false</code> for delta compressed
+     *         records without known previous message)?
+     */
+    private boolean decode(ByteBuffer buffer, int position, int dataLength, int rawLength, byte flags) {
+        if ((flags & LogFormat.FLAG_DELTA) != 0) {
+            // restore message from the previous one of the same type
+            int type = (flags & LogFormat.FLAG_RREF) != 0 ? 1 : 0;
+            if (previousLength[type] != rawLength) {
+                return false;
+            }
+            buffer.position(position);
+            DeltaCodec.decode(buffer, dataLength, previous[type], rawLength, message);
+            System.arraycopy(message, 0, previous[type], 0, rawLength);
+            return true;
+        }
+
+        // keep uncompressed RPOS and RREF messages for following delta records
+        buffer.get(position, message, 0, dataLength);
+        if (direction == LogFormat.RECEIVED && rawLength >= 4 && message[0] == 'R') {
+            int type = message[1] == 'P' && message[2] == 'O' && message[3] == 'S' ? 0
+                    : message[1] == 'R' && message[2] == 'E' && message[3] == 'F' ? 1 : -1;
+            if (type >= 0) {
+                System.arraycopy(message, 0, previous[type], 0, rawLength);
+                previousLength[type] = rawLength;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the sparse index and determines the time range of the log.
+     */
+    private void buildIndex() {
+        for (int i = 0; i < segments.length; i++) {
+            ByteBuffer buffer = segments[i];
+            int position = LogFormat.FILE_HEADER_SIZE;
+            while (position <= buffer.capacity() - LogFormat.RECORD_HEADER_SIZE) {
+                int length = buffer.getInt(position);
+                if (length < LogFormat.RECORD_HEADER_SIZE) {
+                    break;
+                }
+                long recordTime = buffer.getLong(position + LogFormat.TIME_OFFSET);
+                if (records % INDEX_INTERVAL == 0) {
+                    addIndex(recordTime, i, position);
+                }
+                if (records == 0) {
+                    startTime = recordTime;
+                }
+                endTime = recordTime;
+                records++;
+                position += LogFormat.align(length);
+            }
+        }
+    }
+
+    /**
+     * Adds an entry to the index.
+     *
+     * @param recordTime Time of the record.
+     * @param segment    Segment of the record.
+     * @param position   Offset of the record.
+     */
+    private void addIndex(long recordTime, int segment, int position) {
+        if (indexSize == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+            indexSegments = Arrays.copyOf(indexSegments, indexSize * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+        }
+        indexTimes[indexSize] = recordTime;
+        indexSegments[indexSize] = segment;
+        indexOffsets[indexSize] = position;
+        indexSize++;
+    }
+
+}
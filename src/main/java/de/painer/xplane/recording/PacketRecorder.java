@@ -0,0 +1,549 @@
+package de.painer.xplane.recording;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recorder for the raw messages of a connection.
+ *
+ * <p>
+ * Messages are appended to memory-mapped segment files with a timestamp in
+ * nanoseconds. Writers reserve space in the current segment atomically and copy
+ * their message into it, so recording never takes a lock and never waits for
+ * the disk. The next segment is created and mapped in advance by a background
+ * thread; if it is not ready when the current segment is full, the message is
+ * dropped and counted instead of blocking the caller.
+ * </p>
+ *
+ * <p>
+ * Received RPOS and RREF messages can optionally be stored as difference to the
+ * previous message of the same type.
+ * </p>
+ *
+ * @see de.painer.xplane.XPlane#setPacketRecorder(PacketRecorder)
+ */
+public final class PacketRecorder implements AutoCloseable {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(PacketRecorder.class);
+
+    /**
+     * Handle for writing the record lengths with release semantics.
+     */
+    private static final VarHandle LENGTH = MethodHandles.byteBufferViewVarHandle(int[].class, LogFormat.ORDER);
+
+    /**
+     * Header of RPOS messages as int in native byte order.
+     */
+    private static final int RPOS = header("RPOS");
+
+    /**
+     * Header of RREF messages as int in native byte order.
+     */
+    private static final int RREF = header("RREF");
+
+    /**
+     * Maximum size of a recorded message.
+     */
+    private static final int MAX_MESSAGE_SIZE = 65535;
+
+    /**
+     * Directory with the segment files.
+     */
+    private final Path directory;
+
+    /**
+     * Options of the recorder.
+     */
+    private final RecordingOptions options;
+
+    /**
+     * Time of the recording start in nanoseconds since the epoch.
+     */
+    private final long startEpochNanos;
+
+    /**
+     * Value of {@link System#nanoTime()} at the recording start.
+     */
+    private final long startNanos;
+
+    /**
+     * Segment currently written (<code>null</code> when closed).
+     */
+    private final AtomicReference<Segment> current = new AtomicReference<>();
+
+    /**
+     * Segment prepared for writing next.
+     */
+    private final AtomicReference<Segment> prepared = new AtomicReference<>();
+
+    /**
+     * Is a segment currently being prepared?
+     */
+    private final AtomicBoolean preparing = new AtomicBoolean();
+
+    /**
+     * Number of the next segment file.
+     */
+    private final AtomicInteger nextSegment = new AtomicInteger();
+
+    /**
+     * Background thread for preparing and closing segments.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Number of recorded messages.
+     */
+    private final LongAdder recorded = new LongAdder();
+
+    /**
+     * Number of dropped messages.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Previous received message per delta compressed type (only used by the
+     * receiving thread).
+     */
+    private final byte[][] previous = { new byte[MAX_MESSAGE_SIZE], new byte[MAX_MESSAGE_SIZE] };
+
+    /**
+     * Length of the previous received message per delta compressed type.
+     */
+    private final int[] previousLength = { -1, -1 };
+
+    /**
+     * Time of the last uncompressed received message per delta compressed type.
+     */
+    private final long[] keyframeNanos = new long[2];
+
+    /**
+     * Current received message (only used by the receiving thread).
+     */
+    private final byte[] message = new byte[MAX_MESSAGE_SIZE];
+
+    /**
+     * Encoded received message (only used by the receiving thread).
+     */
+    private final byte[] encoded = new byte[MAX_MESSAGE_SIZE];
+
+    /**
+     * Buffer wrapping the current received message.
+     */
+    private final ByteBuffer messageBuffer = ByteBuffer.wrap(message);
+
+    /**
+     * Buffer wrapping the encoded received message.
+     */
+    private final ByteBuffer encodedBuffer = ByteBuffer.wrap(encoded);
+
+    /**
+     * Constructor.
+     *
+     * @param directory Directory with the segment files.
+     * @param options   Options of the recorder.
+     * @throws IOException When the first segment could not be created.
+     */
+    private PacketRecorder(Path directory, RecordingOptions options) throws IOException {
+        this.directory = directory;
+        this.options = options;
+        Instant now = Instant.now();
+        this.startEpochNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        this.startNanos = System.nanoTime();
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "xplane-recorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // create first segment and prepare the next one
+        Files.createDirectories(directory);
+        Segment first = createSegment();
+        first.activate(startNanos);
+        current.set(first);
+        requestSegment();
+    }
+
+    /**
+     * Starts a new recording.
+     *
+     * <p>
+     * The segment files are created in the given directory. Existing segment
+     * files in the directory are not overwritten, but reading the directory
+     * afterwards mixes both recordings.
+     * </p>
+     *
+     * @param directory Directory for the segment files.
+     * @param options   Options of the recording.
+     * @return New recorder.
+     * @throws IOException When the first segment could not be created.
+     */
+    public static PacketRecorder open(Path directory, RecordingOptions options) throws IOException {
+        return new PacketRecorder(directory, options);
+    }
+
+    /**
+     * Records a message received from X-Plane.
+     *
+     * <p>
+     * Must only be called by the receiving thread of a connection. The position
+     * of the buffer is not changed.
+     * </p>
+     *
+     * @param buffer    Buffer with the message, ready for reading.
+     * @param timestamp Time when the message was received as returned by
+     *                  {@link System#nanoTime()}.
+     */
+    public void recordReceived(ByteBuffer buffer, long timestamp) {
+        int length = buffer.remaining();
+        if (!options.deltaCompression() || length < 4 || length > MAX_MESSAGE_SIZE) {
+            appendRaw(LogFormat.RECEIVED, buffer, timestamp);
+            return;
+        }
+        int header = buffer.order() == ByteOrder.nativeOrder() ? buffer.getInt(buffer.position())
+                : Integer.reverseBytes(buffer.getInt(buffer.position()));
+        int type = header == RPOS ? 0 : header == RREF ? 1 : -1;
+        if (type < 0) {
+            appendRaw(LogFormat.RECEIVED, buffer, timestamp);
+            return;
+        }
+
+        // encode as difference to the previous message of the same type
+        buffer.get(buffer.position(), message, 0, length);
+        boolean delta = previousLength[type] == length && timestamp - keyframeNanos[type] < LogFormat.KEYFRAME_NANOS;
+        int encodedLength = delta ? DeltaCodec.encode(message, previous[type], length, encoded) : -1;
+        boolean appended;
+        if (encodedLength < 0) {
+            appended = append(LogFormat.RECEIVED, (byte) 0, messageBuffer, 0, length, length, timestamp);
+            if (appended) {
+                keyframeNanos[type] = timestamp;
+            }
+        } else {
+            byte flags = type == 0 ? LogFormat.FLAG_DELTA : LogFormat.FLAG_DELTA | LogFormat.FLAG_RREF;
+            appended = append(LogFormat.RECEIVED, flags, encodedBuffer, 0, encodedLength, length, timestamp);
+        }
+
+        // the next message is only encoded against this one if it reached the
+        // log, otherwise it is written as keyframe
+        if (appended) {
+            System.arraycopy(message, 0, previous[type], 0, length);
+            previousLength[type] = length;
+        } else {
+            previousLength[type] = -1;
+        }
+    }
+
+    /**
+     * Records a message sent to X-Plane.
+     *
+     * <p>
+     * Can be called by any thread. The position of the buffer is not changed.
+     * </p>
+     *
+     * @param buffer Buffer with the message, ready for reading.
+     */
+    public void recordSent(ByteBuffer buffer) {
+        appendRaw(LogFormat.SENT, buffer, System.nanoTime());
+    }
+
+    /**
+     * Returns the number of recorded messages.
+     *
+     * @return Number of recorded messages.
+     */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /**
+     * Returns the number of messages that could not be recorded.
+     *
+     * @return Number of dropped messages.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the directory of the recording.
+     *
+     * @return Directory with the segment files.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() {
+        Segment segment = current.getAndSet(null);
+        if (segment == null) {
+            return;
+        }
+        executor.execute(() -> {
+            closeSegment(segment);
+            Segment unused = prepared.getAndSet(null);
+            if (unused != null) {
+                closeSegment(unused);
+                try {
+                    Files.deleteIfExists(unused.path);
+                } catch (IOException ex) {
+                    LOG.warn("Could not delete unused segment {}.", unused.path, ex);
+                }
+            }
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Appends a message without compression.
+     *
+     * @param direction Direction of the message.
+     * @param buffer    Buffer with the message.
+     * @param timestamp Time of the message as returned by
+     *                  {@link System#nanoTime()}.
+     */
+    private void appendRaw(byte direction, ByteBuffer buffer, long timestamp) {
+        int length = Math.min(buffer.remaining(), MAX_MESSAGE_SIZE);
+        append(direction, (byte) 0, buffer, buffer.position(), length, length, timestamp);
+    }
+
+    /**
+     * Appends a message, rolling to the next segment when necessary.
+     *
+     * @param direction Direction of the message.
+     * @param flags     Flags of the record.
+     * @param source    Buffer with the record data.
+     * @param position  Position of the record data in the buffer.
+     * @param length    Length of the record data.
+     * @param rawLength Length of the original message.
+     * @param timestamp Time of the message as returned by
+     *                  {@link System#nanoTime()}.
+     * @return Was the record written (or dropped as no segment is ready)?
+     */
+    private boolean append(byte direction, byte flags, ByteBuffer source, int position, int length, int rawLength,
+            long timestamp) {
+        int size = LogFormat.align(LogFormat.RECORD_HEADER_SIZE + length);
+
+        // roll segments which are open for too long
+        Segment segment = current.get();
+        if (segment != null && timestamp - segment.startNanos > options.segmentDuration().toNanos()) {
+            Segment next = roll(segment, timestamp);
+            segment = next != null ? next : segment;
+        }
+
+        // reserve space in the segment and copy the record into it
+        while (segment != null) {
+            int offset = segment.position.getAndAdd(size);
+            if (offset >= 0 && offset <= segment.buffer.capacity() - size) {
+                segment.buffer.put(offset + LogFormat.RECORD_HEADER_SIZE, source, position, length);
+                commit(segment, offset, direction, flags, length, rawLength, timestamp);
+                return true;
+            }
+            segment = roll(segment, timestamp);
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * Writes the record header, publishing the record.
+     *
+     * @param segment   Segment of the record.
+     * @param offset    Offset of the record.
+     * @param direction Direction of the message.
+     * @param flags     Flags of the record.
+     * @param length    Length of the record data.
+     * @param rawLength Length of the original message.
+     * @param timestamp Time of the message as returned by
+     *                  {@link System#nanoTime()}.
+     */
+    private void commit(Segment segment, int offset, byte direction, byte flags, int length, int rawLength,
+            long timestamp) {
+        ByteBuffer buffer = segment.buffer;
+        buffer.put(offset + LogFormat.DIRECTION_OFFSET, direction);
+        buffer.put(offset + LogFormat.FLAGS_OFFSET, flags);
+        buffer.putShort(offset + LogFormat.RAW_LENGTH_OFFSET, (short) rawLength);
+        buffer.putLong(offset + LogFormat.TIME_OFFSET, startEpochNanos + (timestamp - startNanos));
+        LENGTH.setRelease(buffer, offset, LogFormat.RECORD_HEADER_SIZE + length);
+        recorded.increment();
+    }
+
+    /**
+     * Switches from a full segment to the prepared one.
+     *
+     * @param full Segment which is full.
+     * @param now  Current time as returned by {@link System#nanoTime()}.
+     * @return Segment to write to or <code>null</code> if no segment is ready.
+     */
+    private Segment roll(Segment full, long now) {
+        Segment segment = current.get();
+        if (segment != full) {
+            return segment;
+        }
+        Segment next = prepared.getAndSet(null);
+        if (next == null) {
+            requestSegment();
+            return null;
+        }
+        next.activate(now);
+        if (!current.compareAndSet(full, next)) {
+            // closed or rolled in the meantime
+            prepared.set(next);
+            return current.get();
+        }
+        executor.execute(() -> closeSegment(full));
+        requestSegment();
+        return next;
+    }
+
+    /**
+     * Requests preparing the next segment in the background.
+     */
+    private void requestSegment() {
+        if (prepared.get() != null || !preparing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (prepared.get() == null && current.get() != null) {
+                        prepared.set(createSegment());
+                    }
+                } catch (IOException ex) {
+                    LOG.error("Could not create segment for recording.", ex);
+                } finally {
+                    preparing.set(false);
+                }
+            });
+        } catch (RuntimeException ex) {
+            preparing.set(false);
+        }
+    }
+
+    /**
+     * Creates and maps a new segment file.
+     *
+     * @return New segment.
+     * @throws IOException When the file could not be created.
+     */
+    private Segment createSegment() throws IOException {
+        Path path = directory.resolve(String.format("segment-%06d%s", nextSegment.getAndIncrement(), LogFormat.SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, options.segmentSize());
+        buffer.order(LogFormat.ORDER);
+        buffer.putInt(0, LogFormat.MAGIC);
+        buffer.putInt(4, LogFormat.VERSION);
+        buffer.putLong(8, startEpochNanos);
+        LOG.debug("Created segment {} for recording.", path);
+        return new Segment(path, channel, buffer);
+    }
+
+    /**
+     * Closes a segment file.
+     *
+     * @param segment Segment to close.
+     */
+    private static void closeSegment(Segment segment) {
+        try {
+            segment.buffer.force();
+            segment.channel.close();
+        } catch (IOException ex) {
+            LOG.warn("Could not close segment {}.", segment.path, ex);
+        }
+    }
+
+    /**
+     * Returns a message header as int.
+     *
+     * @param header Header of a message.
+     * @return First four bytes of the message read in native byte order.
+     */
+    private static int header(String header) {
+        return ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)).order(ByteOrder.nativeOrder()).getInt();
+    }
+
+    /**
+     * Memory-mapped segment file.
+     */
+    private static final class Segment {
+
+        /**
+         * Path of the segment file.
+         */
+        private final Path path;
+
+        /**
+         * Channel of the segment file.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Mapped content of the segment file.
+         */
+        private final MappedByteBuffer buffer;
+
+        /**
+         * Offset of the next free space.
+         */
+        private final AtomicInteger position;
+
+        /**
+         * Time when writing to the segment started.
+         */
+        private volatile long startNanos;
+
+        /**
+         * Constructor.
+         *
+         * @param path    Path of the segment file.
+         * @param channel Channel of the segment file.
+         * @param buffer  Mapped content of the segment file.
+         */
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.position = new AtomicInteger(LogFormat.FILE_HEADER_SIZE);
+        }
+
+        /**
+         * Starts writing to the segment.
+         *
+         * @param now Current time as returned by {@link System#nanoTime()}.
+         */
+        void activate(long now) {
+            startNanos = now;
+        }
+
+    }
+
+}
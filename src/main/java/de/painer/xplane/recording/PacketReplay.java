@@ -0,0 +1,117 @@
+package de.painer.xplane.recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import de.painer.xplane.XPlane;
+import de.painer.xplane.impl.XPlaneReplay;
+
+/**
+ * Replay of a recording as X-Plane connection.
+ *
+ * <p>
+ * The received messages of the recording are decoded and dispatched to the
+ * listeners, streams and the snapshot like the messages of a live connection.
+ * All datarefs requested during the recording are watched from the start;
+ * requests for positions and datarefs do not change the recorded frequencies
+ * and commands are ignored.
+ * </p>
+ *
+ * <p>
+ * The replay starts after calling {@link #start()}, so listeners can be added
+ * before the first message is dispatched.
+ * </p>
+ */
+public interface PacketReplay extends XPlane {
+
+    /**
+     * Speed for replaying the messages without any delay.
+     */
+    double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    /**
+     * Opens a recording for replay.
+     *
+     * @param directory Directory with the segment files.
+     * @param speed     Speed of the replay relative to the recorded time (1 for
+     *                  real time, {@link #AS_FAST_AS_POSSIBLE} for batch
+     *                  processing).
+     * @return Replay of the recording.
+     * @throws IOException When the recording could not be read.
+     */
+    static PacketReplay open(Path directory, double speed) throws IOException {
+        return new XPlaneReplay(directory.getFileName().toString(), PacketLog.open(directory), speed);
+    }
+
+    /**
+     * Starts the replay.
+     */
+    void start();
+
+    /**
+     * Stops the replay and closes the recording.
+     *
+     * <p>
+     * Waits until the replay thread stopped, unless called by a listener on the
+     * replay thread. Then the recording is closed when the current message has
+     * been dispatched.
+     * </p>
+     */
+    @Override
+    void close();
+
+    /**
+     * Continues the replay at the given time.
+     *
+     * <p>
+     * Seeking is possible until the end of the recording has been reached.
+     * </p>
+     *
+     * @param epochNanos Time in nanoseconds since the epoch.
+     */
+    void seek(long epochNanos);
+
+    /**
+     * Changes the speed of the replay.
+     *
+     * @param speed Speed relative to the recorded time.
+     */
+    void setSpeed(double speed);
+
+    /**
+     * Returns the speed of the replay.
+     *
+     * @return Speed relative to the recorded time.
+     */
+    double getSpeed();
+
+    /**
+     * Returns the time of the first recorded message.
+     *
+     * @return Time in nanoseconds since the epoch.
+     */
+    long getStartTime();
+
+    /**
+     * Returns the time of the last recorded message.
+     *
+     * @return Time in nanoseconds since the epoch.
+     */
+    long getEndTime();
+
+    /**
+     * Returns the recorded time of the last dispatched message.
+     *
+     * @return Time in nanoseconds since the epoch.
+     */
+    long getTime();
+
+    /**
+     * Returns the completion of the replay.
+     *
+     * @return Future completed when all messages have been dispatched.
+     */
+    CompletableFuture<Void> getCompletion();
+
+}
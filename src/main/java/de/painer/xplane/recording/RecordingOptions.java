@@ -0,0 +1,36 @@
+package de.painer.xplane.recording;
+
+import java.time.Duration;
+
+/**
+ * Options of a packet recorder.
+ * 
+ * @param segmentSize      Size of one segment file in bytes.
+ * @param segmentDuration  Maximum time span recorded in one segment file.
+ * @param deltaCompression Store received RPOS and RREF messages as difference
+ *                         to the previous message of the same type?
+ */
+public record RecordingOptions(
+    int segmentSize,
+    Duration segmentDuration,
+    boolean deltaCompression
+) {
+
+    /**
+     * Default options with segments of 64 MiB or one hour and delta compression.
+     */
+    public static final RecordingOptions DEFAULT = new RecordingOptions(64 << 20, Duration.ofHours(1), true);
+
+    /**
+     * Constructor checking the values.
+     */
+    public RecordingOptions {
+        if (segmentSize < 64 * 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 64 KiB.");
+        }
+        if (segmentDuration.isNegative() || segmentDuration.isZero()) {
+            throw new IllegalArgumentException("Segment duration must be positive.");
+        }
+    }
+
+}
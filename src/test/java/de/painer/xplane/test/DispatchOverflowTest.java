@@ -0,0 +1,89 @@
+package de.painer.xplane.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.DispatchStage;
+import de.painer.xplane.DispatchStatistics;
+import de.painer.xplane.OverflowPolicy;
+import de.painer.xplane.XPlane;
+import de.painer.xplane.XPlaneListener;
+import de.painer.xplane.data.Position;
+import de.painer.xplane.impl.XPlaneInstanceUDP;
+
+/**
+ * Check of a dispatch stage with a slow listener.
+ *
+ * <p>
+ * Connects to a fake instance sending positions through a small dispatch stage
+ * dropping the oldest messages. The first position blocks the listener for a
+ * while. During that time, the stage has to stay filled instead of dropping
+ * all queued messages, and afterwards the listener has to receive positions
+ * again.
+ * </p>
+ */
+public class DispatchOverflowTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DispatchOverflowTest.class);
+
+    private static final int CAPACITY = 8;
+
+    public static void main(String[] args) throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch resumed = new CountDownLatch(CAPACITY);
+        XPlaneListener listener = new XPlaneListener() {
+
+            @Override
+            public void receivedPosition(Position position) {
+                if (blocked.getCount() > 0) {
+                    blocked.countDown();
+                    sleep(500);
+                } else {
+                    resumed.countDown();
+                }
+            }
+
+            @Override
+            public void receivedDataref(String dataref, float value) {
+            }
+
+        };
+
+        try (FakeXPlane fake = new FakeXPlane("fake", new FakeXPlane.Options(0, 10, 0));
+                XPlane xplane = new XPlaneInstanceUDP(fake.getAddress(), fake.getBeacon())
+                        .connect(new DispatchStage(CAPACITY, 1, OverflowPolicy.DROP_OLDEST))) {
+            xplane.addXPlaneListener(listener);
+            xplane.watchPosition(99);
+
+            // check the stage while the listener is blocked
+            check(blocked.await(5, TimeUnit.SECONDS), "No position received.");
+            Thread.sleep(300);
+            DispatchStatistics statistics = xplane.getDispatchStatistics();
+            LOG.info("Statistics while the listener is blocked: {}.", statistics);
+            check(statistics.queued() >= CAPACITY - 1, "Queued messages were dropped: " + statistics);
+
+            // check that the listener catches up
+            check(resumed.await(5, TimeUnit.SECONDS), "Listener did not receive positions again.");
+            LOG.info("Statistics after the listener caught up: {}.", xplane.getDispatchStatistics());
+        }
+        LOG.info("Dispatch stage kept the queued messages.");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
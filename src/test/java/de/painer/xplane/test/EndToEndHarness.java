@@ -0,0 +1,248 @@
+package de.painer.xplane.test;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.XPlane;
+import de.painer.xplane.XPlaneDiscovery;
+import de.painer.xplane.XPlaneDiscoveryListener;
+import de.painer.xplane.XPlaneInstance;
+import de.painer.xplane.XPlaneListener;
+import de.painer.xplane.data.Position;
+import de.painer.xplane.data.PositionView;
+import de.painer.xplane.impl.XPlaneInstanceUDP;
+
+/**
+ * End-to-end measurement against fake X-Plane instances.
+ *
+ * <p>
+ * Starts fake instances, measures how long {@link XPlaneDiscovery} takes to
+ * find them, connects to each of them and watches the position and a number of
+ * datarefs. At the end, the receive throughput, the packet loss (from the
+ * sequence numbers of the fake instances) and the latency from sending a
+ * position to the listener callback are reported.
+ * </p>
+ *
+ * <p>
+ * Arguments (all optional): number of instances (10), duration in seconds
+ * (10), frequency (99), datarefs per instance (100), values per RREF message
+ * (183).
+ * </p>
+ */
+public class EndToEndHarness {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EndToEndHarness.class);
+
+    public static void main(String[] args) throws Exception {
+        int instances = argument(args, 0, 10);
+        int seconds = argument(args, 1, 10);
+        int frequency = argument(args, 2, 99);
+        int datarefs = argument(args, 3, 100);
+        int valuesPerMessage = argument(args, 4, FakeXPlane.MAX_VALUES_PER_MESSAGE);
+
+        // start fake instances
+        List<FakeXPlane> fakes = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            fakes.add(new FakeXPlane("fake-" + i, new FakeXPlane.Options(0, valuesPerMessage, 1000)));
+        }
+        measureDiscovery(fakes);
+
+        // connect and subscribe
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < datarefs; i++) {
+            names.add("sim/test/value[" + i + "]");
+        }
+        List<XPlane> connections = new ArrayList<>();
+        List<Receiver> receivers = new ArrayList<>();
+        for (FakeXPlane fake : fakes) {
+            XPlane xplane = new XPlaneInstanceUDP(fake.getAddress(), fake.getBeacon()).connect();
+            Receiver receiver = new Receiver(frequency * (seconds + 5));
+            xplane.addXPlaneListener(receiver);
+            xplane.watchPosition(frequency);
+            xplane.watchDatarefs(names, frequency).get(10, TimeUnit.SECONDS);
+            connections.add(xplane);
+            receivers.add(receiver);
+        }
+
+        // measure for the given time after subscriptions are running
+        long sentMessages = fakes.stream().mapToLong(FakeXPlane::getSentMessages).sum();
+        long sentValues = fakes.stream().mapToLong(FakeXPlane::getSentValues).sum();
+        receivers.forEach(Receiver::reset);
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long elapsed = System.nanoTime() - start;
+        sentMessages = fakes.stream().mapToLong(FakeXPlane::getSentMessages).sum() - sentMessages;
+        sentValues = fakes.stream().mapToLong(FakeXPlane::getSentValues).sum() - sentValues;
+
+        for (XPlane xplane : connections) {
+            xplane.close();
+        }
+        for (FakeXPlane fake : fakes) {
+            fake.close();
+        }
+        report(receivers, sentMessages, sentValues, elapsed);
+    }
+
+    private static void measureDiscovery(List<FakeXPlane> fakes) throws InterruptedException {
+        Set<Integer> ports = ConcurrentHashMap.newKeySet();
+        fakes.forEach(fake -> ports.add(fake.getAddress().getPort()));
+        CountDownLatch found = new CountDownLatch(fakes.size());
+        XPlaneDiscoveryListener listener = new XPlaneDiscoveryListener() {
+
+            @Override
+            public void foundInstance(XPlaneInstance instance) {
+                if (instance.getAddress() instanceof InetSocketAddress address
+                        && ports.remove(address.getPort())) {
+                    found.countDown();
+                }
+            }
+
+            @Override
+            public void lostInstance(XPlaneInstance instance) {
+            }
+
+        };
+
+        long start = System.nanoTime();
+        XPlaneDiscovery discovery = XPlaneDiscovery.create(Duration.ofSeconds(5), Runnable::run);
+        discovery.addListener(listener);
+        boolean all = found.await(5, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        discovery.removeListener(listener);
+        LOG.info("Discovery found {} of {} instances in {} ms{}.", fakes.size() - found.getCount(), fakes.size(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed), all ? "" : " (timeout)");
+    }
+
+    private static void report(List<Receiver> receivers, long sentMessages, long sentValues, long elapsed) {
+        double seconds = elapsed / 1e9;
+        long positions = 0;
+        long lostPositions = 0;
+        long rrefMessages = 0;
+        long values = 0;
+        int samples = 0;
+        for (Receiver receiver : receivers) {
+            positions += receiver.positions;
+            lostPositions += receiver.lostPositions;
+            rrefMessages += receiver.rrefMessages;
+            values += receiver.values;
+            samples += Math.min(receiver.samples, receiver.latencies.length);
+        }
+        long[] latencies = new long[samples];
+        int index = 0;
+        for (Receiver receiver : receivers) {
+            int count = Math.min(receiver.samples, receiver.latencies.length);
+            System.arraycopy(receiver.latencies, 0, latencies, index, count);
+            index += count;
+        }
+        Arrays.sort(latencies);
+
+        long receivedMessages = positions + rrefMessages;
+        long receivedValues = positions + values;
+        LOG.info("Received {} messages ({} msg/s) and {} values ({} values/s).", receivedMessages,
+                Math.round(receivedMessages / seconds), receivedValues, Math.round(receivedValues / seconds));
+        LOG.info("Sent {} messages and {} values, loss {} % of messages, {} % of values, {} position gaps.",
+                sentMessages, sentValues, percent(sentMessages - receivedMessages, sentMessages),
+                percent(sentValues - receivedValues, sentValues), lostPositions);
+        LOG.info("Position latency in us: p50 {}, p90 {}, p99 {}, p99.9 {}, max {}.", percentile(latencies, 0.5),
+                percentile(latencies, 0.9), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                percentile(latencies, 1.0));
+    }
+
+    private static String percent(long part, long total) {
+        return total > 0 ? String.format("%.3f", Math.max(part, 0) * 100.0 / total) : "-";
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(index, 0)]);
+    }
+
+    private static int argument(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    /**
+     * Listener counting messages of one connection.
+     *
+     * <p>
+     * Each connection has its own receiving thread, so the counters are only
+     * written by this thread and read after closing the connection.
+     * </p>
+     */
+    private static final class Receiver implements XPlaneListener {
+
+        private final long[] latencies;
+
+        private volatile boolean measuring;
+
+        private int samples;
+
+        private long positions;
+
+        private long lostPositions;
+
+        private double lastSequence = -1;
+
+        private long rrefMessages;
+
+        private long values;
+
+        Receiver(int capacity) {
+            this.latencies = new long[capacity];
+        }
+
+        void reset() {
+            measuring = true;
+        }
+
+        @Override
+        public void receivedPosition(PositionView position) {
+            long now = System.nanoTime();
+            double sequence = position.longitude();
+            if (!measuring) {
+                lastSequence = sequence;
+                return;
+            }
+            if (lastSequence >= 0 && sequence > lastSequence + 1) {
+                lostPositions += (long) (sequence - lastSequence - 1);
+            }
+            lastSequence = sequence;
+            positions++;
+            if (samples < latencies.length) {
+                latencies[samples] = now - (long) position.elevationMSL();
+            }
+            samples++;
+        }
+
+        @Override
+        public void receivedPosition(Position position) {
+        }
+
+        @Override
+        public void receivedDatarefs(int[] ids, String[] datarefs, float[] values, int count) {
+            if (measuring) {
+                rrefMessages++;
+                this.values += count;
+            }
+        }
+
+        @Override
+        public void receivedDataref(String dataref, float value) {
+        }
+
+    }
+
+}
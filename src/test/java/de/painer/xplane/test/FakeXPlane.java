@@ -0,0 +1,469 @@
+package de.painer.xplane.test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.painer.xplane.XPlaneDiscovery;
+import de.painer.xplane.data.Beacon;
+
+/**
+ * Stand-in for X-Plane on the local host.
+ *
+ * <p>
+ * A fake instance sends BECN beacons to the multicast group of X-Plane and
+ * answers RPOS and RREF subscriptions like the simulator. The messages carry
+ * test data instead of a flight:
+ * </p>
+ * <ul>
+ * <li>RPOS: longitude is a sequence number per subscription, elevation MSL is
+ * the {@link System#nanoTime()} of sending.</li>
+ * <li>RREF: all values of a message are the sequence number of the message
+ * per frequency.</li>
+ * <li>DATA: output groups selected with DSEL are sent at 20 Hz, value
+ * <code>j</code> of a record is the sequence number plus <code>j</code>.</li>
+ * </ul>
+ *
+ * <p>
+ * Values written with DREF are kept, so tests can check the latest value.
+ * </p>
+ *
+ * <p>
+ * All fake instances share one thread for receiving requests and a small pool
+ * for sending, so hundreds of instances can run at once.
+ * </p>
+ */
+public final class FakeXPlane implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FakeXPlane.class);
+
+    /**
+     * Size of RPOS messages (header and 64 bytes of position data).
+     */
+    public static final int RPOS_SIZE = 69;
+
+    /**
+     * Maximum number of values X-Plane puts into one RREF message.
+     */
+    public static final int MAX_VALUES_PER_MESSAGE = 183;
+
+    private static final ScheduledExecutorService SENDERS = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> {
+                Thread thread = new Thread(r, "fake-xplane-send");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static Selector selector;
+
+    /**
+     * Options of a fake instance.
+     *
+     * @param positionRate     Frequency of RPOS messages (0 for the requested
+     *                         frequency).
+     * @param valuesPerMessage Maximum number of values per RREF message.
+     * @param beaconInterval   Interval between two beacons in milliseconds (0
+     *                         for no beacons).
+     */
+    public record Options(int positionRate, int valuesPerMessage, int beaconInterval) {
+
+        /**
+         * Options behaving like X-Plane.
+         */
+        public static final Options DEFAULT = new Options(0, MAX_VALUES_PER_MESSAGE, 1000);
+
+    }
+
+    private final String name;
+
+    private final Options options;
+
+    private final DatagramChannel channel;
+
+    private final InetSocketAddress address;
+
+    private final ScheduledFuture<?> beaconTask;
+
+    private ScheduledFuture<?> positionTask;
+
+    private ScheduledFuture<?> dataTask;
+
+    private final Set<Integer> dataGroups = new TreeSet<>();
+
+    private final Map<Integer, DatarefGroup> groups = new LinkedHashMap<>();
+
+    private final AtomicLong sentMessages = new AtomicLong();
+
+    private final AtomicLong sentValues = new AtomicLong();
+
+    private final Map<String, Float> writtenValues = new ConcurrentHashMap<>();
+
+    private final AtomicLong receivedWrites = new AtomicLong();
+
+    /**
+     * Starts a fake instance on an ephemeral port.
+     *
+     * <p>
+     * The instance listens on all interfaces, so the beacons sent over the
+     * default multicast interface point to a reachable address.
+     * </p>
+     *
+     * @param name    Host name announced in the beacons.
+     * @param options Options of the instance.
+     * @throws IOException When the channel could not be opened.
+     */
+    public FakeXPlane(String name, Options options) throws IOException {
+        this.name = name;
+        this.options = options;
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.bind(new InetSocketAddress(0));
+        channel.configureBlocking(false);
+        this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                ((InetSocketAddress) channel.getLocalAddress()).getPort());
+        register(this);
+
+        if (options.beaconInterval() > 0) {
+            beaconTask = SENDERS.scheduleAtFixedRate(this::sendBeacon, 0, options.beaconInterval(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            beaconTask = null;
+        }
+    }
+
+    /**
+     * Returns the loopback address the instance receives requests on.
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the beacon announcing this instance.
+     */
+    public Beacon getBeacon() {
+        return new Beacon(1, 2, 1, 120000, 1, address.getPort(), name);
+    }
+
+    /**
+     * Returns the number of sent RPOS and RREF messages.
+     */
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    /**
+     * Returns the number of sent RPOS messages and RREF values.
+     */
+    public long getSentValues() {
+        return sentValues.get();
+    }
+
+    /**
+     * Returns the latest value written with DREF or null.
+     */
+    public Float getWrittenValue(String dataref) {
+        return writtenValues.get(dataref);
+    }
+
+    /**
+     * Returns the number of received DREF messages.
+     */
+    public long getReceivedWrites() {
+        return receivedWrites.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (beaconTask != null) {
+            beaconTask.cancel(false);
+        }
+        if (positionTask != null) {
+            positionTask.cancel(false);
+        }
+        if (dataTask != null) {
+            dataTask.cancel(false);
+        }
+        for (DatarefGroup group : groups.values()) {
+            group.task.cancel(false);
+        }
+        groups.clear();
+        channel.close();
+    }
+
+    private void sendBeacon() {
+        ByteBuffer buffer = ByteBuffer.allocate(512).order(ByteOrder.nativeOrder());
+        buffer.put("BECN\0".getBytes(StandardCharsets.US_ASCII));
+        buffer.put((byte) 1);
+        buffer.put((byte) 2);
+        buffer.putInt(1);
+        buffer.putInt(120000);
+        buffer.putInt(1);
+        buffer.putShort((short) address.getPort());
+        buffer.put(name.getBytes(StandardCharsets.US_ASCII));
+        buffer.put((byte) 0);
+        send(buffer.flip(), XPlaneDiscovery.GROUP_ADDRESS);
+    }
+
+    private void send(ByteBuffer buffer, InetSocketAddress target) {
+        try {
+            channel.send(buffer, target);
+        } catch (IOException ex) {
+            LOG.debug("Could not send message of {}.", name, ex);
+        }
+    }
+
+    private synchronized void received(ByteBuffer buffer, InetSocketAddress client) {
+        if (buffer.remaining() < 5) {
+            return;
+        }
+        String type = new String(buffer.array(), 0, 4, StandardCharsets.US_ASCII);
+        switch (type) {
+            case "RPOS" -> watchPosition(parseFrequency(buffer), client);
+            case "RREF" -> {
+                if (buffer.remaining() >= 13) {
+                    int frequency = buffer.getInt(5);
+                    int id = buffer.getInt(9);
+                    watchDataref(id, frequency, client);
+                }
+            }
+            case "DSEL", "USEL" -> {
+                for (int i = 5; i + 4 <= buffer.limit(); i += 4) {
+                    if (type.equals("DSEL")) {
+                        dataGroups.add(buffer.getInt(i));
+                    } else {
+                        dataGroups.remove(buffer.getInt(i));
+                    }
+                }
+                sendData(client);
+            }
+            case "DREF" -> {
+                if (buffer.remaining() >= 509) {
+                    int end = 9;
+                    while (end < 509 && buffer.get(end) != 0) {
+                        end++;
+                    }
+                    writtenValues.put(new String(buffer.array(), 9, end - 9, StandardCharsets.US_ASCII),
+                            buffer.getFloat(5));
+                    receivedWrites.incrementAndGet();
+                }
+            }
+            default -> LOG.debug("Ignoring message {} sent to {}.", type, name);
+        }
+    }
+
+    private static int parseFrequency(ByteBuffer buffer) {
+        int frequency = 0;
+        for (int i = 5; i < buffer.limit() && Character.isDigit(buffer.get(i)); i++) {
+            frequency = frequency * 10 + buffer.get(i) - '0';
+        }
+        return frequency;
+    }
+
+    private void watchPosition(int frequency, InetSocketAddress client) {
+        if (positionTask != null) {
+            positionTask.cancel(false);
+            positionTask = null;
+        }
+        int rate = options.positionRate() > 0 && frequency > 0 ? options.positionRate() : frequency;
+        if (rate <= 0) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(RPOS_SIZE).order(ByteOrder.nativeOrder());
+        buffer.put("RPOS\0".getBytes(StandardCharsets.US_ASCII));
+        long[] sequence = new long[1];
+        positionTask = SENDERS.scheduleAtFixedRate(() -> {
+            buffer.putDouble(5, sequence[0]++);
+            buffer.putDouble(13, 48.0);
+            buffer.putDouble(21, System.nanoTime());
+            send(buffer.clear(), client);
+            sentMessages.incrementAndGet();
+            sentValues.incrementAndGet();
+        }, 0, 1_000_000_000L / rate, TimeUnit.NANOSECONDS);
+    }
+
+    private void sendData(InetSocketAddress client) {
+        if (dataTask != null) {
+            dataTask.cancel(false);
+            dataTask = null;
+        }
+        if (dataGroups.isEmpty()) {
+            return;
+        }
+
+        int[] indices = dataGroups.stream().mapToInt(Integer::intValue).toArray();
+        ByteBuffer buffer = ByteBuffer.allocate(5 + 36 * indices.length).order(ByteOrder.nativeOrder());
+        buffer.put("DATA*".getBytes(StandardCharsets.US_ASCII));
+        long[] sequence = new long[1];
+        dataTask = SENDERS.scheduleAtFixedRate(() -> {
+            buffer.position(5);
+            for (int index : indices) {
+                buffer.putInt(index);
+                for (int j = 0; j < 8; j++) {
+                    buffer.putFloat(sequence[0] + j);
+                }
+            }
+            sequence[0]++;
+            send(buffer.flip(), client);
+            buffer.clear();
+            sentMessages.incrementAndGet();
+            sentValues.addAndGet(indices.length);
+        }, 0, 50, TimeUnit.MILLISECONDS);
+    }
+
+    private void watchDataref(int id, int frequency, InetSocketAddress client) {
+        // remove dataref from its current group
+        for (DatarefGroup group : groups.values()) {
+            group.ids.remove((Integer) id);
+        }
+        groups.values().removeIf(group -> {
+            if (group.ids.isEmpty()) {
+                group.task.cancel(false);
+                return true;
+            }
+            return false;
+        });
+        if (frequency <= 0) {
+            return;
+        }
+
+        DatarefGroup group = groups.get(frequency);
+        if (group == null) {
+            group = new DatarefGroup(client);
+            groups.put(frequency, group);
+            group.task = SENDERS.scheduleAtFixedRate(group, 0, 1_000_000_000L / Math.min(frequency, 99),
+                    TimeUnit.NANOSECONDS);
+        }
+        group.ids.add(id);
+    }
+
+    /**
+     * Datarefs sent with the same frequency.
+     */
+    private final class DatarefGroup implements Runnable {
+
+        private final InetSocketAddress client;
+
+        private final List<Integer> ids = new ArrayList<>();
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(5 + 8 * MAX_VALUES_PER_MESSAGE)
+                .order(ByteOrder.nativeOrder());
+
+        private ScheduledFuture<?> task;
+
+        private int[] current = new int[0];
+
+        private float sequence;
+
+        DatarefGroup(InetSocketAddress client) {
+            this.client = client;
+        }
+
+        @Override
+        public void run() {
+            synchronized (FakeXPlane.this) {
+                if (current.length != ids.size()) {
+                    current = ids.stream().mapToInt(Integer::intValue).toArray();
+                }
+            }
+            int perMessage = Math.max(1, Math.min(options.valuesPerMessage(), MAX_VALUES_PER_MESSAGE));
+            for (int start = 0; start < current.length; start += perMessage) {
+                buffer.clear();
+                buffer.put("RREF\0".getBytes(StandardCharsets.US_ASCII));
+                for (int i = start; i < current.length && i < start + perMessage; i++) {
+                    buffer.putInt(current[i]);
+                    buffer.putFloat(sequence);
+                }
+                send(buffer.flip(), client);
+                sentMessages.incrementAndGet();
+                sentValues.addAndGet(Math.min(perMessage, current.length - start));
+            }
+            sequence++;
+        }
+
+    }
+
+    private static synchronized void register(FakeXPlane instance) throws IOException {
+        if (selector == null) {
+            selector = Selector.open();
+            Thread thread = new Thread(FakeXPlane::receiveLoop, "fake-xplane-receive");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        instance.channel.register(selector, SelectionKey.OP_READ, instance);
+        selector.wakeup();
+    }
+
+    private static void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(1500).order(ByteOrder.nativeOrder());
+        while (true) {
+            try {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    FakeXPlane instance = (FakeXPlane) key.attachment();
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    InetSocketAddress client;
+                    while ((client = (InetSocketAddress) receive(channel, buffer.clear())) != null) {
+                        instance.received(buffer.flip(), client);
+                    }
+                }
+                selector.selectedKeys().clear();
+            } catch (IOException ex) {
+                LOG.error("Error in receive loop of fake instances.", ex);
+            }
+        }
+    }
+
+    private static Object receive(DatagramChannel channel, ByteBuffer buffer) {
+        try {
+            return channel.isOpen() ? channel.receive(buffer) : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs fake instances until a key is pressed.
+     *
+     * @param args Number of instances (default 1).
+     */
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        List<FakeXPlane> instances = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            FakeXPlane instance = new FakeXPlane("fake-" + i, Options.DEFAULT);
+            LOG.info("Started fake instance {} on {}.", instance.name, instance.address);
+            instances.add(instance);
+        }
+
+        LOG.info("Press any key to quit.");
+        System.in.read();
+
+        for (FakeXPlane instance : instances) {
+            instance.close();
+        }
+    }
+
+}